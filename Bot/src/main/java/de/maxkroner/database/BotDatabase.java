@@ -1,30 +1,68 @@
 package de.maxkroner.database;
 
-import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetProvider;
 
 import org.pmw.tinylog.Logger;
 
+import de.maxkroner.database.ConnectionPool.PooledConnection;
+import de.maxkroner.sharding.ShardedLongMap;
+import de.maxkroner.util.ConcurrentLongMap;
+import de.maxkroner.util.Snowflakes;
 import de.maxkroner.values.Values;
 
 public class BotDatabase {
 	private static final String DB_DRIVER = "org.h2.Driver";
-	private static String DB_CONNECTION;
 	private static final String DB_USER = "sa";
 	private static final String DB_PASSWORD = "";
+	private static final int DEFAULT_POOL_SIZE = 4;
+	private static final long CONNECTION_TIMEOUT_MILLIS = 10000;
+	// guilds share a lock by hash, a load or write of a guild only waits for the guilds of its stripe
+	private static final int GUILD_LOCK_STRIPES = 256;
 
-	protected Connection conn;
+	private ConnectionPool pool;
+	private IGuildPropertyStore propertyStore;
+	private GuildPropertyWriteBehind writeBehind;
+	private final ShardedLongMap<GuildSettings> guildSettingsCache = new ShardedLongMap<>(1);
+	private final QueryStatistics statistics = new QueryStatistics();
+	private final Object[] guildLocks = new Object[GUILD_LOCK_STRIPES];
+	// writes per stripe, a preload doesn't cache guilds that were written while it read the store
+	private final AtomicLongArray guildWrites = new AtomicLongArray(GUILD_LOCK_STRIPES);
 	
 	public BotDatabase(String pathName){
+		this(pathName, DEFAULT_POOL_SIZE);
+	}
+	
+	/**
+	 * @param pathName
+	 *            path of the H2 database file
+	 * @param poolSize
+	 *            number of connections shared by all threads
+	 */
+	public BotDatabase(String pathName, int poolSize){
+		for (int i = 0; i < guildLocks.length; i++) {
+			guildLocks[i] = new Object();
+		}
 		try {
-			DB_CONNECTION = "jdbc:h2:" + pathName + ";MV_STORE=FALSE;MVCC=FALSE";
+			// wait for table locks of other connections instead of failing after a second
+			String url = "jdbc:h2:" + pathName + ";MV_STORE=FALSE;MVCC=FALSE;LOCK_TIMEOUT=" + CONNECTION_TIMEOUT_MILLIS;
 			Class.forName(DB_DRIVER);
-			conn = DriverManager.getConnection(DB_CONNECTION, DB_USER, DB_PASSWORD);
+			pool = new ConnectionPool(url, DB_USER, DB_PASSWORD, poolSize, CONNECTION_TIMEOUT_MILLIS);
+			propertyStore = new H2GuildPropertyStore(this);
 			createTablesIfNotExist();
 		} catch (Exception e) {
 			Logger.error("Database connection failed.");
@@ -32,94 +70,461 @@ public class BotDatabase {
 		}		
 	}
 	
-	public Connection getConn() {
-		return conn;
+	public ConnectionPool getConnectionPool() {
+		return pool;
+	}
+	
+	/**
+	 * @return latency of every query shape run on this database
+	 */
+	public QueryStatistics getQueryStatistics() {
+		return statistics;
+	}
+	
+	public IGuildPropertyStore getGuildPropertyStore() {
+		return propertyStore;
+	}
+	
+	/**
+	 * keeps the guild properties in the store instead of the H2 tables,
+	 * properties already in the tables are not copied, call it before the properties are used
+	 * 
+	 * @throws SQLException
+	 *             if the pending updates for the old store could not be written
+	 */
+	public void setGuildPropertyStore(IGuildPropertyStore store) throws SQLException{
+		synchronized (guildSettingsCache) {
+			flushGuildProperties();
+			propertyStore = store;
+			guildSettingsCache.clear();
+		}
+	}
+	
+	/**
+	 * Guild property updates are only cached at first and written to the database
+	 * in the background, updates of the same property in between are coalesced.
+	 * 
+	 * @param flushIntervalMillis
+	 *            time between the writes
+	 */
+	public void enableWriteBehind(long flushIntervalMillis){
+		if(writeBehind == null){
+			writeBehind = new GuildPropertyWriteBehind(() -> propertyStore, flushIntervalMillis);
+		}
+	}
+	
+	/**
+	 * writes the guild property updates that are waiting for the write behind
+	 * 
+	 * @throws SQLException
+	 *             if writing failed, the updates stay pending
+	 */
+	public void flushGuildProperties() throws SQLException{
+		if(writeBehind != null){
+			writeBehind.flush();
+		}
+	}
+	
+	/**
+	 * @return number of guild property updates not written to the database yet
+	 */
+	public int getPendingGuildPropertyCount(){
+		return writeBehind == null ? 0 : writeBehind.getPendingCount();
 	}
 
 	public void resetDatabase()
 	{
 		executeStatement(Values.SQL_DROP_ALL_TABLES);
+		pool.clearStatementCaches();
+		if(writeBehind != null){
+			writeBehind.clear();
+		}
+		guildSettingsCache.clear();
 		createTablesIfNotExist();
+		try {
+			propertyStore.clear();
+		} catch (SQLException e) {
+			Logger.error(e);
+		}
+	}
+	
+	/**
+	 * runs the query with the parameters and maps every row
+	 * 
+	 * @param query
+	 *            sql with a ? for every parameter
+	 * @return the mapped rows
+	 * @throws SQLException
+	 */
+	public <T> List<T> query(String query, IRowMapper<T> mapper, Object... parameters) throws SQLException{
+		try (PooledConnection connection = pool.acquire()) {
+			PreparedStatement st = connection.borrowStatement(query, false);
+			try {
+				setParameters(st, parameters);
+				return statistics.time(query, parameters, () -> {
+					List<T> rows = new ArrayList<>();
+					try (ResultSet rs = st.executeQuery()) {
+						while(rs.next()){
+							rows.add(mapper.map(rs));
+						}
+					}
+					return rows;
+				});
+			} finally {
+				connection.returnStatement(query, false, st);
+			}
+		}
+	}
+	
+	/**
+	 * runs the query with the parameters and hands every row to the handler without collecting them
+	 * 
+	 * @throws SQLException
+	 */
+	public void forEachRow(String query, IRowMapper<?> handler, Object... parameters) throws SQLException{
+		try (PooledConnection connection = pool.acquire()) {
+			PreparedStatement st = connection.borrowStatement(query, false);
+			try {
+				setParameters(st, parameters);
+				statistics.time(query, parameters, () -> {
+					try (ResultSet rs = st.executeQuery()) {
+						while(rs.next()){
+							handler.map(rs);
+						}
+					}
+					return null;
+				});
+			} finally {
+				connection.returnStatement(query, false, st);
+			}
+		}
+	}
+	
+	/**
+	 * runs the query with the parameters and maps the first row
+	 * 
+	 * @return the mapped row or empty if there is none
+	 * @throws SQLException
+	 */
+	public <T> Optional<T> queryFirst(String query, IRowMapper<T> mapper, Object... parameters) throws SQLException{
+		try (PooledConnection connection = pool.acquire()) {
+			PreparedStatement st = connection.borrowStatement(query, false);
+			try {
+				setParameters(st, parameters);
+				return statistics.time(query, parameters, () -> {
+					try (ResultSet rs = st.executeQuery()) {
+						return rs.next() ? Optional.ofNullable(mapper.map(rs)) : Optional.<T> empty();
+					}
+				});
+			} finally {
+				connection.returnStatement(query, false, st);
+			}
+		}
+	}
+	
+	/**
+	 * runs an insert, update or delete with the parameters
+	 * 
+	 * @return number of affected rows
+	 * @throws SQLException
+	 */
+	public int update(String query, Object... parameters) throws SQLException{
+		try (PooledConnection connection = pool.acquire()) {
+			PreparedStatement st = connection.borrowStatement(query, false);
+			try {
+				setParameters(st, parameters);
+				return statistics.time(query, parameters, st::executeUpdate);
+			} finally {
+				connection.returnStatement(query, false, st);
+			}
+		}
+	}
+	
+	/**
+	 * runs an insert with the parameters
+	 * 
+	 * @return the generated key of the inserted row
+	 * @throws SQLException
+	 *             if no row was inserted or no key was generated
+	 */
+	public long insert(String query, Object... parameters) throws SQLException{
+		try (PooledConnection connection = pool.acquire()) {
+			PreparedStatement st = connection.borrowStatement(query, true);
+			try {
+				setParameters(st, parameters);
+				if (statistics.time(query, parameters, st::executeUpdate) == 0) {
+					throw new SQLException("Insert failed, no rows affected.");
+				}
+				try (ResultSet generatedKeys = st.getGeneratedKeys()) {
+					if (generatedKeys.next()) {
+						return generatedKeys.getLong(1);
+					}
+					throw new SQLException("Insert failed, no ID obtained.");
+				}
+			} finally {
+				connection.returnStatement(query, true, st);
+			}
+		}
+	}
+	
+	/**
+	 * runs the query once for every parameter row in one batch
+	 * 
+	 * @return number of affected rows per parameter row
+	 * @throws SQLException
+	 */
+	public int[] batch(String query, List<Object[]> parameterRows) throws SQLException{
+		try (PooledConnection connection = pool.acquire()) {
+			PreparedStatement st = connection.borrowStatement(query, false);
+			try {
+				for (Object[] parameters : parameterRows) {
+					setParameters(st, parameters);
+					st.addBatch();
+				}
+				return statistics.time(query, null, st::executeBatch);
+			} finally {
+				connection.returnStatement(query, false, st);
+			}
+		}
+	}
+	
+	private static void setParameters(PreparedStatement st, Object[] parameters) throws SQLException{
+		for (int i = 0; i < parameters.length; i++) {
+			st.setObject(i + 1, parameters[i]);
+		}
 	}
 	
 	public void addGuildProperty(long guild_id, String property, String value) throws SQLException{
-		String query = "MERGE INTO guildpropertiesstring (guild_id, property, value) VALUES (?, ?, ?)";
-		PreparedStatement st = conn.prepareStatement(query);
-		st.setLong(1, guild_id);
-		st.setString(2, property);
-		st.setString(3, value);
-		
-		int affectedRows = st.executeUpdate();
-		
-		if (affectedRows == 0) {
-            throw new SQLException("Inserting property failed, no rows affected.");
-        }
+		synchronized (guildLock(guild_id)) {
+			writeGuildProperty(PropertyType.STRING, guild_id, property, value);
+			
+			//write through, guilds that aren't cached yet will read the new value when they are loaded
+			GuildSettings settings = guildSettingsCache.get(guild_id);
+			if(settings != null){
+				settings.putString(property, value);
+			}
+		}
 	}
 	
-	public Optional<String> getStringGuildProperty(long guild_id, String property) throws SQLException{
-		String query = "SELECT value FROM guildpropertiesstring WHERE guild_id=" + guild_id
-														+ "AND property='" + property + "';";
-		
-		ResultSet rs = getResultSetFromQuery(query);
-		if(rs.next()){
-			return Optional.of(rs.getString(1));
+	/**
+	 * @return lock of the guild, held while the settings of the guild are loaded or a property is written
+	 */
+	private Object guildLock(long guild_id){
+		return guildLocks[stripeOf(guild_id)];
+	}
+	
+	private static int stripeOf(long guild_id){
+		return Snowflakes.spread(guild_id) & (GUILD_LOCK_STRIPES - 1);
+	}
+	
+	private void writeGuildProperty(PropertyType type, long guild_id, String property, Object value) throws SQLException{
+		if(writeBehind != null){
+			writeBehind.put(type, guild_id, property, value);
 		} else {
-			return Optional.empty();
+			propertyStore.put(type, guild_id, property, value);
 		}
+		// counted once written, a preload that starts afterwards reads the value
+		guildWrites.incrementAndGet(stripeOf(guild_id));
+	}
+	
+	public Optional<String> getStringGuildProperty(long guild_id, String property) throws SQLException{
+		return getGuildSettings(guild_id).getString(property);
+	}
+	
+	/**
+	 * reads the value of a string property for every guild that has set it
+	 * 
+	 * @param property
+	 *            name of the property
+	 * @return map of the property values by guild_id
+	 * @throws SQLException
+	 */
+	public Map<Long, String> getStringGuildPropertyForAllGuilds(String property) throws SQLException{
+		Map<Long, String> values = new HashMap<>();
+		synchronized (guildSettingsCache) {
+			// taken before the read, the pending updates are at least as new as the stored values
+			Map<Long, Object> pending = writeBehind == null ? Collections.emptyMap() : writeBehind.getPending(PropertyType.STRING, property);
+			values.putAll(propertyStore.loadStringPropertyForAllGuilds(property));
+			for (Entry<Long, Object> update : pending.entrySet()) {
+				values.put(update.getKey(), (String) update.getValue());
+			}
+		}
+		return values;
 	}
 	
 	public void addGuildProperty(long guild_id, String property, boolean value) throws SQLException{
-		String query = "MERGE INTO guildpropertiesboolean (guild_id, property, value) VALUES (?, ?, ?)";
-		PreparedStatement st = conn.prepareStatement(query);
-		st.setLong(1, guild_id);
-		st.setString(2, property);
-		st.setBoolean(3, value);
-		
-		int affectedRows = st.executeUpdate();
-		
-		if (affectedRows == 0) {
-            throw new SQLException("Inserting property failed, no rows affected.");
-        }
+		synchronized (guildLock(guild_id)) {
+			writeGuildProperty(PropertyType.BOOLEAN, guild_id, property, value);
+			
+			GuildSettings settings = guildSettingsCache.get(guild_id);
+			if(settings != null){
+				settings.putBoolean(property, value);
+			}
+		}
 	}
 	
 	public Optional<Boolean> getBooleanGuildProperty(long guild_id, String property) throws SQLException{
-		String query = "SELECT value FROM guildpropertiesboolean WHERE guild_id=" + guild_id
-														+ "AND property='" + property + "';";
-		
-		ResultSet rs = getResultSetFromQuery(query);
-		if(rs.next()){
-			return Optional.of(rs.getBoolean(1));
-		} else {
-			return Optional.empty();
-		}
+		return getGuildSettings(guild_id).getBoolean(property);
 	}
 	
 	public void addGuildProperty(long guild_id, String property, int value) throws SQLException{
-		String query = "MERGE INTO guildpropertiesint (guild_id, property, value) VALUES (?, ?, ?)";
-		PreparedStatement st = conn.prepareStatement(query);
-		st.setLong(1, guild_id);
-		st.setString(2, property);
-		st.setInt(3, value);
-		
-		int affectedRows = st.executeUpdate();
-		
-		if (affectedRows == 0) {
-            throw new SQLException("Inserting property failed, no rows affected.");
-        }
+		synchronized (guildLock(guild_id)) {
+			writeGuildProperty(PropertyType.INT, guild_id, property, value);
+			
+			GuildSettings settings = guildSettingsCache.get(guild_id);
+			if(settings != null){
+				settings.putInt(property, value);
+			}
+		}
 	}
 	
 	public Optional<Integer> getIntGuildProperty(long guild_id, String property) throws SQLException{
-		String query = "SELECT value FROM guildpropertiesint WHERE guild_id=" + guild_id
-														+ "AND property='" + property + "';";
-		
-		ResultSet rs = getResultSetFromQuery(query);
-		if(rs.next()){
-			return Optional.of(rs.getInt(1));
-		} else {
-			return Optional.empty();
+		return getGuildSettings(guild_id).getInt(property);
+	}
+	
+	/**
+	 * loads all properties of the guild into the settings cache,
+	 * so later property lookups for this guild don't need the database
+	 * 
+	 * @param guild_id
+	 *            guild to load the properties for
+	 * @throws SQLException
+	 */
+	public void loadGuildSettings(long guild_id) throws SQLException{
+		getGuildSettings(guild_id);
+	}
+	
+	/**
+	 * Loads the properties of all given guilds into the settings cache with one read of the store,
+	 * instead of one read per guild on its first lookup. Guilds without properties are cached empty.
+	 * 
+	 * @param guild_ids
+	 *            guilds the bot is connected to, properties of other guilds are skipped
+	 * @return number of loaded properties
+	 * @throws SQLException
+	 */
+	public int preloadGuildSettings(Collection<Long> guild_ids) throws SQLException{
+		ConcurrentLongMap<GuildSettings> loaded = new ConcurrentLongMap<>();
+		for (long guild_id : guild_ids) {
+			loaded.put(guild_id, new GuildSettings(guild_id));
+		}
+		int[] properties = new int[1];
+		long[] writes = new long[GUILD_LOCK_STRIPES];
+		for (int i = 0; i < writes.length; i++) {
+			writes[i] = guildWrites.get(i);
+		}
+		// taken before the read, the pending updates are at least as new as the stored values
+		List<GuildPropertyUpdate> pending = writeBehind == null ? Collections.emptyList() : writeBehind.getPendingUpdates();
+		propertyStore.forEachProperty(update -> {
+			GuildSettings settings = loaded.get(update.getGuildId());
+			if(settings != null){
+				applyUpdate(settings, update.getType(), update.getProperty(), update.getValue());
+				properties[0]++;
+			}
+		});
+		for (GuildPropertyUpdate update : pending) {
+			GuildSettings settings = loaded.get(update.getGuildId());
+			if(settings != null){
+				applyUpdate(settings, update.getType(), update.getProperty(), update.getValue());
+			}
+		}
+		loaded.forEach((guild_id, settings) -> {
+			int stripe = stripeOf(guild_id);
+			synchronized (guildLocks[stripe]) {
+				// a guild loaded on its own in between is at least as new, a guild of a stripe written
+				// during the read might miss the write and is loaded on its first lookup instead
+				if(guildSettingsCache.get(guild_id) == null && guildWrites.get(stripe) == writes[stripe]){
+					guildSettingsCache.put(guild_id, settings);
+				}
+			}
+		});
+		return properties[0];
+	}
+	
+	/**
+	 * @return approximate bytes used by the guild settings cache
+	 */
+	public long getGuildSettingsMemoryEstimate(){
+		long[] bytes = { guildSettingsCache.estimateBytes() };
+		guildSettingsCache.forEach((guild_id, settings) -> bytes[0] += settings.estimateBytes());
+		return bytes[0];
+	}
+	
+	public int getCachedGuildCount(){
+		return guildSettingsCache.size();
+	}
+	
+	public int getCachedGuildCount(int shard){
+		return guildSettingsCache.sizeOfShard(shard);
+	}
+	
+	/**
+	 * partitions the guild settings cache by the shards of the bot, call it before the settings are preloaded
+	 */
+	public void setShardCount(int shardCount){
+		synchronized (guildSettingsCache) {
+			guildSettingsCache.setShardCount(shardCount);
+		}
+	}
+	
+	private static void applyUpdate(GuildSettings settings, PropertyType type, String property, Object value){
+		switch (type) {
+		case STRING:
+			settings.putString(property, (String) value);
+			break;
+		case BOOLEAN:
+			settings.putBoolean(property, (Boolean) value);
+			break;
+		default:
+			settings.putInt(property, (Integer) value);
+			break;
 		}
 	}
 	
+	/**
+	 * removes the properties of the guild from the settings cache,
+	 * they are loaded again from the database on the next lookup
+	 * 
+	 * @param guild_id
+	 *            guild to evict
+	 */
+	public void evictGuildSettings(long guild_id){
+		guildSettingsCache.remove(guild_id);
+	}
+	
+	private GuildSettings getGuildSettings(long guild_id) throws SQLException{
+		GuildSettings settings = guildSettingsCache.get(guild_id);
+		if(settings == null){
+			// only the guilds of the same stripe wait for the load
+			synchronized (guildLock(guild_id)) {
+				settings = guildSettingsCache.get(guild_id);
+				if(settings == null){
+					settings = readGuildSettingsFromDatabase(guild_id);
+					guildSettingsCache.put(guild_id, settings);
+				}
+			}
+		}
+		return settings;
+	}
+	
+	private GuildSettings readGuildSettingsFromDatabase(long guild_id) throws SQLException{
+		// taken before the read, the pending updates are at least as new as the stored values
+		Map<String, Object> pendingStrings = getPendingGuildProperties(PropertyType.STRING, guild_id);
+		Map<String, Object> pendingBooleans = getPendingGuildProperties(PropertyType.BOOLEAN, guild_id);
+		Map<String, Object> pendingInts = getPendingGuildProperties(PropertyType.INT, guild_id);
+		
+		GuildSettings settings = propertyStore.load(guild_id);
+		pendingStrings.forEach((property, value) -> settings.putString(property, (String) value));
+		pendingBooleans.forEach((property, value) -> settings.putBoolean(property, (Boolean) value));
+		pendingInts.forEach((property, value) -> settings.putInt(property, (Integer) value));
+		
+		return settings;
+	}
+	
+	private Map<String, Object> getPendingGuildProperties(PropertyType type, long guild_id){
+		return writeBehind == null ? Collections.emptyMap() : writeBehind.getPending(type, guild_id);
+	}
+	
 	protected void createTablesIfNotExist(){
 		executeStatement(Values.SQL_CREATE_TABLE_GUILDPROPERTIES_STRING);
 		executeStatement(Values.SQL_CREATE_TABLE_GUILDPROPERTIES_BOOLEAN);
@@ -127,18 +532,22 @@ public class BotDatabase {
 	}
 	
 	public void close() {
-		try {
-			conn.close();
-			Logger.info("Database disconnected.");
-		} catch (SQLException e) {
-			Logger.error(e);
+		if(writeBehind != null){
+			try {
+				writeBehind.shutdown();
+			} catch (SQLException e) {
+				Logger.error("{} guild property updates were lost.", writeBehind.getPendingCount());
+				Logger.error(e);
+			}
 		}
+		propertyStore.close();
+		pool.close();
+		Logger.info("Database disconnected.");
 	}
 
 	public Integer executeStatement(String query) {
-		try {
-			Statement std = conn.createStatement();
-			return std.executeUpdate(query);
+		try (PooledConnection connection = pool.acquire(); Statement std = connection.getConnection().createStatement()) {
+			return statistics.time(query, null, () -> std.executeUpdate(query));
 		} catch (SQLException e) {
 			Logger.error(e);
 			return null;
@@ -150,12 +559,20 @@ public class BotDatabase {
 		return getResultSetFromQuery(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
 	}
 
-	
+	/**
+	 * copies the whole result into a scrollable result set that doesn't hold a connection,
+	 * query with parameters and a row mapper instead where possible
+	 */
 	public ResultSet getResultSetFromQuery(String query, int resultSetType, int resultSetConcurrency) {
-		Statement std;
-		try {
-			std = conn.createStatement(resultSetType, resultSetConcurrency);
-			return std.executeQuery(query);
+		try (PooledConnection connection = pool.acquire();
+				Statement std = connection.getConnection().createStatement(resultSetType, resultSetConcurrency)) {
+			return statistics.time(query, null, () -> {
+				try (ResultSet rs = std.executeQuery(query)) {
+					CachedRowSet rowSet = RowSetProvider.newFactory().createCachedRowSet();
+					rowSet.populate(rs);
+					return rowSet;
+				}
+			});
 		} catch (SQLException e) {
 			Logger.error(e);
 			return null;
@@ -163,12 +580,7 @@ public class BotDatabase {
 	}
 	
 	public int getRowCount(String query) throws SQLException{
-		ResultSet rs = getResultSetFromQuery(query);
-		if(rs.next()){
-			return rs.getInt(1);
-		} else {
-			throw new SQLException("Error in SQL Count query.");
-		}
+		return queryFirst(query, rs -> rs.getInt(1)).orElseThrow(() -> new SQLException("Error in SQL Count query."));
 	}
 
 	
@@ -0,0 +1,248 @@
+package de.maxkroner.database;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.pmw.tinylog.Logger;
+
+/**
+ * Fixed number of JDBC connections shared by all threads. Every connection keeps its
+ * prepared statements, so a query is only parsed once per connection.
+ * A thread that already holds a connection gets the same connection again, so nested
+ * queries can't wait for themselves when all connections are in use.
+ *
+ * @author kroner
+ *
+ */
+public class ConnectionPool {
+	private static final int STATEMENT_CACHE_SIZE = 64;
+
+	private final String url;
+	private final String user;
+	private final String password;
+	private final long timeoutMillis;
+	private final List<PooledConnection> connections = new ArrayList<>();
+	private final BlockingQueue<PooledConnection> idle;
+	private final ThreadLocal<PooledConnection> held = new ThreadLocal<>();
+	// counts the calls of clearStatementCaches, a connection whose cache is older clears it
+	private final AtomicInteger cacheGeneration = new AtomicInteger();
+	private volatile boolean closed = false;
+
+	/**
+	 * @param size
+	 *            number of connections
+	 * @param timeoutMillis
+	 *            time to wait for a free connection before acquire fails
+	 * @throws SQLException
+	 *             if a connection can't be opened
+	 */
+	public ConnectionPool(String url, String user, String password, int size, long timeoutMillis) throws SQLException {
+		this.url = url;
+		this.user = user;
+		this.password = password;
+		this.timeoutMillis = timeoutMillis;
+		this.idle = new ArrayBlockingQueue<>(size);
+		for (int i = 0; i < size; i++) {
+			PooledConnection connection = new PooledConnection(DriverManager.getConnection(url, user, password));
+			connections.add(connection);
+			idle.add(connection);
+		}
+	}
+
+	/**
+	 * waits for a free connection, it is given back by closing it
+	 *
+	 * @throws SQLException
+	 *             if the pool is closed or no connection was free in time
+	 */
+	public PooledConnection acquire() throws SQLException {
+		PooledConnection connection = held.get();
+		if (connection != null) {
+			connection.depth++;
+			return connection;
+		}
+		if (closed) {
+			throw new SQLException("Connection pool is closed.");
+		}
+		try {
+			connection = idle.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for a database connection.", e);
+		}
+		if (connection == null) {
+			throw new SQLException("No database connection free after " + timeoutMillis + "ms.");
+		}
+		try {
+			connection.reopenIfClosed();
+		} catch (SQLException e) {
+			idle.add(connection);
+			throw e;
+		}
+		// taken while clearStatementCaches was running
+		connection.clearOutdatedStatementCache();
+		connection.depth = 1;
+		held.set(connection);
+		return connection;
+	}
+
+	private void release(PooledConnection connection) {
+		if (--connection.depth > 0) {
+			return;
+		}
+		held.remove();
+		connection.clearOutdatedStatementCache();
+		if (closed) {
+			connection.closeQuietly();
+		}
+		idle.add(connection);
+	}
+
+	/**
+	 * closes the cached statements of all idle connections, connections in use clear their
+	 * statements when they are given back, e.g. after the tables they were prepared for were dropped
+	 */
+	public void clearStatementCaches() {
+		cacheGeneration.incrementAndGet();
+		List<PooledConnection> drained = new ArrayList<>();
+		idle.drainTo(drained);
+		for (PooledConnection connection : drained) {
+			connection.clearOutdatedStatementCache();
+		}
+		idle.addAll(drained);
+	}
+
+	/**
+	 * @return number of connections
+	 */
+	public int getSize() {
+		return connections.size();
+	}
+
+	/**
+	 * @return number of connections not in use
+	 */
+	public int getIdleCount() {
+		return idle.size();
+	}
+
+	/**
+	 * closes all idle connections, connections in use are closed when they are given back
+	 */
+	public void close() {
+		closed = true;
+		List<PooledConnection> drained = new ArrayList<>();
+		idle.drainTo(drained);
+		for (PooledConnection connection : drained) {
+			connection.closeQuietly();
+		}
+		idle.addAll(drained);
+	}
+
+	/**
+	 * A connection of the pool, closing it gives it back to the pool.
+	 */
+	public class PooledConnection implements AutoCloseable {
+		private Connection connection;
+		// access ordered, the least recently used statement is closed when the cache is full
+		private final LinkedHashMap<String, PreparedStatement> statements = new LinkedHashMap<>(16, 0.75f, true);
+		private int depth = 0;
+		// cacheGeneration of the pool when the statements were cleared last
+		private int generation;
+
+		private PooledConnection(Connection connection) {
+			this.connection = connection;
+			this.generation = cacheGeneration.get();
+		}
+
+		public Connection getConnection() {
+			return connection;
+		}
+
+		/**
+		 * takes the statement from the cache or prepares it, give it back with returnStatement
+		 */
+		public PreparedStatement borrowStatement(String sql, boolean returnGeneratedKeys) throws SQLException {
+			// removed while borrowed, so a nested query with the same sql prepares its own statement
+			PreparedStatement statement = statements.remove(key(sql, returnGeneratedKeys));
+			if (statement == null || statement.isClosed()) {
+				statement = returnGeneratedKeys ? connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS) : connection.prepareStatement(sql);
+			}
+			return statement;
+		}
+
+		public void returnStatement(String sql, boolean returnGeneratedKeys, PreparedStatement statement) {
+			try {
+				statement.clearParameters();
+				statement.clearBatch();
+				PreparedStatement replaced = statements.put(key(sql, returnGeneratedKeys), statement);
+				if (replaced != null && replaced != statement) {
+					replaced.close();
+				}
+				if (statements.size() > STATEMENT_CACHE_SIZE) {
+					Iterator<PreparedStatement> eldest = statements.values().iterator();
+					eldest.next().close();
+					eldest.remove();
+				}
+			} catch (SQLException e) {
+				Logger.error(e);
+			}
+		}
+
+		@Override
+		public void close() {
+			release(this);
+		}
+
+		private String key(String sql, boolean returnGeneratedKeys) {
+			return returnGeneratedKeys ? "+" + sql : "-" + sql;
+		}
+
+		private void reopenIfClosed() throws SQLException {
+			if (connection.isClosed()) {
+				statements.clear();
+				connection = DriverManager.getConnection(url, user, password);
+			}
+		}
+
+		private void clearOutdatedStatementCache() {
+			int current = cacheGeneration.get();
+			if (generation != current) {
+				clearStatementCache();
+				generation = current;
+			}
+		}
+
+		private void clearStatementCache() {
+			for (PreparedStatement statement : statements.values()) {
+				try {
+					statement.close();
+				} catch (SQLException e) {
+					Logger.error(e);
+				}
+			}
+			statements.clear();
+		}
+
+		private void closeQuietly() {
+			clearStatementCache();
+			try {
+				connection.close();
+			} catch (SQLException e) {
+				Logger.error(e);
+			}
+		}
+	}
+
+}
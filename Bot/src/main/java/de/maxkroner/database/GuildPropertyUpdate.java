@@ -0,0 +1,38 @@
+package de.maxkroner.database;
+
+/**
+ * New value of one property of a guild.
+ *
+ * @author kroner
+ *
+ */
+public class GuildPropertyUpdate {
+	private final PropertyType type;
+	private final long guild_id;
+	private final String property;
+	private final Object value;
+
+	public GuildPropertyUpdate(PropertyType type, long guild_id, String property, Object value) {
+		this.type = type;
+		this.guild_id = guild_id;
+		this.property = property;
+		this.value = value;
+	}
+
+	public PropertyType getType() {
+		return type;
+	}
+
+	public long getGuildId() {
+		return guild_id;
+	}
+
+	public String getProperty() {
+		return property;
+	}
+
+	public Object getValue() {
+		return value;
+	}
+
+}
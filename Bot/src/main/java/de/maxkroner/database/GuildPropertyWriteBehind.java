@@ -0,0 +1,165 @@
+package de.maxkroner.database;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.pmw.tinylog.Logger;
+
+/**
+ * Guild property updates that are not written to the store yet.
+ * An update of a property replaces the pending update of the same property, so only the
+ * last value is written. A background thread writes all pending updates at once, the H2 store
+ * writes them in one transaction with a batched MERGE per table. If writing fails the updates
+ * stay pending and are written with the next flush.
+ *
+ * @author kroner
+ *
+ */
+class GuildPropertyWriteBehind {
+	private final Supplier<IGuildPropertyStore> store;
+	private final Map<PropertyKey, Object> pending = new ConcurrentHashMap<>();
+	private final ScheduledThreadPoolExecutor flusher;
+
+	/**
+	 * @param store
+	 *            the current store of the database
+	 */
+	GuildPropertyWriteBehind(Supplier<IGuildPropertyStore> store, long flushIntervalMillis) {
+		this.store = store;
+		this.flusher = new ScheduledThreadPoolExecutor(1, runnable -> {
+			Thread thread = new Thread(runnable, "guild-property-writer");
+			thread.setDaemon(true);
+			return thread;
+		});
+		flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	void put(PropertyType type, long guild_id, String property, Object value) {
+		pending.put(new PropertyKey(type, guild_id, property), value);
+	}
+
+	/**
+	 * @return the pending updates of the type by property
+	 */
+	Map<String, Object> getPending(PropertyType type, long guild_id) {
+		Map<String, Object> properties = new HashMap<>();
+		for (Entry<PropertyKey, Object> entry : pending.entrySet()) {
+			if (entry.getKey().guild_id == guild_id && entry.getKey().type == type) {
+				properties.put(entry.getKey().property, entry.getValue());
+			}
+		}
+		return properties;
+	}
+
+	/**
+	 * @return the pending updates of the property by guild_id
+	 */
+	Map<Long, Object> getPending(PropertyType type, String property) {
+		Map<Long, Object> guilds = new HashMap<>();
+		for (Entry<PropertyKey, Object> entry : pending.entrySet()) {
+			if (entry.getKey().property.equals(property) && entry.getKey().type == type) {
+				guilds.put(entry.getKey().guild_id, entry.getValue());
+			}
+		}
+		return guilds;
+	}
+
+	/**
+	 * @return all pending updates
+	 */
+	List<GuildPropertyUpdate> getPendingUpdates() {
+		List<GuildPropertyUpdate> updates = new ArrayList<>(pending.size());
+		for (Entry<PropertyKey, Object> entry : pending.entrySet()) {
+			PropertyKey key = entry.getKey();
+			updates.add(new GuildPropertyUpdate(key.type, key.guild_id, key.property, entry.getValue()));
+		}
+		return updates;
+	}
+
+	int getPendingCount() {
+		return pending.size();
+	}
+
+	void clear() {
+		pending.clear();
+	}
+
+	/**
+	 * writes all pending updates at once
+	 */
+	synchronized void flush() throws SQLException {
+		if (pending.isEmpty()) {
+			return;
+		}
+		Map<PropertyKey, Object> snapshot = new HashMap<>(pending);
+		List<GuildPropertyUpdate> updates = new ArrayList<>(snapshot.size());
+		for (Entry<PropertyKey, Object> entry : snapshot.entrySet()) {
+			PropertyKey key = entry.getKey();
+			updates.add(new GuildPropertyUpdate(key.type, key.guild_id, key.property, entry.getValue()));
+		}
+
+		store.get().putAll(updates);
+
+		// keep updates that replaced the written value in the meantime
+		for (Entry<PropertyKey, Object> entry : snapshot.entrySet()) {
+			pending.remove(entry.getKey(), entry.getValue());
+		}
+	}
+
+	/**
+	 * stops the background thread and writes the remaining updates
+	 */
+	void shutdown() throws SQLException {
+		flusher.shutdown();
+		try {
+			flusher.awaitTermination(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		flush();
+	}
+
+	private void flushQuietly() {
+		try {
+			flush();
+		} catch (SQLException e) {
+			Logger.error("Writing {} guild properties failed, retrying with the next flush.", pending.size());
+			Logger.error(e);
+		}
+	}
+
+	private static class PropertyKey {
+		private final PropertyType type;
+		private final long guild_id;
+		private final String property;
+
+		private PropertyKey(PropertyType type, long guild_id, String property) {
+			this.type = type;
+			this.guild_id = guild_id;
+			this.property = property;
+		}
+
+		@Override
+		public int hashCode() {
+			return (Long.hashCode(guild_id) * 31 + property.hashCode()) * 31 + type.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof PropertyKey)) {
+				return false;
+			}
+			PropertyKey other = (PropertyKey) obj;
+			return guild_id == other.guild_id && property.equals(other.property) && type == other.type;
+		}
+	}
+
+}
@@ -0,0 +1,138 @@
+package de.maxkroner.database;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * In-memory copy of all properties of one guild, as stored in the
+ * guildpropertiesstring, guildpropertiesboolean and guildpropertiesint tables.
+ * A guild only has a few properties, so they are kept in one array of names and values
+ * that is scanned on lookup and replaced on every change. Property names are interned,
+ * all guilds share the same name strings.
+ *
+ * @author kroner
+ *
+ */
+public class GuildSettings {
+	private static final Object[] EMPTY = new Object[0];
+
+	private final long guild_id;
+	// property names at even, values at odd indexes, the type of a value tells its table
+	private volatile Object[] properties = EMPTY;
+
+	public GuildSettings(long guild_id) {
+		this.guild_id = guild_id;
+	}
+
+	public long getGuildId() {
+		return guild_id;
+	}
+
+	public Optional<String> getString(String property) {
+		return Optional.ofNullable((String) get(property, String.class));
+	}
+
+	public Optional<Boolean> getBoolean(String property) {
+		return Optional.ofNullable((Boolean) get(property, Boolean.class));
+	}
+
+	public Optional<Integer> getInt(String property) {
+		return Optional.ofNullable((Integer) get(property, Integer.class));
+	}
+
+	public void putString(String property, String value) {
+		put(property, value);
+	}
+
+	public void putBoolean(String property, boolean value) {
+		put(property, value);
+	}
+
+	public void putInt(String property, int value) {
+		put(property, value);
+	}
+
+	public Map<String, String> getStringProperties() {
+		return getProperties(String.class);
+	}
+
+	public Map<String, Boolean> getBooleanProperties() {
+		return getProperties(Boolean.class);
+	}
+
+	public Map<String, Integer> getIntProperties() {
+		return getProperties(Integer.class);
+	}
+
+	/**
+	 * @return number of properties of all types
+	 */
+	public int size() {
+		return properties.length / 2;
+	}
+
+	public GuildSettings copy() {
+		GuildSettings copy = new GuildSettings(guild_id);
+		copy.properties = properties;
+		return copy;
+	}
+
+	/**
+	 * @return approximate bytes used by this object, the shared property names not included
+	 */
+	public long estimateBytes() {
+		Object[] current = properties;
+		// object with guild_id and the array reference, array header and a compressed reference per slot
+		long bytes = 24 + 16 + 4L * current.length;
+		for (int i = 1; i < current.length; i += 2) {
+			if (current[i] instanceof String) {
+				bytes += 24 + 16 + ((String) current[i]).length() * 2;
+			} else if (current[i] instanceof Integer && Integer.valueOf((Integer) current[i]) != current[i]) {
+				// outside of the Integer cache
+				bytes += 16;
+			}
+		}
+		return bytes;
+	}
+
+	private Object get(String property, Class<?> type) {
+		Object[] current = properties;
+		for (int i = 0; i < current.length; i += 2) {
+			if ((current[i] == property || current[i].equals(property)) && type.isInstance(current[i + 1])) {
+				return current[i + 1];
+			}
+		}
+		return null;
+	}
+
+	private synchronized void put(String property, Object value) {
+		Object[] current = properties;
+		for (int i = 0; i < current.length; i += 2) {
+			if (current[i].equals(property) && current[i + 1].getClass() == value.getClass()) {
+				Object[] changed = current.clone();
+				changed[i + 1] = value;
+				properties = changed;
+				return;
+			}
+		}
+		Object[] added = Arrays.copyOf(current, current.length + 2);
+		added[current.length] = property.intern();
+		added[current.length + 1] = value;
+		properties = added;
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T> Map<String, T> getProperties(Class<T> type) {
+		Object[] current = properties;
+		Map<String, T> typed = new LinkedHashMap<>();
+		for (int i = 0; i < current.length; i += 2) {
+			if (type.isInstance(current[i + 1])) {
+				typed.put((String) current[i], (T) current[i + 1]);
+			}
+		}
+		return typed;
+	}
+
+}
@@ -0,0 +1,147 @@
+package de.maxkroner.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.AbstractMap.SimpleEntry;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.function.Consumer;
+
+import de.maxkroner.database.ConnectionPool.PooledConnection;
+
+/**
+ * Guild properties in the guildpropertiesstring, guildpropertiesboolean and guildpropertiesint
+ * tables of the database.
+ *
+ * @author kroner
+ *
+ */
+public class H2GuildPropertyStore implements IGuildPropertyStore {
+	private final BotDatabase db;
+
+	public H2GuildPropertyStore(BotDatabase db) {
+		this.db = db;
+	}
+
+	@Override
+	public GuildSettings load(long guild_id) throws SQLException {
+		GuildSettings settings = new GuildSettings(guild_id);
+
+		// all three reads on the same connection
+		try (PooledConnection connection = db.getConnectionPool().acquire()) {
+			for (Entry<String, String> row : db.query("SELECT property, value FROM guildpropertiesstring WHERE guild_id = ?", rs -> new SimpleEntry<>(rs.getString(1), rs.getString(2)), guild_id)) {
+				settings.putString(row.getKey(), row.getValue());
+			}
+			for (Entry<String, Boolean> row : db.query("SELECT property, value FROM guildpropertiesboolean WHERE guild_id = ?", rs -> new SimpleEntry<>(rs.getString(1), rs.getBoolean(2)), guild_id)) {
+				settings.putBoolean(row.getKey(), row.getValue());
+			}
+			for (Entry<String, Integer> row : db.query("SELECT property, value FROM guildpropertiesint WHERE guild_id = ?", rs -> new SimpleEntry<>(rs.getString(1), rs.getInt(2)), guild_id)) {
+				settings.putInt(row.getKey(), row.getValue());
+			}
+		}
+		return settings;
+	}
+
+	@Override
+	public Map<Long, String> loadStringPropertyForAllGuilds(String property) throws SQLException {
+		Map<Long, String> values = new HashMap<>();
+		for (Entry<Long, String> row : db.query("SELECT guild_id, value FROM guildpropertiesstring WHERE property = ?", rs -> new SimpleEntry<>(rs.getLong(1), rs.getString(2)), property)) {
+			values.put(row.getKey(), row.getValue());
+		}
+		return values;
+	}
+
+	/**
+	 * reads the three tables one after another on the same connection
+	 */
+	@Override
+	public void forEachProperty(Consumer<GuildPropertyUpdate> consumer) throws SQLException {
+		try (PooledConnection connection = db.getConnectionPool().acquire()) {
+			db.forEachRow("SELECT guild_id, property, value FROM guildpropertiesstring", rs -> {
+				consumer.accept(new GuildPropertyUpdate(PropertyType.STRING, rs.getLong(1), rs.getString(2), rs.getString(3)));
+				return null;
+			});
+			db.forEachRow("SELECT guild_id, property, value FROM guildpropertiesboolean", rs -> {
+				consumer.accept(new GuildPropertyUpdate(PropertyType.BOOLEAN, rs.getLong(1), rs.getString(2), rs.getBoolean(3)));
+				return null;
+			});
+			db.forEachRow("SELECT guild_id, property, value FROM guildpropertiesint", rs -> {
+				consumer.accept(new GuildPropertyUpdate(PropertyType.INT, rs.getLong(1), rs.getString(2), rs.getInt(3)));
+				return null;
+			});
+		}
+	}
+
+	@Override
+	public void put(PropertyType type, long guild_id, String property, Object value) throws SQLException {
+		int affectedRows = db.update(mergeQuery(type), guild_id, property, value);
+
+		if (affectedRows == 0) {
+			throw new SQLException("Inserting property failed, no rows affected.");
+		}
+	}
+
+	/**
+	 * writes the updates in one transaction with a batched MERGE per table
+	 */
+	@Override
+	public void putAll(Collection<GuildPropertyUpdate> updates) throws SQLException {
+		Map<PropertyType, List<Object[]>> rowsByType = new EnumMap<>(PropertyType.class);
+		for (GuildPropertyUpdate update : updates) {
+			rowsByType.computeIfAbsent(update.getType(), type -> new ArrayList<>()).add(new Object[] { update.getGuildId(), update.getProperty(), update.getValue() });
+		}
+
+		try (PooledConnection connection = db.getConnectionPool().acquire()) {
+			Connection conn = connection.getConnection();
+			conn.setAutoCommit(false);
+			try {
+				for (Entry<PropertyType, List<Object[]>> rows : rowsByType.entrySet()) {
+					String query = mergeQuery(rows.getKey());
+					PreparedStatement st = connection.borrowStatement(query, false);
+					try {
+						for (Object[] row : rows.getValue()) {
+							for (int i = 0; i < row.length; i++) {
+								st.setObject(i + 1, row[i]);
+							}
+							st.addBatch();
+						}
+						db.getQueryStatistics().time(query, null, st::executeBatch);
+					} finally {
+						connection.returnStatement(query, false, st);
+					}
+				}
+				conn.commit();
+			} catch (SQLException e) {
+				conn.rollback();
+				throw e;
+			} finally {
+				conn.setAutoCommit(true);
+			}
+		}
+	}
+
+	@Override
+	public void clear() throws SQLException {
+		for (PropertyType type : PropertyType.values()) {
+			db.update("DELETE FROM " + type.getTable());
+		}
+	}
+
+	/**
+	 * the connections belong to the database, it closes them
+	 */
+	@Override
+	public void close() {
+	}
+
+	private static String mergeQuery(PropertyType type) {
+		return "MERGE INTO " + type.getTable() + " (guild_id, property, value) VALUES (?, ?, ?)";
+	}
+
+}
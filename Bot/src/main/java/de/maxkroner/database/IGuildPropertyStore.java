@@ -0,0 +1,49 @@
+package de.maxkroner.database;
+
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Storage of the guild properties of a BotDatabase.
+ *
+ * @author kroner
+ *
+ */
+public interface IGuildPropertyStore {
+
+	/**
+	 * @return a new GuildSettings with all properties of the guild
+	 */
+	public GuildSettings load(long guild_id) throws SQLException;
+
+	/**
+	 * @return the value of the string property by guild_id for every guild that has set it
+	 */
+	public Map<Long, String> loadStringPropertyForAllGuilds(String property) throws SQLException;
+
+	/**
+	 * streams every stored property of every guild to the consumer
+	 */
+	public void forEachProperty(Consumer<GuildPropertyUpdate> consumer) throws SQLException;
+
+	/**
+	 * @param value
+	 *            String, Boolean or Integer, depending on the type
+	 */
+	public void put(PropertyType type, long guild_id, String property, Object value) throws SQLException;
+
+	/**
+	 * writes the updates in order, at once if the store supports transactions
+	 */
+	public void putAll(Collection<GuildPropertyUpdate> updates) throws SQLException;
+
+	/**
+	 * removes all properties of all guilds
+	 */
+	public void clear() throws SQLException;
+
+	public void close();
+
+}
@@ -0,0 +1,17 @@
+package de.maxkroner.database;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Maps the current row of a result set to an object.
+ *
+ * @author kroner
+ *
+ */
+@FunctionalInterface
+public interface IRowMapper<T> {
+
+	public T map(ResultSet rs) throws SQLException;
+
+}
@@ -0,0 +1,321 @@
+package de.maxkroner.database;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+import org.pmw.tinylog.Logger;
+
+/**
+ * Guild properties in an append-only log file that is mapped into memory.
+ * Every update appends a record, all current values are kept in memory, so reads never touch the file.
+ *
+ * A record is its length, the type, guild_id, property and value, followed by a CRC32 of the record.
+ * On startup the log is read until the first incomplete or corrupt record, which is where a crash
+ * interrupted the last write, and the rest of the file is cleared.
+ * A background thread forces the written records to disk and compacts the log by rewriting only
+ * the current values once most records are outdated.
+ *
+ * @author kroner
+ *
+ */
+public class MappedGuildPropertyStore implements IGuildPropertyStore {
+	private static final int INITIAL_SIZE = 1 << 20;
+	private static final int MIN_RECORDS_FOR_COMPACTION = 1024;
+	// length and checksum around the record
+	private static final int FRAME_SIZE = 8;
+
+	private final Path file;
+	private final Path compactionFile;
+	private final Map<Long, GuildSettings> index = new ConcurrentHashMap<>();
+	private final ScheduledThreadPoolExecutor maintenance;
+
+	// guarded by this
+	private FileChannel channel;
+	private MappedByteBuffer buffer;
+	private int position;
+	private int records;
+
+	/**
+	 * opens the log and recovers the properties written before
+	 *
+	 * @param file
+	 *            the log file, created if it doesn't exist
+	 * @param syncIntervalMillis
+	 *            time between forcing the records to disk and checking if the log should be compacted
+	 */
+	public MappedGuildPropertyStore(Path file, long syncIntervalMillis) throws IOException {
+		this.file = file;
+		this.compactionFile = Paths.get(file.toString() + ".compact");
+		// a compaction was interrupted before it replaced the log
+		Files.deleteIfExists(compactionFile);
+		open();
+		this.maintenance = new ScheduledThreadPoolExecutor(1, runnable -> {
+			Thread thread = new Thread(runnable, "guild-property-log");
+			thread.setDaemon(true);
+			return thread;
+		});
+		maintenance.scheduleWithFixedDelay(this::maintain, syncIntervalMillis, syncIntervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public GuildSettings load(long guild_id) {
+		GuildSettings settings = index.get(guild_id);
+		return settings == null ? new GuildSettings(guild_id) : settings.copy();
+	}
+
+	@Override
+	public Map<Long, String> loadStringPropertyForAllGuilds(String property) {
+		Map<Long, String> values = new HashMap<>();
+		for (GuildSettings settings : index.values()) {
+			settings.getString(property).ifPresent(value -> values.put(settings.getGuildId(), value));
+		}
+		return values;
+	}
+
+	@Override
+	public void forEachProperty(Consumer<GuildPropertyUpdate> consumer) {
+		for (GuildSettings settings : index.values()) {
+			long guild_id = settings.getGuildId();
+			settings.getStringProperties().forEach((property, value) -> consumer.accept(new GuildPropertyUpdate(PropertyType.STRING, guild_id, property, value)));
+			settings.getBooleanProperties().forEach((property, value) -> consumer.accept(new GuildPropertyUpdate(PropertyType.BOOLEAN, guild_id, property, value)));
+			settings.getIntProperties().forEach((property, value) -> consumer.accept(new GuildPropertyUpdate(PropertyType.INT, guild_id, property, value)));
+		}
+	}
+
+	@Override
+	public synchronized void put(PropertyType type, long guild_id, String property, Object value) throws SQLException {
+		try {
+			append(type, guild_id, property, value);
+		} catch (IOException e) {
+			throw new SQLException("Writing guild property failed.", e);
+		}
+		apply(type, guild_id, property, value);
+	}
+
+	@Override
+	public synchronized void putAll(Collection<GuildPropertyUpdate> updates) throws SQLException {
+		for (GuildPropertyUpdate update : updates) {
+			put(update.getType(), update.getGuildId(), update.getProperty(), update.getValue());
+		}
+	}
+
+	@Override
+	public synchronized void clear() throws SQLException {
+		for (int i = 0; i < position; i++) {
+			buffer.put(i, (byte) 0);
+		}
+		buffer.force();
+		position = 0;
+		records = 0;
+		index.clear();
+	}
+
+	/**
+	 * @return number of records in the log, including outdated ones
+	 */
+	public synchronized int getRecordCount() {
+		return records;
+	}
+
+	/**
+	 * rewrites the log with only the current value of every property
+	 */
+	public synchronized void compact() throws IOException {
+		List<byte[]> current = new ArrayList<>();
+		for (GuildSettings settings : index.values()) {
+			long guild_id = settings.getGuildId();
+			for (Entry<String, String> property : settings.getStringProperties().entrySet()) {
+				current.add(encode(PropertyType.STRING, guild_id, property.getKey(), property.getValue()));
+			}
+			for (Entry<String, Boolean> property : settings.getBooleanProperties().entrySet()) {
+				current.add(encode(PropertyType.BOOLEAN, guild_id, property.getKey(), property.getValue()));
+			}
+			for (Entry<String, Integer> property : settings.getIntProperties().entrySet()) {
+				current.add(encode(PropertyType.INT, guild_id, property.getKey(), property.getValue()));
+			}
+		}
+		int size = 0;
+		for (byte[] record : current) {
+			size += record.length;
+		}
+
+		try (FileChannel compacted = FileChannel.open(compactionFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			MappedByteBuffer target = compacted.map(MapMode.READ_WRITE, 0, Math.max(INITIAL_SIZE, size * 2));
+			for (byte[] record : current) {
+				target.put(record);
+			}
+			target.force();
+		}
+		buffer.force();
+		channel.close();
+		// the old log stays complete until it is replaced at once
+		Files.move(compactionFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		// the index is unchanged, readers don't notice the compaction
+		channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		buffer = channel.map(MapMode.READ_WRITE, 0, channel.size());
+		position = size;
+		records = current.size();
+		Logger.info("Compacted guild property log to {} records.", records);
+	}
+
+	@Override
+	public synchronized void close() {
+		maintenance.shutdown();
+		try {
+			buffer.force();
+			channel.close();
+		} catch (IOException e) {
+			Logger.error(e);
+		}
+	}
+
+	private synchronized void maintain() {
+		try {
+			buffer.force();
+			int live = 0;
+			for (GuildSettings settings : index.values()) {
+				live += settings.size();
+			}
+			if (records >= MIN_RECORDS_FOR_COMPACTION && records > 2 * live) {
+				compact();
+			}
+		} catch (IOException e) {
+			Logger.error(e);
+		}
+	}
+
+	/**
+	 * maps the log and reads all complete records into the index
+	 */
+	private void open() throws IOException {
+		channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		buffer = channel.map(MapMode.READ_WRITE, 0, Math.max(INITIAL_SIZE, channel.size()));
+		index.clear();
+		position = 0;
+		records = 0;
+		CRC32 crc = new CRC32();
+		while (position + FRAME_SIZE <= buffer.capacity()) {
+			int length = buffer.getInt(position);
+			if (length <= 0 || position + FRAME_SIZE + length > buffer.capacity()) {
+				break;
+			}
+			byte[] body = new byte[length];
+			ByteBuffer record = buffer.duplicate();
+			record.position(position + 4);
+			record.get(body);
+			crc.reset();
+			crc.update(body, 0, length);
+			if (record.getInt() != (int) crc.getValue()) {
+				break;
+			}
+			decode(ByteBuffer.wrap(body));
+			position += FRAME_SIZE + length;
+			records++;
+		}
+		// clear what's left of an interrupted write, so it can't be read as a record later
+		for (int i = position; i < buffer.capacity(); i++) {
+			buffer.put(i, (byte) 0);
+		}
+	}
+
+	private void append(PropertyType type, long guild_id, String property, Object value) throws IOException {
+		byte[] record = encode(type, guild_id, property, value);
+		if (position + record.length > buffer.capacity()) {
+			buffer.force();
+			buffer = channel.map(MapMode.READ_WRITE, 0, Math.max(buffer.capacity() * 2L, position + record.length));
+		}
+		ByteBuffer target = buffer.duplicate();
+		target.position(position);
+		target.put(record);
+		position += record.length;
+		records++;
+	}
+
+	private static byte[] encode(PropertyType type, long guild_id, String property, Object value) {
+		byte[] propertyBytes = property.getBytes(StandardCharsets.UTF_8);
+		byte[] valueBytes;
+		switch (type) {
+		case STRING:
+			valueBytes = ((String) value).getBytes(StandardCharsets.UTF_8);
+			break;
+		case BOOLEAN:
+			valueBytes = new byte[] { (byte) ((Boolean) value ? 1 : 0) };
+			break;
+		default:
+			valueBytes = ByteBuffer.allocate(4).putInt((Integer) value).array();
+			break;
+		}
+		int length = 1 + 8 + 2 + propertyBytes.length + 4 + valueBytes.length;
+		ByteBuffer record = ByteBuffer.allocate(FRAME_SIZE + length);
+		record.putInt(length);
+		record.put((byte) type.ordinal());
+		record.putLong(guild_id);
+		record.putShort((short) propertyBytes.length);
+		record.put(propertyBytes);
+		record.putInt(valueBytes.length);
+		record.put(valueBytes);
+		CRC32 crc = new CRC32();
+		crc.update(record.array(), 4, length);
+		record.putInt((int) crc.getValue());
+		return record.array();
+	}
+
+	private void decode(ByteBuffer body) {
+		PropertyType type = PropertyType.values()[body.get()];
+		long guild_id = body.getLong();
+		byte[] propertyBytes = new byte[body.getShort()];
+		body.get(propertyBytes);
+		byte[] valueBytes = new byte[body.getInt()];
+		body.get(valueBytes);
+		Object value;
+		switch (type) {
+		case STRING:
+			value = new String(valueBytes, StandardCharsets.UTF_8);
+			break;
+		case BOOLEAN:
+			value = valueBytes[0] != 0;
+			break;
+		default:
+			value = ByteBuffer.wrap(valueBytes).getInt();
+			break;
+		}
+		apply(type, guild_id, new String(propertyBytes, StandardCharsets.UTF_8), value);
+	}
+
+	private void apply(PropertyType type, long guild_id, String property, Object value) {
+		GuildSettings settings = index.computeIfAbsent(guild_id, GuildSettings::new);
+		switch (type) {
+		case STRING:
+			settings.putString(property, (String) value);
+			break;
+		case BOOLEAN:
+			settings.putBoolean(property, (Boolean) value);
+			break;
+		default:
+			settings.putInt(property, (Integer) value);
+			break;
+		}
+	}
+
+}
@@ -0,0 +1,22 @@
+package de.maxkroner.database;
+
+/**
+ * Value types of guild properties, every type has its own table.
+ *
+ * @author kroner
+ *
+ */
+public enum PropertyType {
+	STRING("guildpropertiesstring"), BOOLEAN("guildpropertiesboolean"), INT("guildpropertiesint");
+
+	private final String table;
+
+	private PropertyType(String table) {
+		this.table = table;
+	}
+
+	public String getTable() {
+		return table;
+	}
+
+}
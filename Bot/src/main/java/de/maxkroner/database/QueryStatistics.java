@@ -0,0 +1,127 @@
+package de.maxkroner.database;
+
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.pmw.tinylog.Logger;
+
+import de.maxkroner.metrics.LatencyHistogram;
+import de.maxkroner.tracing.Span;
+import de.maxkroner.tracing.Tracer;
+
+/**
+ * Latency histogram of every query shape of a database. The shape is the sql with literals replaced
+ * by ?, so queries that only differ in their values are counted together.
+ * Queries slower than the threshold are logged with their shape and the types of their parameters,
+ * values are never logged because they can contain user messages.
+ *
+ * @author kroner
+ *
+ */
+public class QueryStatistics {
+	public static final long DEFAULT_SLOW_QUERY_MILLIS = 250;
+	// sql built with literals would add a shape per value, those are normalized every time
+	private static final int MAX_CACHED_SHAPES = 1024;
+	private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+	private static final Pattern NUMBER_LITERAL = Pattern.compile("(?<![\\w.])-?\\d+(?:\\.\\d+)?(?![\\w.])");
+	private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+	private final Map<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+	private final Map<String, String> shapes = new ConcurrentHashMap<>();
+	private volatile long slowQueryMillis = DEFAULT_SLOW_QUERY_MILLIS;
+
+	/**
+	 * runs the call and records how long it took, also if it fails
+	 *
+	 * @param sql
+	 *            the executed sql
+	 * @param parameters
+	 *            the values bound to the sql, only their types are logged
+	 */
+	public <T> T time(String sql, Object[] parameters, IStatementCall<T> call) throws SQLException {
+		long start = System.nanoTime();
+		try (Span span = Tracer.isTracing() ? Tracer.span("db " + shapeOf(sql)) : Span.NOOP) {
+			return call.call();
+		} finally {
+			record(sql, parameters, System.nanoTime() - start);
+		}
+	}
+
+	public void record(String sql, Object[] parameters, long nanos) {
+		String shape = shapeOf(sql);
+		histograms.computeIfAbsent(shape, s -> new LatencyHistogram()).record(nanos, TimeUnit.NANOSECONDS);
+		long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+		if (millis >= slowQueryMillis) {
+			Logger.warn("Slow query ({} ms): {} {}", millis, shape, redact(parameters));
+		}
+	}
+
+	/**
+	 * @return histogram by query shape, sorted by shape
+	 */
+	public Map<String, LatencyHistogram> getHistograms() {
+		return Collections.unmodifiableMap(new TreeMap<>(histograms));
+	}
+
+	public long getSlowQueryMillis() {
+		return slowQueryMillis;
+	}
+
+	/**
+	 * @param slowQueryMillis
+	 *            queries taking at least as long are logged
+	 */
+	public void setSlowQueryMillis(long slowQueryMillis) {
+		this.slowQueryMillis = slowQueryMillis;
+	}
+
+	public void clear() {
+		histograms.clear();
+	}
+
+	/**
+	 * replaces string and number literals by ? and collapses whitespace
+	 */
+	public static String normalize(String sql) {
+		String shape = STRING_LITERAL.matcher(sql).replaceAll("?");
+		shape = NUMBER_LITERAL.matcher(shape).replaceAll("?");
+		shape = WHITESPACE.matcher(shape).replaceAll(" ").trim();
+		return shape.endsWith(";") ? shape.substring(0, shape.length() - 1).trim() : shape;
+	}
+
+	/**
+	 * @return the types of the parameters, e.g. [String, Long, null]
+	 */
+	static String redact(Object[] parameters) {
+		StringJoiner types = new StringJoiner(", ", "[", "]");
+		if (parameters != null) {
+			for (Object parameter : parameters) {
+				types.add(parameter == null ? "null" : parameter.getClass().getSimpleName());
+			}
+		}
+		return types.toString();
+	}
+
+	private String shapeOf(String sql) {
+		String shape = shapes.get(sql);
+		if (shape == null) {
+			shape = normalize(sql);
+			if (shapes.size() < MAX_CACHED_SHAPES) {
+				shapes.put(sql, shape);
+			}
+		}
+		return shape;
+	}
+
+	@FunctionalInterface
+	public interface IStatementCall<T> {
+		public T call() throws SQLException;
+	}
+
+}
@@ -0,0 +1,243 @@
+package de.maxkroner.execution;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+import de.maxkroner.util.Snowflakes;
+
+/**
+ * Token buckets that limit the commands of every user and every guild. A command takes its cost in
+ * tokens from the bucket of its author and the bucket of its guild, the buckets refill at a fixed rate.
+ *
+ * The buckets are stripes of two fixed arrays, a user or guild id picks its stripe by hash, so the
+ * memory doesn't grow with the number of users. Ids on the same stripe share a bucket, which only makes
+ * the limit stricter for them; with many more stripes than active users that rarely happens.
+ * A bucket is one long, the missing tokens, the time of the last command and if the last rejection
+ * was already noticed, updated with compare and set, so neither taking tokens nor rejecting locks.
+ *
+ * @author kroner
+ *
+ */
+public class CommandRateLimiter {
+	public static final int DEFAULT_USER_STRIPES = 1 << 16;
+	public static final int DEFAULT_GUILD_STRIPES = 1 << 14;
+	// tokens are counted in thousandths, so slow refill rates don't round down to nothing
+	private static final long UNITS_PER_TOKEN = 1000;
+	private static final int TIME_BITS = 40;
+	private static final int DEFICIT_BITS = 23;
+	private static final long TIME_MASK = (1L << TIME_BITS) - 1;
+	private static final long DEFICIT_MASK = (1L << DEFICIT_BITS) - 1;
+	private static final long NOTIFIED = 1L << 63;
+	public static final int MAX_CAPACITY = (int) (DEFICIT_MASK / UNITS_PER_TOKEN);
+
+	private final Buckets users;
+	private final Buckets guilds;
+	private final Map<String, Integer> costs = new ConcurrentHashMap<>();
+	private final LongSupplier clock;
+	private final long start;
+
+	/**
+	 * @param userCapacity
+	 *            commands a user can use at once
+	 * @param userRefillPerSecond
+	 *            commands a user can use per second in the long run
+	 * @param guildCapacity
+	 *            commands all users of a guild can use at once
+	 * @param guildRefillPerSecond
+	 *            commands all users of a guild can use per second in the long run
+	 */
+	public CommandRateLimiter(int userCapacity, double userRefillPerSecond, int guildCapacity, double guildRefillPerSecond) {
+		this(userCapacity, userRefillPerSecond, DEFAULT_USER_STRIPES, guildCapacity, guildRefillPerSecond, DEFAULT_GUILD_STRIPES,
+				() -> TimeUnit.NANOSECONDS.toMillis(System.nanoTime()));
+	}
+
+	/**
+	 * @param userStripes
+	 *            number of user buckets, a power of two
+	 * @param guildStripes
+	 *            number of guild buckets, a power of two
+	 * @param clock
+	 *            monotonic time in milliseconds
+	 */
+	CommandRateLimiter(int userCapacity, double userRefillPerSecond, int userStripes, int guildCapacity, double guildRefillPerSecond, int guildStripes,
+			LongSupplier clock) {
+		this.users = new Buckets(userCapacity, userRefillPerSecond, userStripes);
+		this.guilds = new Buckets(guildCapacity, guildRefillPerSecond, guildStripes);
+		this.clock = clock;
+		this.start = clock.getAsLong();
+	}
+
+	/**
+	 * @param command
+	 *            name of the command, without prefix and alias
+	 * @param cost
+	 *            tokens the command takes, 1 if no cost is set
+	 */
+	public void setCost(String command, int cost) {
+		if (cost < 1 || cost > Math.min(users.capacity, guilds.capacity) / UNITS_PER_TOKEN) {
+			throw new IllegalArgumentException("The cost of " + command + " has to be between 1 and the capacity of the buckets.");
+		}
+		costs.put(command, cost);
+	}
+
+	public int getCost(String command) {
+		return command == null ? 1 : costs.getOrDefault(command, 1);
+	}
+
+	/**
+	 * takes the cost of the command from the buckets of the user and the guild
+	 *
+	 * @param command
+	 *            name of the command, null for an unknown command
+	 * @return null if the command may run
+	 */
+	public Rejection tryAcquire(long user_id, long guild_id, String command) {
+		long now = clock.getAsLong() - start;
+		long cost = getCost(command) * UNITS_PER_TOKEN;
+		long userWait = users.tryTake(user_id, cost, now);
+		if (userWait != 0) {
+			return userWait > 0 ? new Rejection(Scope.USER, userWait, true) : Rejection.USER_NOTICED;
+		}
+		long guildWait = guilds.tryTake(guild_id, cost, now);
+		if (guildWait != 0) {
+			// the command doesn't run, the user keeps the tokens
+			users.giveBack(user_id, cost);
+			return guildWait > 0 ? new Rejection(Scope.GUILD, guildWait, true) : Rejection.GUILD_NOTICED;
+		}
+		return null;
+	}
+
+	/**
+	 * @return bytes of the buckets, independent of the number of users and guilds
+	 */
+	public long estimateBytes() {
+		return users.estimateBytes() + guilds.estimateBytes();
+	}
+
+	public enum Scope {
+		USER, GUILD
+	}
+
+	/**
+	 * A rejected command. Only the first rejection after a command ran asks for a notice,
+	 * so a spamming user gets one cooldown message instead of one per message.
+	 */
+	public static class Rejection {
+		private static final Rejection USER_NOTICED = new Rejection(Scope.USER, 0, false);
+		private static final Rejection GUILD_NOTICED = new Rejection(Scope.GUILD, 0, false);
+
+		private final Scope scope;
+		private final long waitMillis;
+		private final boolean noticeDue;
+
+		private Rejection(Scope scope, long waitMillis, boolean noticeDue) {
+			this.scope = scope;
+			this.waitMillis = waitMillis;
+			this.noticeDue = noticeDue;
+		}
+
+		/**
+		 * @return if the bucket of the user or of the guild was empty
+		 */
+		public Scope getScope() {
+			return scope;
+		}
+
+		/**
+		 * @return time until the command could run, 0 if no notice is due
+		 */
+		public long getWaitMillis() {
+			return waitMillis;
+		}
+
+		/**
+		 * @return true if the user or guild should be told to wait
+		 */
+		public boolean isNoticeDue() {
+			return noticeDue;
+		}
+	}
+
+	private static class Buckets {
+		private final AtomicLongArray states;
+		private final int mask;
+		// in thousandths of a token
+		private final long capacity;
+		private final double refillPerMilli;
+
+		private Buckets(int capacity, double refillPerSecond, int stripes) {
+			if (capacity < 1 || capacity > MAX_CAPACITY) {
+				throw new IllegalArgumentException("The capacity has to be between 1 and " + MAX_CAPACITY + ".");
+			}
+			if (refillPerSecond <= 0) {
+				throw new IllegalArgumentException("The refill rate has to be positive.");
+			}
+			if (Integer.bitCount(stripes) != 1) {
+				throw new IllegalArgumentException("The number of stripes has to be a power of two.");
+			}
+			// a state of 0 is a full bucket, nothing missing
+			this.states = new AtomicLongArray(stripes);
+			this.mask = stripes - 1;
+			this.capacity = capacity * UNITS_PER_TOKEN;
+			// thousandths of a token per millisecond are tokens per second
+			this.refillPerMilli = refillPerSecond;
+		}
+
+		/**
+		 * @return 0 if the tokens were taken, otherwise the milliseconds until there are enough of them,
+		 *         negative if the rejection was noticed before
+		 */
+		private long tryTake(long key, long cost, long now) {
+			int index = index(key);
+			while (true) {
+				long state = states.get(index);
+				long missing = missing(state, now) + cost;
+				if (missing <= capacity) {
+					if (states.compareAndSet(index, state, (missing << TIME_BITS) | now)) {
+						return 0;
+					}
+				} else {
+					long wait = Math.max(1, (long) Math.ceil((missing - capacity) / refillPerMilli));
+					if ((state & NOTIFIED) != 0) {
+						return -wait;
+					}
+					// whoever sets the flag sends the notice
+					if (states.compareAndSet(index, state, state | NOTIFIED)) {
+						return wait;
+					}
+				}
+			}
+		}
+
+		private void giveBack(long key, long cost) {
+			int index = index(key);
+			long state;
+			long missing;
+			do {
+				state = states.get(index);
+				missing = Math.max(0, ((state >>> TIME_BITS) & DEFICIT_MASK) - cost);
+			} while (!states.compareAndSet(index, state, (state & (NOTIFIED | TIME_MASK)) | (missing << TIME_BITS)));
+		}
+
+		/**
+		 * @return thousandths of a token missing in the bucket at the time
+		 */
+		private long missing(long state, long now) {
+			long missing = (state >>> TIME_BITS) & DEFICIT_MASK;
+			long elapsed = Math.max(0, now - (state & TIME_MASK));
+			return Math.max(0, missing - (long) (elapsed * refillPerMilli));
+		}
+
+		private int index(long key) {
+			return Snowflakes.spread(key) & mask;
+		}
+
+		private long estimateBytes() {
+			return 16 + 8L * states.length();
+		}
+	}
+
+}
@@ -0,0 +1,43 @@
+package de.maxkroner.execution;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executes the commands received by a Bot.
+ *
+ * @author kroner
+ *
+ */
+public interface ICommandExecutor {
+
+	/**
+	 * @param guild_id
+	 *            guild the command was sent in
+	 * @param task
+	 *            parses and dispatches the command
+	 * @return false if the command was rejected because too many commands are waiting
+	 */
+	public boolean execute(long guild_id, Runnable task);
+
+	/**
+	 * @return number of commands waiting to be executed
+	 */
+	public int getQueuedTaskCount();
+
+	/**
+	 * @return number of commands that are currently executed
+	 */
+	public int getActiveCount();
+
+	public long getCompletedTaskCount();
+
+	public long getRejectedTaskCount();
+
+	/**
+	 * stops accepting commands, queued commands are still executed
+	 */
+	public void shutdown();
+
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException;
+
+}
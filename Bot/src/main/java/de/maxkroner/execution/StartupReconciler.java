@@ -0,0 +1,122 @@
+package de.maxkroner.execution;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.pmw.tinylog.Logger;
+
+/**
+ * Brings the state of a module in line with the guilds after startup, several guilds at once.
+ * The guilds are reconciled by a fixed number of threads, so at most that many guilds wait for
+ * their REST requests at the same time. The requests themselves should go through the
+ * RateLimitScheduler with low priority, which keeps all guilds together within the global budget
+ * and lets the answers to commands go first.
+ *
+ * A guild is reconciled once its task finished, also if it failed. Until then the module should
+ * leave the guild alone, e.g. not accept its commands. The progress is logged in steps of 10%.
+ *
+ * @author kroner
+ *
+ */
+public class StartupReconciler {
+	private final String name;
+	private final int parallelism;
+	private final IGuildTask task;
+	private final Set<Long> pending = ConcurrentHashMap.newKeySet();
+	private final AtomicInteger completed = new AtomicInteger();
+	private final AtomicInteger failed = new AtomicInteger();
+	private volatile int total = 0;
+
+	/**
+	 * @param name
+	 *            shown in the log and prefix of the thread names
+	 * @param parallelism
+	 *            number of guilds reconciled at once
+	 * @param task
+	 *            reconciles one guild
+	 */
+	public StartupReconciler(String name, int parallelism, IGuildTask task) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("parallelism must be at least 1");
+		}
+		this.name = name;
+		this.parallelism = parallelism;
+		this.task = task;
+	}
+
+	/**
+	 * starts reconciling the guilds in the background
+	 *
+	 * @return completed when all guilds are reconciled
+	 */
+	public CompletableFuture<Void> start(Collection<Long> guild_ids) {
+		pending.addAll(guild_ids);
+		total = guild_ids.size();
+		long start = System.nanoTime();
+		AtomicInteger threadCount = new AtomicInteger();
+		ExecutorService workers = new ThreadPoolExecutor(parallelism, parallelism, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), runnable -> {
+			Thread thread = new Thread(runnable, name + "-reconciler-" + threadCount.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		List<CompletableFuture<Void>> guilds = new ArrayList<>();
+		for (long guild_id : guild_ids) {
+			guilds.add(CompletableFuture.runAsync(() -> reconcile(guild_id), workers));
+		}
+		return CompletableFuture.allOf(guilds.toArray(new CompletableFuture[guilds.size()])).whenComplete((result, e) -> {
+			workers.shutdown();
+			Logger.info("{}: reconciled {} guilds in {} ms, {} failed.", name, total, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), failed.get());
+		});
+	}
+
+	/**
+	 * @return false while the guild waits for its reconciliation, true for guilds that weren't part of it
+	 */
+	public boolean isReconciled(long guild_id) {
+		return !pending.contains(guild_id);
+	}
+
+	public int getPendingCount() {
+		return pending.size();
+	}
+
+	public int getCompletedCount() {
+		return completed.get();
+	}
+
+	public int getFailedCount() {
+		return failed.get();
+	}
+
+	private void reconcile(long guild_id) {
+		try {
+			task.reconcile(guild_id);
+		} catch (Exception e) {
+			failed.incrementAndGet();
+			Logger.error("{}: reconciling guild {} failed.", name, guild_id);
+			Logger.error(e);
+		} finally {
+			pending.remove(guild_id);
+			int done = completed.incrementAndGet();
+			if (done * 10 / total > (done - 1) * 10 / total && done < total) {
+				Logger.info("{}: reconciled {} of {} guilds.", name, done, total);
+			}
+		}
+	}
+
+	@FunctionalInterface
+	public interface IGuildTask {
+		public void reconcile(long guild_id) throws Exception;
+	}
+
+}
@@ -0,0 +1,148 @@
+package de.maxkroner.execution;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.maxkroner.util.Snowflakes;
+
+/**
+ * Executes tasks on a fixed number of stripes, each with one thread and a bounded queue.
+ * Tasks with the same key always run on the same stripe, so they run one after another
+ * in the order they were submitted. Tasks with keys on different stripes run in parallel.
+ *
+ * @author kroner
+ *
+ */
+public class StripedExecutor implements ICommandExecutor {
+	private final ThreadPoolExecutor[] stripes;
+	private final int queueCapacity;
+	private final AtomicLong rejectedTasks = new AtomicLong();
+
+	/**
+	 * @param name
+	 *            prefix of the thread names
+	 * @param stripeCount
+	 *            number of stripes, every stripe has its own thread
+	 * @param queueCapacity
+	 *            maximum number of waiting tasks per stripe
+	 */
+	public StripedExecutor(String name, int stripeCount, int queueCapacity) {
+		if(stripeCount < 1 || queueCapacity < 1){
+			throw new IllegalArgumentException("stripeCount and queueCapacity must be at least 1");
+		}
+		this.queueCapacity = queueCapacity;
+		this.stripes = new ThreadPoolExecutor[stripeCount];
+		for (int i = 0; i < stripeCount; i++) {
+			String threadName = name + "-" + i;
+			stripes[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+				Thread thread = new Thread(runnable, threadName);
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+	}
+
+	/**
+	 * Queues the task on the stripe of the key
+	 *
+	 * @param key
+	 *            tasks with the same key run in order, e.g. the guild id
+	 * @param task
+	 *            task to execute
+	 * @return false if the queue of the stripe is full or the executor is shut down
+	 */
+	@Override
+	public boolean execute(long key, Runnable task) {
+		try {
+			stripes[indexFor(key)].execute(task);
+			return true;
+		} catch (RejectedExecutionException e) {
+			rejectedTasks.incrementAndGet();
+			return false;
+		}
+	}
+
+	public int getStripeCount() {
+		return stripes.length;
+	}
+
+	public int getQueueCapacity() {
+		return queueCapacity;
+	}
+
+	/**
+	 * @return number of waiting tasks on the stripe of the key
+	 */
+	public int getQueueDepth(long key) {
+		return stripes[indexFor(key)].getQueue().size();
+	}
+
+	/**
+	 * @return number of waiting tasks for every stripe
+	 */
+	public int[] getQueueDepths() {
+		int[] depths = new int[stripes.length];
+		for (int i = 0; i < stripes.length; i++) {
+			depths[i] = stripes[i].getQueue().size();
+		}
+		return depths;
+	}
+
+	@Override
+	public int getQueuedTaskCount() {
+		int queued = 0;
+		for (ThreadPoolExecutor stripe : stripes) {
+			queued += stripe.getQueue().size();
+		}
+		return queued;
+	}
+
+	@Override
+	public int getActiveCount() {
+		int active = 0;
+		for (ThreadPoolExecutor stripe : stripes) {
+			active += stripe.getActiveCount();
+		}
+		return active;
+	}
+
+	@Override
+	public long getCompletedTaskCount() {
+		long completed = 0;
+		for (ThreadPoolExecutor stripe : stripes) {
+			completed += stripe.getCompletedTaskCount();
+		}
+		return completed;
+	}
+
+	@Override
+	public long getRejectedTaskCount() {
+		return rejectedTasks.get();
+	}
+
+	@Override
+	public void shutdown() {
+		for (ThreadPoolExecutor stripe : stripes) {
+			stripe.shutdown();
+		}
+	}
+
+	@Override
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		for (ThreadPoolExecutor stripe : stripes) {
+			if(!stripe.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	int indexFor(long key) {
+		return Math.floorMod(Snowflakes.spread(key), stripes.length);
+	}
+
+}
@@ -0,0 +1,158 @@
+package de.maxkroner.execution;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Executes every command on its own thread, at most maxConcurrent commands at once.
+ * Commands are not ordered, not even within a guild.
+ *
+ * If the JVM supports virtual threads (Java 21+) every command gets a new virtual thread
+ * and waits for a permit there, so a burst of blocking commands only costs memory.
+ * On older JVMs the commands run on a pool of maxConcurrent platform threads.
+ *
+ * @author kroner
+ *
+ */
+public class ThreadPerCommandExecutor implements ICommandExecutor {
+	private static final MethodHandle NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = findVirtualThreadPerTaskExecutor();
+
+	private final ExecutorService executor;
+	private final boolean virtual;
+	private final Semaphore permits;
+	private final int maxPending;
+	private final AtomicInteger pending = new AtomicInteger();
+	private final AtomicInteger active = new AtomicInteger();
+	private final AtomicLong completedTasks = new AtomicLong();
+	private final AtomicLong rejectedTasks = new AtomicLong();
+
+	/**
+	 * @param name
+	 *            prefix of the thread names of the platform threads
+	 * @param maxConcurrent
+	 *            maximum number of commands executed at once
+	 * @param maxWaiting
+	 *            maximum number of commands waiting for execution, more commands are rejected
+	 */
+	public ThreadPerCommandExecutor(String name, int maxConcurrent, int maxWaiting) {
+		if(maxConcurrent < 1 || maxWaiting < 0){
+			throw new IllegalArgumentException("maxConcurrent must be at least 1 and maxWaiting can't be negative");
+		}
+		this.permits = new Semaphore(maxConcurrent);
+		this.maxPending = maxConcurrent + maxWaiting;
+		ExecutorService virtualThreadExecutor = createVirtualThreadPerTaskExecutor();
+		this.virtual = virtualThreadExecutor != null;
+		if(virtual){
+			this.executor = virtualThreadExecutor;
+		} else {
+			AtomicInteger threadCount = new AtomicInteger();
+			ThreadPoolExecutor pool = new ThreadPoolExecutor(maxConcurrent, maxConcurrent, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+				Thread thread = new Thread(runnable, name + "-" + threadCount.getAndIncrement());
+				thread.setDaemon(true);
+				return thread;
+			});
+			pool.allowCoreThreadTimeOut(true);
+			this.executor = pool;
+		}
+	}
+
+	@Override
+	public boolean execute(long guild_id, Runnable task) {
+		if(pending.incrementAndGet() > maxPending){
+			pending.decrementAndGet();
+			rejectedTasks.incrementAndGet();
+			return false;
+		}
+		try {
+			executor.execute(() -> run(task));
+			return true;
+		} catch (RejectedExecutionException e) {
+			pending.decrementAndGet();
+			rejectedTasks.incrementAndGet();
+			return false;
+		}
+	}
+
+	private void run(Runnable task) {
+		permits.acquireUninterruptibly();
+		active.incrementAndGet();
+		try {
+			task.run();
+		} finally {
+			active.decrementAndGet();
+			permits.release();
+			pending.decrementAndGet();
+			completedTasks.incrementAndGet();
+		}
+	}
+
+	/**
+	 * @return true if the commands run on virtual threads
+	 */
+	public boolean isVirtual() {
+		return virtual;
+	}
+
+	@Override
+	public int getQueuedTaskCount() {
+		return Math.max(0, pending.get() - active.get());
+	}
+
+	@Override
+	public int getActiveCount() {
+		return active.get();
+	}
+
+	@Override
+	public long getCompletedTaskCount() {
+		return completedTasks.get();
+	}
+
+	@Override
+	public long getRejectedTaskCount() {
+		return rejectedTasks.get();
+	}
+
+	@Override
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+	@Override
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		return executor.awaitTermination(timeout, unit);
+	}
+
+	private static ExecutorService createVirtualThreadPerTaskExecutor() {
+		if(NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR == null){
+			return null;
+		}
+		try {
+			return (ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invoke();
+		} catch (Throwable e) {
+			return null;
+		}
+	}
+
+	/**
+	 * the bots are compiled for Java 8, so Executors.newVirtualThreadPerTaskExecutor is looked up at runtime
+	 */
+	private static MethodHandle findVirtualThreadPerTaskExecutor() {
+		try {
+			return MethodHandles.publicLookup().findStatic(Executors.class, "newVirtualThreadPerTaskExecutor", MethodType.methodType(ExecutorService.class));
+		} catch (NoSuchMethodException | IllegalAccessException e) {
+			return null;
+		}
+	}
+
+}
@@ -1,32 +1,75 @@
 package de.maxkroner.implementation;
 
-import java.lang.reflect.InvocationTargetException;
+import java.io.IOException;
 import java.lang.reflect.Method;
 import java.nio.file.Paths;
 import java.sql.SQLException;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 import org.discordbots.api.client.DiscordBotListAPI;
+import org.pmw.tinylog.Logger;
 
 import de.maxkroner.database.BotDatabase;
+import de.maxkroner.database.QueryStatistics;
+import de.maxkroner.execution.CommandRateLimiter;
+import de.maxkroner.execution.CommandRateLimiter.Rejection;
+import de.maxkroner.execution.CommandRateLimiter.Scope;
+import de.maxkroner.execution.ICommandExecutor;
+import de.maxkroner.execution.StripedExecutor;
+import de.maxkroner.execution.ThreadPerCommandExecutor;
+import de.maxkroner.implementation.ShutdownCoordinator.Phase;
+import de.maxkroner.implementation.ShutdownCoordinator.StepResult;
 import de.maxkroner.logging.DiscordLogger;
 import de.maxkroner.logging.EmptyDiscordLogger;
+import de.maxkroner.logging.OverflowPolicy;
+import de.maxkroner.metrics.Counter;
+import de.maxkroner.metrics.LatencyHistogram;
+import de.maxkroner.metrics.MetricsRegistry;
+import de.maxkroner.metrics.MetricsServer;
+import de.maxkroner.messaging.MessageCoalescer;
+import de.maxkroner.messaging.Priority;
+import de.maxkroner.messaging.RateLimitScheduler;
 import de.maxkroner.parsing.Command;
 import de.maxkroner.parsing.CommandHandler;
 import de.maxkroner.parsing.MessageParsing;
+import de.maxkroner.parsing.PrefixMatcher;
+import de.maxkroner.sharding.DiscordShardedClient;
+import de.maxkroner.sharding.ShardMonitor;
+import de.maxkroner.tracing.Span;
+import de.maxkroner.tracing.TraceFile;
+import de.maxkroner.tracing.Tracer;
 import de.maxkroner.ui.ConsoleMenue;
 import de.maxkroner.ui.IConsoleMenue;
 import de.maxkroner.values.Values;
 import sx.blah.discord.api.ClientBuilder;
 import sx.blah.discord.api.IDiscordClient;
+import sx.blah.discord.api.events.Event;
 import sx.blah.discord.api.events.EventDispatcher;
 import sx.blah.discord.api.events.EventSubscriber;
+import sx.blah.discord.api.internal.json.objects.EmbedObject;
 import sx.blah.discord.handle.impl.events.ReadyEvent;
+import sx.blah.discord.handle.impl.events.guild.GuildCreateEvent;
+import sx.blah.discord.handle.impl.events.guild.GuildLeaveEvent;
+import sx.blah.discord.handle.impl.events.guild.GuildUpdateEvent;
+import sx.blah.discord.handle.impl.events.guild.channel.ChannelDeleteEvent;
+import sx.blah.discord.handle.impl.events.guild.channel.ChannelUpdateEvent;
 import sx.blah.discord.handle.impl.events.guild.channel.message.MessageReceivedEvent;
+import sx.blah.discord.handle.impl.events.guild.member.UserRoleUpdateEvent;
+import sx.blah.discord.handle.impl.events.guild.role.RoleDeleteEvent;
+import sx.blah.discord.handle.impl.events.guild.role.RoleUpdateEvent;
 import sx.blah.discord.handle.impl.events.shard.DisconnectedEvent;
+import sx.blah.discord.handle.impl.events.shard.ReconnectSuccessEvent;
+import sx.blah.discord.handle.impl.events.shard.ShardEvent;
+import sx.blah.discord.handle.impl.events.shard.ShardReadyEvent;
 import sx.blah.discord.handle.obj.IChannel;
 import sx.blah.discord.handle.obj.IGuild;
 import sx.blah.discord.handle.obj.IUser;
@@ -35,9 +78,24 @@ import sx.blah.discord.util.DiscordException;
 import sx.blah.discord.util.Image;
 import sx.blah.discord.util.MessageBuilder;
 import sx.blah.discord.util.MissingPermissionsException;
-import sx.blah.discord.util.RequestBuffer;
+import sx.blah.discord.util.RateLimitException;
 
 public abstract class Bot {
+	static final int DEFAULT_COMMAND_THREADS = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+	static final int DEFAULT_COMMAND_QUEUE_CAPACITY = 64;
+	private static final long DEFAULT_MESSAGE_WINDOW_MILLIS = 100;
+	// Discord allows 5 messages per 5 seconds in a channel and 50 requests per second overall
+	private static final int CHANNEL_MESSAGES_PER_PERIOD = 5;
+	private static final long CHANNEL_MESSAGE_PERIOD_MILLIS = 5000;
+	private static final int GLOBAL_REQUESTS_PER_SECOND = 50;
+	private static final int REQUEST_THREADS = 4;
+	private static final long DEFAULT_EVENT_LAG_THRESHOLD_MILLIS = 5000;
+	private static final long TRACE_FILE_BYTES = 10 * 1024 * 1024;
+	private static final long MAX_SHARD_LATENCY_MILLIS = 1000;
+	private static final int DEFAULT_USER_COMMANDS = 5;
+	private static final double DEFAULT_USER_COMMANDS_PER_SECOND = 0.5;
+	private static final int DEFAULT_GUILD_COMMANDS = 30;
+	private static final double DEFAULT_GUILD_COMMANDS_PER_SECOND = 5;
 	protected String botName;
 	protected String homePath;
 	protected IConsoleMenue consoleMenue;
@@ -45,9 +103,32 @@ public abstract class Bot {
 	protected BotDatabase db;
 	protected static DiscordLogger logger;
 	private HashMap<String, HashSet<Method>> commandMethodsMap;
+	private Map<String, CommandInvoker[]> commandInvokerTable = Collections.emptyMap();
 	private HashMap<String, String> aliasCommandMap;
-	private String commandPrefix;
+	private PrefixMatcher prefixMatcher;
 	private Character optionIdentifier;
+	private ICommandExecutor commandExecutor;
+	// replaced by setMessageWindow, null if messages are sent on their own
+	private volatile MessageCoalescer messageCoalescer;
+	private final RateLimitScheduler rateLimitScheduler;
+	private final PermissionCache permissionCache;
+	private CommandRateLimiter commandRateLimiter;
+	private Counter commandsLimitedByUser;
+	private Counter commandsLimitedByGuild;
+	private final Map<String, QueryStatistics> queryStatistics = new ConcurrentHashMap<>();
+	private final MetricsRegistry metrics;
+	private final Counter messagesSeen;
+	private final Counter commandsParsed;
+	private final Map<String, LatencyHistogram> commandLatencies = new ConcurrentHashMap<>();
+	private MetricsServer metricsServer;
+	private final EventLagWatchdog eventLagWatchdog;
+	private final ShutdownCoordinator shutdownCoordinator;
+	// null if the bot runs on its own
+	private final BotHost host;
+	private int shardCount = 1;
+	private ShardMonitor shardMonitor;
+	// traces nothing until tracing is added
+	private Tracer tracer = new Tracer(0, null);
 	private Instant startup;
 	private Instant lastUpdate;
 	protected DiscordBotListAPI api;
@@ -57,10 +138,95 @@ public abstract class Bot {
 	 * @param botName name used for home folder
 	 */
 	public Bot(String botName) {
+		this(botName, null);
+	}
+	
+	/**
+	 * @param botName name used for home folder and as bot label of the metrics in the host
+	 * @param host shares its threads, metrics, log and shutdown with the bot, null to run the bot on its own
+	 */
+	public Bot(String botName, BotHost host) {
 		 this.botName = botName;
+		 this.host = host;
 		 setHomePath();
 		 startup = Instant.now();
 		 lastUpdate = Instant.now();
+		 messageCoalescer = new MessageCoalescer(this::sendMessageNow, DEFAULT_MESSAGE_WINDOW_MILLIS);
+		 permissionCache = new PermissionCache(channel -> channel.getModifiedPermissions(client.getOurUser()));
+		 if(host != null){
+			 metrics = host.getMetrics().withLabels("bot", botName);
+			 rateLimitScheduler = createRateLimitScheduler(host.getRateLimitScheduler());
+			 eventLagWatchdog = host.getEventLagWatchdog();
+			 shutdownCoordinator = host.getShutdownCoordinator();
+			 commandExecutor = host.getCommandExecutor();
+		 } else {
+			 metrics = new MetricsRegistry();
+			 rateLimitScheduler = createRateLimitScheduler();
+			 eventLagWatchdog = createEventLagWatchdog();
+			 shutdownCoordinator = new ShutdownCoordinator();
+		 }
+		 messagesSeen = metrics.counter("bot_messages_seen_total", "Messages received in guilds and private channels");
+		 commandsParsed = metrics.counter("bot_commands_parsed_total", "Messages parsed as a known command");
+		 metrics.histograms("bot_command_seconds", "Time a command took to run", "command", () -> commandLatencies);
+		 metrics.gauge("bot_outbound_queue_depth", "Messages and requests waiting to be sent", () -> {
+			 MessageCoalescer coalescer = messageCoalescer;
+			 return coalescer == null ? 0 : coalescer.getQueuedMessageCount();
+		 }, "stage", "coalescer");
+		 metrics.gauge("bot_guild_settings_bytes", "Estimated size of the cached guild settings", () -> db == null ? 0 : db.getGuildSettingsMemoryEstimate());
+		 metrics.gauge("bot_outbound_queue_depth", "Messages and requests waiting to be sent", () -> rateLimitScheduler.getQueuedRequestCount(), "stage", "rate_limit");
+		 metrics.gauge("bot_rate_limit_hits", "Requests Discord answered with a rate limit", () -> rateLimitScheduler.getRateLimitHits());
+		 // the host registers the metrics and shutdown steps of what it shares
+		 if(host == null){
+			 metrics.gauge("bot_command_queue_depth", "Commands waiting for a command thread", () -> commandExecutor == null ? 0 : commandExecutor.getQueuedTaskCount());
+			 metrics.histogram("bot_event_lag_seconds", "Time between a message was sent and our subscribers got it, last minute", eventLagWatchdog::getLagHistogram);
+		 }
+		 shutdownCoordinator.register(Phase.STOP_ACCEPTING, botName + " commands", this::shutdownCommandExecutor);
+		 if(host == null){
+			 shutdownCoordinator.register(Phase.STOP_ACCEPTING, "event lag watchdog", timeout -> {
+				 eventLagWatchdog.shutdown();
+				 return 0;
+			 });
+		 }
+		 shutdownCoordinator.register(Phase.DRAIN_QUEUES, botName + " outbound messages", this::shutdownMessageCoalescer);
+		 if(host == null){
+			 shutdownCoordinator.register(Phase.DRAIN_QUEUES, "rate limited requests", timeout -> rateLimitScheduler.drain(timeout, TimeUnit.MILLISECONDS));
+		 } else {
+			 // the host stops the shared threads after the requests of all bots were sent
+			 shutdownCoordinator.register(Phase.DRAIN_QUEUES, botName + " rate limited requests", timeout -> rateLimitScheduler.drain(timeout, TimeUnit.MILLISECONDS));
+		 }
+		 shutdownCoordinator.register(Phase.DRAIN_QUEUES, botName + " guild property writes", timeout -> flushDatabase());
+		 shutdownCoordinator.register(Phase.CLOSE_DATABASE, botName + " database", timeout -> {
+			 if(db != null){
+				 db.close();
+			 }
+			 return 0;
+		 });
+		 if(host != null){
+			 // only stored, the host shuts the bot down with the others
+			 host.add(this);
+		 }
+	}
+	
+	static RateLimitScheduler createRateLimitScheduler(){
+		return new RateLimitScheduler(CHANNEL_MESSAGES_PER_PERIOD, CHANNEL_MESSAGE_PERIOD_MILLIS, GLOBAL_REQUESTS_PER_SECOND, 1000, REQUEST_THREADS);
+	}
+	
+	/**
+	 * the global limit of Discord is per token, so every bot of a host has its own budget and only shares the threads
+	 */
+	static RateLimitScheduler createRateLimitScheduler(RateLimitScheduler threads){
+		return new RateLimitScheduler(CHANNEL_MESSAGES_PER_PERIOD, CHANNEL_MESSAGE_PERIOD_MILLIS, GLOBAL_REQUESTS_PER_SECOND, 1000, threads);
+	}
+	
+	static EventLagWatchdog createEventLagWatchdog(){
+		return new EventLagWatchdog("de.maxkroner", DEFAULT_EVENT_LAG_THRESHOLD_MILLIS);
+	}
+	
+	/**
+	 * @return the host the bot runs in, null if it runs on its own
+	 */
+	public BotHost getHost() {
+		return host;
 	}
 	
 	public Bot addConsoleMenue(IConsoleMenue menue){
@@ -74,40 +240,414 @@ public abstract class Bot {
 	}
 	
 	public Bot addLogging(String loggingPrefix){
+		if(host != null){
+			// the host writes one log for all its bots
+			return this;
+		}
 		logger = new DiscordLogger(Paths.get(homePath, "log", loggingPrefix + ".log").toString());
 		return this;
 	}
 	
-	public Bot addDatabase(String databaseName){
-		this.db = new BotDatabase(Paths.get(homePath, "db", databaseName).toString());
+	/**
+	 * the log file is written on a background thread, call shutdownLogging before the bot exits
+	 * 
+	 * @param bufferCapacity number of log entries waiting to be written
+	 * @param policy what happens when the buffer is full
+	 */
+	public Bot addAsyncLogging(String loggingPrefix, int bufferCapacity, OverflowPolicy policy){
+		if(host != null){
+			return this;
+		}
+		logger = new DiscordLogger(Paths.get(homePath, "log", loggingPrefix + ".log").toString(), bufferCapacity, policy);
+		metrics.gauge("bot_log_entries_dropped", "Log entries dropped because the log buffer was full", () -> logger.getDroppedCount());
 		return this;
 	}
 	
+	/**
+	 * writes the log entries that are still buffered
+	 */
+	public void shutdownLogging(){
+		if(logger != null){
+			logger.shutdown();
+		}
+	}
+	
+	public Bot addDatabase(String databaseName){
+		return addDatabase(new BotDatabase(Paths.get(homePath, "db", databaseName).toString()));
+	}
+	
 	public Bot addDatabase(BotDatabase database){
 		this.db = database;
+		return addQueryStatistics(botName, database.getQueryStatistics());
+	}
+	
+	/**
+	 * shows the query latencies of a database the bot uses besides its own
+	 * 
+	 * @param database name shown with the statistics
+	 */
+	public Bot addQueryStatistics(String database, QueryStatistics statistics){
+		queryStatistics.put(database, statistics);
+		metrics.histograms("bot_db_query_seconds", "Time a query took by query shape", "query", statistics::getHistograms, "database", database);
+		return this;
+	}
+	
+	/**
+	 * @return query latencies by database name
+	 */
+	public Map<String, QueryStatistics> getQueryStatistics() {
+		return Collections.unmodifiableMap(queryStatistics);
+	}
+	
+	/**
+	 * @return counters, gauges and histograms of the bot, modules register their own metrics here
+	 */
+	public MetricsRegistry getMetrics() {
+		return metrics;
+	}
+	
+	/**
+	 * serves the metrics in the Prometheus text format on http://localhost:port/metrics
+	 */
+	public Bot addMetricsEndpoint(int port){
+		try {
+			metricsServer = new MetricsServer(metrics, port);
+		} catch (IOException e) {
+			Logger.error("Metrics endpoint could not be started on port {}.", port);
+			Logger.error(e);
+		}
+		return this;
+	}
+	
+	public void shutdownMetricsEndpoint(){
+		if(metricsServer != null){
+			metricsServer.stop();
+		}
+	}
+	
+	/**
+	 * the stacks of the slowest event handlers are logged when events wait at least this long
+	 * or a handler runs at least this long
+	 */
+	public Bot setEventLagThreshold(long millis){
+		eventLagWatchdog.setThresholdMillis(millis);
+		return this;
+	}
+	
+	public EventLagWatchdog getEventLagWatchdog() {
+		return eventLagWatchdog;
+	}
+	
+	/**
+	 * traces a sample of the commands, the traces are written to trace/traces.log in the home folder
+	 * 
+	 * @param sampleRate fraction of the commands that are traced, between 0 and 1
+	 */
+	public Bot addTracing(double sampleRate){
+		try {
+			tracer = new Tracer(sampleRate, new TraceFile(Paths.get(homePath, "trace", "traces.log"), TRACE_FILE_BYTES));
+		} catch (IOException e) {
+			Logger.error("Trace file could not be opened, traces are kept in memory only.");
+			Logger.error(e);
+			tracer = new Tracer(sampleRate, null);
+		}
+		return this;
+	}
+	
+	public Tracer getTracer() {
+		return tracer;
+	}
+	
+	/**
+	 * queries of all databases taking at least this long are logged
+	 */
+	public Bot setSlowQueryThreshold(long millis){
+		queryStatistics.values().forEach(statistics -> statistics.setSlowQueryMillis(millis));
+		return this;
+	}
+	
+	/**
+	 * guild property updates are written to the database in the background,
+	 * call after addDatabase
+	 * 
+	 * @param flushIntervalMillis time between the writes
+	 */
+	public Bot addPropertyWriteBehind(long flushIntervalMillis){
+		db.enableWriteBehind(flushIntervalMillis);
+		return this;
+	}
+	
+	/**
+	 * Commands of a guild are executed in order on one of the threads,
+	 * commands of guilds on other threads run in parallel.
+	 * 
+	 * @param threads number of threads executing commands
+	 * @param queueCapacity maximum number of waiting commands per thread, more commands are ignored
+	 */
+	public Bot addCommandExecutor(int threads, int queueCapacity){
+		return setCommandExecutor(new StripedExecutor(botName + "-commands", threads, queueCapacity));
+	}
+	
+	/**
+	 * Every command is executed on its own thread, on virtual threads if the JVM supports them.
+	 * Absorbs bursts of blocking commands, but commands of a guild are not executed in order.
+	 * 
+	 * @param maxConcurrent maximum number of commands executed at once
+	 * @param maxWaiting maximum number of commands waiting for execution, more commands are ignored
+	 */
+	public Bot addThreadPerCommandExecutor(int maxConcurrent, int maxWaiting){
+		return setCommandExecutor(new ThreadPerCommandExecutor(botName + "-commands", maxConcurrent, maxWaiting));
+	}
+	
+	private Bot setCommandExecutor(ICommandExecutor executor){
+		if(commandExecutor != null && !isSharedCommandExecutor()){
+			commandExecutor.shutdown();
+		}
+		this.commandExecutor = executor;
+		return this;
+	}
+	
+	public ICommandExecutor getCommandExecutor() {
+		return commandExecutor;
+	}
+	
+	/**
+	 * limits the commands of every user to 5 at once and one every 2 seconds,
+	 * and the commands of every guild to 30 at once and 5 per second
+	 */
+	public Bot addCommandRateLimit(){
+		return addCommandRateLimit(DEFAULT_USER_COMMANDS, DEFAULT_USER_COMMANDS_PER_SECOND, DEFAULT_GUILD_COMMANDS, DEFAULT_GUILD_COMMANDS_PER_SECOND);
+	}
+	
+	/**
+	 * Limits the commands every user and every guild can use with token buckets, see CommandRateLimiter.
+	 * A command costs one token unless setCommandCost gives it another cost.
+	 * 
+	 * @param userCommands commands a user can use at once
+	 * @param userCommandsPerSecond commands a user can use per second in the long run
+	 * @param guildCommands commands all users of a guild can use at once
+	 * @param guildCommandsPerSecond commands all users of a guild can use per second in the long run
+	 */
+	public Bot addCommandRateLimit(int userCommands, double userCommandsPerSecond, int guildCommands, double guildCommandsPerSecond){
+		commandRateLimiter = new CommandRateLimiter(userCommands, userCommandsPerSecond, guildCommands, guildCommandsPerSecond);
+		commandsLimitedByUser = metrics.counter("bot_commands_rate_limited_total", "Commands ignored because the user or guild used too many", "scope", "user");
+		commandsLimitedByGuild = metrics.counter("bot_commands_rate_limited_total", "Commands ignored because the user or guild used too many", "scope", "guild");
+		metrics.gauge("bot_command_rate_limit_bytes", "Size of the command rate limit buckets", () -> commandRateLimiter.estimateBytes());
+		return this;
+	}
+	
+	/**
+	 * call after addCommandRateLimit
+	 * 
+	 * @param command name of the command, not an alias
+	 * @param cost tokens the command takes from the buckets of the user and the guild
+	 */
+	public Bot setCommandCost(String command, int cost){
+		commandRateLimiter.setCost(command, cost);
+		return this;
+	}
+	
+	public CommandRateLimiter getCommandRateLimiter() {
+		return commandRateLimiter;
+	}
+	
+	/**
+	 * @param windowMillis time messages to a channel are collected and merged, 0 to send every message on its own
+	 */
+	public Bot setMessageWindow(long windowMillis){
+		MessageCoalescer previous = messageCoalescer;
+		if(previous != null){
+			previous.shutdown();
+		}
+		this.messageCoalescer = windowMillis > 0 ? new MessageCoalescer(this::sendMessageNow, windowMillis) : null;
+		return this;
+	}
+	
+	public MessageCoalescer getMessageCoalescer() {
+		return messageCoalescer;
+	}
+	
+	public RateLimitScheduler getRateLimitScheduler() {
+		return rateLimitScheduler;
+	}
+	
+	public PermissionCache getPermissionCache() {
+		return permissionCache;
+	}
+	
+	/**
+	 * sends the messages that are still collected for their channels
+	 * 
+	 * @return number of messages that were not sent
+	 */
+	private int shutdownMessageCoalescer(long timeoutMillis) throws InterruptedException {
+		MessageCoalescer coalescer = messageCoalescer;
+		if(coalescer == null){
+			return 0;
+		}
+		coalescer.shutdown();
+		if(!coalescer.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS)){
+			return coalescer.getQueuedMessageCount();
+		}
+		return 0;
+	}
+	
+	/**
+	 * stops accepting commands and waits until the queued commands are executed
+	 * 
+	 * @return number of commands that were not executed
+	 */
+	private int shutdownCommandExecutor(long timeoutMillis) throws InterruptedException {
+		// the host stops its executor once for all bots
+		if(commandExecutor != null && !isSharedCommandExecutor()){
+			commandExecutor.shutdown();
+			if(!commandExecutor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS)){
+				return commandExecutor.getQueuedTaskCount() + commandExecutor.getActiveCount();
+			}
+		}
+		return 0;
+	}
+	
+	private boolean isSharedCommandExecutor(){
+		return host != null && commandExecutor == host.getCommandExecutor();
+	}
+	
+	/**
+	 * writes the guild property updates that are still waiting for the write behind
+	 * 
+	 * @return number of updates that could not be written
+	 */
+	public int flushDatabase(){
+		if(db != null){
+			try {
+				db.flushGuildProperties();
+			} catch (SQLException e) {
+				Logger.error("{} guild property updates could not be written.", db.getPendingGuildPropertyCount());
+				Logger.error(e);
+				return db.getPendingGuildPropertyCount();
+			}
+		}
+		return 0;
+	}
+	
+	/**
+	 * modules register the steps to stop their schedulers, persist their state and close their databases here
+	 */
+	public ShutdownCoordinator getShutdownCoordinator() {
+		return shutdownCoordinator;
+	}
+	
+	/**
+	 * time the steps of the phase may take together before they are left behind
+	 */
+	public Bot setShutdownBudget(Phase phase, long millis){
+		shutdownCoordinator.setBudget(phase, millis);
+		return this;
+	}
+	
+	/**
+	 * shuts the bot down in phases, see ShutdownCoordinator, then stops the metrics endpoint and the logging,
+	 * a bot in a host shuts down the host with all its bots
+	 * 
+	 * @return the result of every shutdown step
+	 */
+	public List<StepResult> shutdown(){
+		if(host != null){
+			return host.shutdown();
+		}
+		List<StepResult> results = shutdownCoordinator.shutdown();
+		shutdownMetricsEndpoint();
+		shutdownLogging();
+		return results;
+	}
+	
+	/**
+	 * splits the guilds of the bot over several gateway connections, Discord requires one shard per 2500 guilds
+	 * 
+	 * @param shardCount number of shards, 0 to use the number Discord recommends
+	 */
+	public Bot setShardCount(int shardCount){
+		this.shardCount = shardCount;
 		return this;
 	}
 	
+	/**
+	 * @return health and traffic of the shards, null before the bot runs
+	 */
+	public ShardMonitor getShardMonitor() {
+		return shardMonitor;
+	}
+	
+	/**
+	 * @return the shard serving the guild
+	 */
+	protected int shardOf(long guild_id) {
+		return shardMonitor == null ? 0 : shardMonitor.shardOf(guild_id);
+	}
+	
 	public void run(String token){
 		if(logger == null){
 			logger = new EmptyDiscordLogger();
 		}
-		this.client = createClient(token);
+		if(prefixMatcher != null){
+			loadGuildPrefixes();
+		}
+		this.client = createClient(token, shardCount);
+		addShardMonitor(new ShardMonitor(new DiscordShardedClient(client), MAX_SHARD_LATENCY_MILLIS));
 		EventDispatcher dispatcher = client.getDispatcher();
 		dispatcher.registerListener(this);
+		eventLagWatchdog.start();
 	}
 	
 	protected IDiscordClient getClient() {
 		return this.client;
 	}
+	
+	/**
+	 * partitions the per-guild state by the shards of the monitor and registers their metrics
+	 */
+	protected void addShardMonitor(ShardMonitor monitor) {
+		this.shardMonitor = monitor;
+		monitor.registerMetrics(metrics);
+		if(db != null){
+			db.setShardCount(monitor.getShardCount());
+			for(int i = 0; i < monitor.getShardCount(); i++){
+				int shard = i;
+				metrics.gauge("bot_guild_settings_cached", "Guilds with cached settings", () -> db.getCachedGuildCount(shard), "shard", Integer.toString(shard));
+			}
+		}
+	}
+	
+	@EventSubscriber
+	public void watchShards(ShardEvent event) {
+		int shard = event.getShard().getInfo()[0];
+		if(event instanceof ShardReadyEvent){
+			logger.info("Shard " + shard + " of " + shardMonitor.getShardCount() + " is ready with " + event.getShard().getGuilds().size() + " guilds.");
+		} else if(event instanceof DisconnectedEvent){
+			shardMonitor.disconnected(shard);
+			logger.warn("Shard " + shard + " disconnected: " + ((DisconnectedEvent) event).getReason());
+		} else if(event instanceof ReconnectSuccessEvent){
+			logger.info("Shard " + shard + " reconnected.");
+		}
+	}
 
+	@EventSubscriber
+	public void watchEventLag(Event event) {
+		// only messages tell when they happened, other events just show which threads run our subscribers
+		if(event instanceof MessageReceivedEvent){
+			eventLagWatchdog.recordLag(EventLagWatchdog.timestampOf(((MessageReceivedEvent) event).getMessage().getLongID()));
+		} else {
+			eventLagWatchdog.registerDispatcherThread();
+		}
+	}
+	
 	@EventSubscriber
 	public void onReady(ReadyEvent event) {
 		Bot bot = this;
 		String bot_name = client.getOurUser().getName();
 		
-		//start consoleMenue if enabled
-		if(consoleMenue != null){
+		//start consoleMenue if enabled, the bots of a host can't share the console
+		if(consoleMenue != null && host == null){
 			new Thread() {
 				@Override
 				public void run() {
@@ -126,18 +666,194 @@ public abstract class Bot {
 		logger.info("Logged out for reason " + event.getReason() + "!");
 	}
 	
+	@EventSubscriber
+	public void preloadGuildSettings(ReadyEvent event) {
+		if(db != null){
+			List<Long> guild_ids = new ArrayList<>();
+			for (IGuild guild : event.getClient().getGuilds()) {
+				guild_ids.add(guild.getLongID());
+			}
+			try {
+				long start = System.nanoTime();
+				int properties = db.preloadGuildSettings(guild_ids);
+				logger.info("Preloaded " + properties + " properties of " + guild_ids.size() + " guilds in "
+						+ TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms, ~" + (db.getGuildSettingsMemoryEstimate() / 1024) + " KiB");
+			} catch (SQLException e) {
+				logger.error(e);
+			}
+		}
+	}
+	
+	@EventSubscriber
+	public void loadGuildSettings(GuildCreateEvent event) {
+		// guilds available before the ready event are preloaded
+		if(db != null && event.getClient().isReady()){
+			try {
+				db.loadGuildSettings(event.getGuild().getLongID());
+			} catch (SQLException e) {
+				logger.error(e);
+			}
+		}
+	}
+	
+	@EventSubscriber
+	public void evictGuildSettings(GuildLeaveEvent event) {
+		if(db != null){
+			db.evictGuildSettings(event.getGuild().getLongID());
+		}
+	}
+	
+	@EventSubscriber
+	public void evictPermissions(GuildLeaveEvent event) {
+		permissionCache.invalidateGuild(event.getGuild().getLongID());
+	}
+	
+	@EventSubscriber
+	public void invalidatePermissions(GuildUpdateEvent event) {
+		permissionCache.invalidateGuild(event.getGuild().getLongID());
+	}
+	
+	@EventSubscriber
+	public void invalidatePermissions(RoleUpdateEvent event) {
+		permissionCache.invalidateGuild(event.getGuild().getLongID());
+	}
+	
+	@EventSubscriber
+	public void invalidatePermissions(RoleDeleteEvent event) {
+		permissionCache.invalidateGuild(event.getGuild().getLongID());
+	}
+	
+	@EventSubscriber
+	public void invalidatePermissions(UserRoleUpdateEvent event) {
+		// only the roles of the bot itself change its permissions
+		if(event.getUser().getLongID() == client.getOurUser().getLongID()){
+			permissionCache.invalidateGuild(event.getGuild().getLongID());
+		}
+	}
+	
+	@EventSubscriber
+	public void invalidatePermissions(ChannelUpdateEvent event) {
+		permissionCache.invalidateChannel(event.getGuild().getLongID(), event.getChannel().getLongID());
+	}
+	
+	@EventSubscriber
+	public void invalidatePermissions(ChannelDeleteEvent event) {
+		permissionCache.invalidateChannel(event.getGuild().getLongID(), event.getChannel().getLongID());
+	}
+	
 	@EventSubscriber
 	public void onMessageReceivedEvent(MessageReceivedEvent event) {
 		try{
-		if(commandMethodsMap != null && !commandMethodsMap.keySet().isEmpty()){
-			Command command = MessageParsing.parseMessageWithCommandSet(event.getMessage().getContent(), commandMethodsMap.keySet(), getCommandPrefixForGuild(event.getGuild()), optionIdentifier);
-			if(command != null){
-				if(commandIsEnabledOnGuild(aliasCommandMap.get(command.getName()), event.getGuild())){
-					notifyReceivers(event, command);
-				} else {
-					sendMessage("The command `" + aliasCommandMap.get(command.getName()) + "` is disabled on the server `" + event.getGuild().getName() + "`", event.getAuthor().getOrCreatePMChannel(), false);
-				}
-				
+		messagesSeen.increment();
+		String content = event.getMessage().getContent();
+		IGuild guild = event.getGuild();
+		if(guild != null && shardMonitor != null){
+			shardMonitor.messageReceived(guild.getLongID());
+		}
+		//most messages aren't commands, reject them before parsing
+		if(!commandInvokerTable.isEmpty() && guild != null && !shutdownCoordinator.isShutDown() && prefixMatcher.couldBeCommand(guild.getLongID(), content)){
+			String commandName = commandName(guild.getLongID(), content);
+			//a word after the prefix that isn't a command, e.g. chat or the command of another bot, costs nothing
+			if(commandName == null){
+				return;
+			}
+			//spam is dropped before it takes a command thread
+			if(!isAllowedByRateLimit(event, commandName)){
+				return;
+			}
+			if(!isGuildReady(guild.getLongID())){
+				sendMessage("I'm still starting up on this server, please try again in a moment.", event.getChannel(), false);
+				return;
+			}
+			//commands of one guild run in order, slow commands don't block other guilds
+			if(!commandExecutor.execute(guild.getLongID(), () -> executeCommand(event, content, guild))){
+				logger.warn("Command queue for guild {} is full, ignoring message: {}", guild.getLongID(), content);
+			}
+		}
+		} catch(Exception e){
+			logger.error(e);
+		}
+	}
+	
+	/**
+	 * takes the cost of the command from the buckets of the author and the guild,
+	 * the first command over the limit is answered with a cooldown notice, the following ones are ignored
+	 * 
+	 * @param command name of the command, null if it is unknown
+	 * @return true if the command may run, always without a rate limit and in private channels
+	 */
+	protected boolean isAllowedByRateLimit(MessageReceivedEvent event, String command) {
+		if(commandRateLimiter == null || event.getGuild() == null){
+			return true;
+		}
+		Rejection rejection = commandRateLimiter.tryAcquire(event.getAuthor().getLongID(), event.getGuild().getLongID(), command);
+		if(rejection == null){
+			return true;
+		}
+		if(rejection.getScope() == Scope.USER){
+			commandsLimitedByUser.increment();
+		} else {
+			commandsLimitedByGuild.increment();
+		}
+		if(rejection.isNoticeDue()){
+			long seconds = TimeUnit.MILLISECONDS.toSeconds(rejection.getWaitMillis() + 999);
+			if(rejection.getScope() == Scope.USER){
+				sendMessage(event.getAuthor().getName() + ", you are using commands too fast, please wait " + seconds + " seconds.", event.getChannel(), false);
+			} else {
+				sendMessage("Commands are used too fast on this server, please wait " + seconds + " seconds.", event.getChannel(), false);
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * @return the command the message starts with, null if it isn't a known command or alias
+	 */
+	private String commandName(long guild_id, String content) {
+		int start = prefixMatcher.getPrefix(guild_id).length();
+		int end = start;
+		while(end < content.length() && !Character.isWhitespace(content.charAt(end))){
+			end++;
+		}
+		return aliasCommandMap.get(content.substring(start, end));
+	}
+	
+	/**
+	 * commands of a guild that isn't ready are answered with a message to try again later,
+	 * e.g. while the bot still reconciles the guild after startup
+	 */
+	protected boolean isGuildReady(long guild_id) {
+		return true;
+	}
+	
+	private void executeCommand(MessageReceivedEvent event, String content, IGuild guild) {
+		try(Span trace = tracer.startTrace("message")){
+		String prefix;
+		try(Span span = Tracer.span("prefix")){
+			prefix = prefixMatcher.getPrefix(guild.getLongID());
+		}
+		Command command;
+		try(Span span = Tracer.span("parse")){
+			command = MessageParsing.parseMessageWithCommandSet(content, commandInvokerTable.keySet(), prefix, optionIdentifier);
+		}
+		if(command != null){
+			String commandName = aliasCommandMap.get(command.getName());
+			//a word after the prefix that isn't a command, e.g. "!hi"
+			if(commandName == null){
+				return;
+			}
+			commandsParsed.increment();
+			trace.setName(commandName);
+			boolean enabled;
+			try(Span span = Tracer.span("enabled")){
+				enabled = commandIsEnabledOnGuild(commandName, guild);
+			}
+			if(enabled){
+				long start = System.nanoTime();
+				notifyReceivers(event, command);
+				commandLatencies.computeIfAbsent(commandName, name -> new LatencyHistogram()).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+			} else {
+				sendMessage("The command `" + commandName + "` is disabled on the server `" + guild.getName() + "`", event.getAuthor().getOrCreatePMChannel(), false);
 			}
 		}
 		} catch(Exception e){
@@ -166,6 +882,7 @@ public abstract class Bot {
 			if(prefix.length() >= 1 && prefix.length() <= 10){
 				try {
 					db.addGuildProperty(event.getGuild().getLongID(), "prefix", prefix);
+					prefixMatcher.setPrefix(event.getGuild().getLongID(), prefix);
 				} catch (SQLException e) {
 					logger.error(e);
 				}
@@ -243,18 +960,39 @@ public abstract class Bot {
 	
 	public abstract void disconnect();
 	
+	/**
+	 * queues the message, messages sent to the same channel shortly after each other are merged
+	 */
 	protected void sendMessage(String message, IChannel channel, Boolean tts) {
-		if (client.getOurUser().getPermissionsForGuild(channel.getGuild()).contains(Permissions.SEND_MESSAGES)) {
-			RequestBuffer.request(() -> {
+		sendMessage(message, channel, tts, Priority.NORMAL);
+	}
+	
+	/**
+	 * queues the message, messages with higher priority are sent first when the rate limit is reached
+	 */
+	protected void sendMessage(String message, IChannel channel, Boolean tts, Priority priority) {
+		MessageCoalescer coalescer = messageCoalescer;
+		if(coalescer != null){
+			coalescer.sendMessage(message, channel, tts, priority);
+		} else {
+			sendMessageNow(message, channel, tts, priority);
+		}
+	}
+	
+	private void sendMessageNow(String message, IChannel channel, boolean tts, Priority priority) {
+		if (permissionCache.hasPermission(channel, Permissions.SEND_MESSAGES)) {
+			rateLimitScheduler.submit(RateLimitScheduler.messageRoute(channel), priority, () -> {
 				try{
 					MessageBuilder mb = new MessageBuilder(this.client).withChannel(channel);
 					if (tts)
 						mb.withTTS();
 					mb.withContent(message);
 					mb.build();
+				} catch (RateLimitException e){
+					//the scheduler sends it again
+					throw e;
 				} catch (DiscordException e){
 					logger.warn(e);
-					throw e;
 				} catch (MissingPermissionsException e) {
 					logger.info("Could not send message because of missing permissions.");
 				}
@@ -262,6 +1000,36 @@ public abstract class Bot {
 		}	
 	}
 	
+	/**
+	 * queues the embed behind the messages already queued for the channel, so it isn't sent before them
+	 */
+	public void sendEmbed(EmbedObject embed, IChannel channel, Priority priority) {
+		if (!permissionCache.hasPermission(channel, Permissions.SEND_MESSAGES) || !permissionCache.hasPermission(channel, Permissions.EMBED_LINKS)) {
+			logger.info("Could not send embed because of missing permissions.");
+			return;
+		}
+		MessageCoalescer coalescer = messageCoalescer;
+		if(coalescer != null){
+			coalescer.send(channel, priority, () -> sendEmbedNow(embed, channel, priority));
+		} else {
+			sendEmbedNow(embed, channel, priority);
+		}
+	}
+	
+	private void sendEmbedNow(EmbedObject embed, IChannel channel, Priority priority) {
+		rateLimitScheduler.submit(RateLimitScheduler.messageRoute(channel), priority, () -> {
+			try{
+				channel.sendMessage(embed);
+			} catch (RateLimitException e){
+				throw e;
+			} catch (DiscordException e){
+				logger.warn(e);
+			} catch (MissingPermissionsException e) {
+				logger.info("Could not send embed because of missing permissions.");
+			}
+		});
+	}
+	
 	protected void sendPrivateMessage(IUser recepient, String message) {
 		MessageBuilder mb = new MessageBuilder(this.client).withChannel(recepient.getOrCreatePMChannel());
 		mb.withContent(message);
@@ -269,8 +1037,20 @@ public abstract class Bot {
 	}
 
 	public static IDiscordClient createClient(String token) {
+		return createClient(token, 1);
+	}
+	
+	/**
+	 * @param shardCount number of shards, 0 to use the number Discord recommends
+	 */
+	public static IDiscordClient createClient(String token, int shardCount) {
 		ClientBuilder clientBuilder = new ClientBuilder();
 		clientBuilder.withToken(token);
+		if(shardCount == 0){
+			clientBuilder.withRecommendedShardCount();
+		} else {
+			clientBuilder.withShards(shardCount);
+		}
 		try {
 			return clientBuilder.login();
 											
@@ -292,8 +1072,16 @@ public abstract class Bot {
 		if(enableStandardCommands && db != null){
 			addCommandsToMethodsMapForClass(Bot.class);
 		}
-		this.commandPrefix = commandIdentifier;
+		this.commandInvokerTable = createCommandInvokerTable();
 		this.optionIdentifier = optionIdentifier;
+		if(prefixMatcher == null){
+			prefixMatcher = new PrefixMatcher(commandIdentifier);
+		} else {
+			prefixMatcher.setDefaultPrefix(commandIdentifier);
+		}
+		if(commandExecutor == null){
+			addCommandExecutor(DEFAULT_COMMAND_THREADS, DEFAULT_COMMAND_QUEUE_CAPACITY);
+		}
 	}
 	
 	protected void addCommandParsing(Class<? extends Bot> botClass){
@@ -324,28 +1112,49 @@ public abstract class Bot {
 		commandMethodsMap.get(command).add(method);	
 	}
 	
-	private void notifyReceivers(MessageReceivedEvent event, Command command) {
-		if (commandMethodsMap.containsKey(command.getName())){
-			for(Method method: commandMethodsMap.get(command.getName())){
+	/**
+	 * resolves every registered handler method to a direct invoker once,
+	 * so dispatching a command is a single table lookup
+	 * 
+	 * @return immutable table of invokers by command name and alias
+	 */
+	private Map<String, CommandInvoker[]> createCommandInvokerTable() {
+		HashMap<String, CommandInvoker[]> table = new HashMap<>();
+		for(Map.Entry<String, HashSet<Method>> entry : commandMethodsMap.entrySet()){
+			List<CommandInvoker> invokers = new ArrayList<>();
+			for(Method method : entry.getValue()){
 				try {
-					method.invoke(this, event, command);
-				} catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
+					invokers.add(CommandInvoker.of(method));
+				} catch (IllegalAccessException | IllegalArgumentException e) {
+					Logger.error("Could not register handler {} for command {}: {}", method.getName(), entry.getKey(), e.getMessage());
+				}
+			}
+			table.put(entry.getKey(), invokers.toArray(new CommandInvoker[invokers.size()]));
+		}
+		return Collections.unmodifiableMap(table);
+	}
+	
+	private void notifyReceivers(MessageReceivedEvent event, Command command) {
+		CommandInvoker[] invokers = commandInvokerTable.get(command.getName());
+		if (invokers != null){
+			for(CommandInvoker invoker: invokers){
+				try(Span span = Tracer.isTracing() ? Tracer.span("handler " + invoker.getMethod().getName()) : Span.NOOP) {
+					invoker.invoke(this, event, command);
+				} catch (Throwable e) {
 					e.printStackTrace();
 				}
 			}
 		}	
 	}
 	
-	private String getCommandPrefixForGuild(IGuild guild) {
+	private void loadGuildPrefixes() {
 		if(db == null){
-			return "!";
+			return;
 		}
-		long guild_id = guild.getLongID();
 		try {
-			return db.getStringGuildProperty(guild_id, "prefix").orElse(this.commandPrefix);	
+			prefixMatcher.setPrefixes(db.getStringGuildPropertyForAllGuilds("prefix"));
 		} catch (SQLException e) {
 			logger.error(e);
-			return commandPrefix;
 		}
 	}
 	
@@ -372,7 +1181,7 @@ public abstract class Bot {
 			return false;
 		}
 		
-		if(!commandMethodsMap.keySet().contains(commandName)){
+		if(!commandInvokerTable.containsKey(commandName)){
 			sendMessage("The command `" + commandName + "` does not exist.", event.getChannel(), false);
 			return false;
 		}
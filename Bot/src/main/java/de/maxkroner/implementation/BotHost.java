@@ -0,0 +1,153 @@
+package de.maxkroner.implementation;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.pmw.tinylog.Logger;
+
+import de.maxkroner.execution.ICommandExecutor;
+import de.maxkroner.execution.StripedExecutor;
+import de.maxkroner.implementation.ShutdownCoordinator.Phase;
+import de.maxkroner.implementation.ShutdownCoordinator.StepResult;
+import de.maxkroner.logging.DiscordLogger;
+import de.maxkroner.metrics.MetricsRegistry;
+import de.maxkroner.metrics.MetricsServer;
+import de.maxkroner.messaging.RateLimitScheduler;
+
+/**
+ * Runs several bots in one JVM. The bots share the command threads, the rate limited request threads,
+ * the event lag watchdog, the metrics with one endpoint, the log and the shutdown.
+ * Every bot keeps its own token, client, commands, prefixes and database, and its own rate limits,
+ * since Discord limits every token on its own.
+ *
+ * A bot joins the host by passing it to its constructor. Its metrics get a bot label, e.g.
+ * {@code bot_messages_seen_total{bot="JokeBot"}}, and its shutdown steps run together with
+ * the steps of the other bots, phase by phase.
+ *
+ * @author kroner
+ *
+ */
+public class BotHost {
+	private static final String HOST_NAME = "BotHost";
+
+	private final String homePath;
+	private final MetricsRegistry metrics = new MetricsRegistry();
+	private final ICommandExecutor commandExecutor;
+	private final RateLimitScheduler rateLimitScheduler;
+	private final EventLagWatchdog eventLagWatchdog;
+	private final ShutdownCoordinator shutdownCoordinator = new ShutdownCoordinator();
+	private final List<Bot> bots = new CopyOnWriteArrayList<>();
+	private MetricsServer metricsServer;
+
+	/**
+	 * @param botCount
+	 *            number of bots the host runs, the command queue holds the commands of all of them
+	 */
+	public BotHost(int botCount) {
+		this.homePath = Paths.get(System.getProperty("user.home"), "discordBots", HOST_NAME).toString();
+		this.commandExecutor = new StripedExecutor(HOST_NAME + "-commands", Bot.DEFAULT_COMMAND_THREADS, Bot.DEFAULT_COMMAND_QUEUE_CAPACITY * botCount);
+		this.rateLimitScheduler = Bot.createRateLimitScheduler();
+		this.eventLagWatchdog = Bot.createEventLagWatchdog();
+		metrics.gauge("bot_command_queue_depth", "Commands waiting for a command thread", () -> commandExecutor.getQueuedTaskCount());
+		metrics.histogram("bot_event_lag_seconds", "Time between a message was sent and our subscribers got it, last minute", eventLagWatchdog::getLagHistogram);
+		metrics.gauge("bot_host_bots", "Bots running in this host", () -> bots.size());
+		// the bots register their steps after these, so the commands stop before their games end
+		shutdownCoordinator.register(Phase.STOP_ACCEPTING, "commands", timeout -> {
+			commandExecutor.shutdown();
+			if(!commandExecutor.awaitTermination(timeout, TimeUnit.MILLISECONDS)){
+				return commandExecutor.getQueuedTaskCount() + commandExecutor.getActiveCount();
+			}
+			return 0;
+		});
+		shutdownCoordinator.register(Phase.STOP_ACCEPTING, "event lag watchdog", timeout -> {
+			eventLagWatchdog.shutdown();
+			return 0;
+		});
+	}
+
+	/**
+	 * writes the log of all bots to log/prefix.log in the home folder of the host,
+	 * the bots don't open logs of their own
+	 */
+	public BotHost addLogging(String loggingPrefix){
+		Bot.logger = new DiscordLogger(Paths.get(homePath, "log", loggingPrefix + ".log").toString());
+		return this;
+	}
+
+	/**
+	 * serves the metrics of all bots on http://localhost:port/metrics
+	 */
+	public BotHost addMetricsEndpoint(int port){
+		try {
+			metricsServer = new MetricsServer(metrics, port);
+		} catch (IOException e) {
+			Logger.error("Metrics endpoint could not be started on port {}.", port);
+			Logger.error(e);
+		}
+		return this;
+	}
+
+	public MetricsRegistry getMetrics() {
+		return metrics;
+	}
+
+	public ICommandExecutor getCommandExecutor() {
+		return commandExecutor;
+	}
+
+	/**
+	 * owns the threads of the rate limit schedulers of the bots, it sends no requests itself
+	 */
+	public RateLimitScheduler getRateLimitScheduler() {
+		return rateLimitScheduler;
+	}
+
+	public EventLagWatchdog getEventLagWatchdog() {
+		return eventLagWatchdog;
+	}
+
+	/**
+	 * the bots of the host register their shutdown steps here
+	 */
+	public ShutdownCoordinator getShutdownCoordinator() {
+		return shutdownCoordinator;
+	}
+
+	public List<Bot> getBots() {
+		return Collections.unmodifiableList(bots);
+	}
+
+	/**
+	 * called by the constructor of the bot
+	 */
+	void add(Bot bot) {
+		bots.add(bot);
+	}
+
+	/**
+	 * shuts all bots down in phases, then stops the metrics endpoint and the log
+	 *
+	 * @return the result of every shutdown step, empty if the host was already shut down
+	 */
+	public synchronized List<StepResult> shutdown(){
+		if(shutdownCoordinator.isShutDown()){
+			return new ArrayList<>();
+		}
+		// registered last, so the threads are stopped after the bots have sent their last requests
+		shutdownCoordinator.register(Phase.DRAIN_QUEUES, "rate limited requests", timeout -> rateLimitScheduler.drain(timeout, TimeUnit.MILLISECONDS));
+		List<StepResult> results = shutdownCoordinator.shutdown();
+		if(metricsServer != null){
+			metricsServer.stop();
+		}
+		if(Bot.logger != null){
+			Bot.logger.shutdown();
+		}
+		return results;
+	}
+
+}
@@ -0,0 +1,64 @@
+package de.maxkroner.implementation;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.WrongMethodTypeException;
+import java.lang.reflect.Method;
+
+import de.maxkroner.parsing.Command;
+import sx.blah.discord.handle.impl.events.guild.channel.message.MessageReceivedEvent;
+
+/**
+ * Direct invoker for a method annotated with {@link de.maxkroner.parsing.CommandHandler}.
+ * The method is resolved to a {@link MethodHandle} once when the command table is built,
+ * so dispatching a command does not pay for reflective access checks, argument boxing
+ * and exception wrapping on every call.
+ *
+ * @author kroner
+ *
+ */
+public class CommandInvoker {
+	private static final MethodType HANDLER_TYPE = MethodType.methodType(void.class, Bot.class, MessageReceivedEvent.class, Command.class);
+
+	private final Method method;
+	private final MethodHandle handle;
+
+	private CommandInvoker(Method method, MethodHandle handle) {
+		this.method = method;
+		this.handle = handle;
+	}
+
+	/**
+	 * Creates an invoker for the given command handler method
+	 *
+	 * @param method
+	 *            handler method with the parameters (MessageReceivedEvent, Command)
+	 * @return invoker calling the method on the bot it is invoked with
+	 * @throws IllegalAccessException
+	 *             if the method can not be made accessible
+	 * @throws IllegalArgumentException
+	 *             if the method does not have the signature of a command handler
+	 */
+	public static CommandInvoker of(Method method) throws IllegalAccessException {
+		if(!Bot.class.isAssignableFrom(method.getDeclaringClass())){
+			throw new IllegalArgumentException("Command handler " + method.getName() + " is not declared in a Bot.");
+		}
+		method.setAccessible(true);
+		try {
+			MethodHandle handle = MethodHandles.lookup().unreflect(method).asType(HANDLER_TYPE);
+			return new CommandInvoker(method, handle);
+		} catch (WrongMethodTypeException e) {
+			throw new IllegalArgumentException("Command handler " + method.getName() + " must take (MessageReceivedEvent, Command) as parameters.", e);
+		}
+	}
+
+	public void invoke(Bot bot, MessageReceivedEvent event, Command command) throws Throwable {
+		handle.invokeExact(bot, event, command);
+	}
+
+	public Method getMethod() {
+		return method;
+	}
+
+}
@@ -0,0 +1,229 @@
+package de.maxkroner.implementation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.pmw.tinylog.Logger;
+
+import de.maxkroner.metrics.LatencyHistogram;
+
+/**
+ * Watches how long events wait before our event subscribers get them.
+ * The lag of an event is the time between its timestamp and the start of the subscriber, it is kept
+ * in a histogram over the last minute. Events carry no timestamp of their own, only the snowflake of
+ * a received message tells when Discord created it, so the lag includes the network delay and the
+ * clock difference to Discord.
+ *
+ * Every thread that delivered an event is remembered as a dispatcher thread. Once per second the
+ * watchdog samples their stacks: a thread that is inside the same method of the handler package
+ * on consecutive samples is busy in a handler. When the lag of the last second or the time a thread
+ * is busy in one handler passes the threshold, the stacks of the slowest handler threads are logged,
+ * at most once per dump interval.
+ *
+ * @author kroner
+ *
+ */
+public class EventLagWatchdog {
+	// 2015-01-01, the start of Discord's snowflakes
+	private static final long DISCORD_EPOCH = 1420070400000L;
+	private static final long CHECK_INTERVAL_MILLIS = 1000;
+	private static final long DUMP_INTERVAL_MILLIS = 60000;
+	private static final int WINDOW_SLOTS = 6;
+	private static final long SLOT_MILLIS = 10000;
+	private static final int DUMPED_THREADS = 3;
+
+	private final String handlerPackage;
+	private volatile long thresholdMillis;
+	private final LatencyHistogram[] slots = new LatencyHistogram[WINDOW_SLOTS];
+	private final AtomicLong maxLagSinceCheck = new AtomicLong();
+	private final Set<Thread> dispatcherThreads = Collections.newSetFromMap(new ConcurrentHashMap<>());
+	// guarded by this
+	private final Map<Thread, BusyHandler> busyHandlers = new HashMap<>();
+	private int currentSlot = 0;
+	private long slotStart;
+	private long lastDump = Long.MIN_VALUE / 2;
+	private ScheduledThreadPoolExecutor checker;
+
+	/**
+	 * @param handlerPackage
+	 *            package prefix of the classes with event subscribers, e.g. de.maxkroner
+	 * @param thresholdMillis
+	 *            lag or handler time at which the stacks are logged
+	 */
+	public EventLagWatchdog(String handlerPackage, long thresholdMillis) {
+		this.handlerPackage = handlerPackage;
+		this.thresholdMillis = thresholdMillis;
+		for (int i = 0; i < WINDOW_SLOTS; i++) {
+			slots[i] = new LatencyHistogram();
+		}
+		this.slotStart = System.currentTimeMillis();
+	}
+
+	/**
+	 * @return the time in milliseconds since 1970 at which Discord created the snowflake
+	 */
+	public static long timestampOf(long snowflake) {
+		return (snowflake >>> 22) + DISCORD_EPOCH;
+	}
+
+	/**
+	 * records the lag of an event, call at the start of a subscriber
+	 *
+	 * @param eventMillis
+	 *            when the event happened
+	 */
+	public void recordLag(long eventMillis) {
+		// the clocks of Discord and the host differ, an event can't arrive before it happened
+		long lag = Math.max(0, System.currentTimeMillis() - eventMillis);
+		slots[currentSlot].record(lag, TimeUnit.MILLISECONDS);
+		maxLagSinceCheck.accumulateAndGet(lag, Math::max);
+		registerDispatcherThread();
+	}
+
+	/**
+	 * remembers the current thread as one that runs event subscribers
+	 */
+	public void registerDispatcherThread() {
+		dispatcherThreads.add(Thread.currentThread());
+	}
+
+	/**
+	 * @return lag of the events of the last minute
+	 */
+	public LatencyHistogram getLagHistogram() {
+		LatencyHistogram window = new LatencyHistogram();
+		for (LatencyHistogram slot : slots) {
+			window.add(slot);
+		}
+		return window;
+	}
+
+	public long getThresholdMillis() {
+		return thresholdMillis;
+	}
+
+	public void setThresholdMillis(long thresholdMillis) {
+		this.thresholdMillis = thresholdMillis;
+	}
+
+	public synchronized void start() {
+		if (checker == null) {
+			checker = new ScheduledThreadPoolExecutor(1, runnable -> {
+				Thread thread = new Thread(runnable, "event-lag-watchdog");
+				thread.setDaemon(true);
+				return thread;
+			});
+			checker.scheduleWithFixedDelay(() -> {
+				try {
+					check(System.currentTimeMillis());
+				} catch (RuntimeException e) {
+					Logger.error(e);
+				}
+			}, CHECK_INTERVAL_MILLIS, CHECK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	public synchronized void shutdown() {
+		if (checker != null) {
+			checker.shutdownNow();
+			checker = null;
+		}
+	}
+
+	/**
+	 * rotates the lag window, samples the dispatcher threads and logs the slowest handlers if needed
+	 *
+	 * @return the names of the threads whose stacks were logged
+	 */
+	synchronized List<String> check(long now) {
+		if (now - slotStart >= SLOT_MILLIS) {
+			int next = (currentSlot + 1) % WINDOW_SLOTS;
+			slots[next].reset();
+			currentSlot = next;
+			slotStart = now;
+		}
+
+		List<BusyHandler> busy = sampleHandlers(now);
+		long lag = maxLagSinceCheck.getAndSet(0);
+		long longestBusy = busy.isEmpty() ? 0 : now - busy.get(0).since;
+		if ((lag < thresholdMillis && longestBusy < thresholdMillis) || now - lastDump < DUMP_INTERVAL_MILLIS) {
+			return Collections.emptyList();
+		}
+		lastDump = now;
+
+		List<String> dumped = new ArrayList<>();
+		StringBuilder dump = new StringBuilder();
+		dump.append("Event lag ").append(lag).append(" ms, slowest handlers:");
+		for (BusyHandler handler : busy.subList(0, Math.min(DUMPED_THREADS, busy.size()))) {
+			dump.append("\n\"").append(handler.thread.getName()).append("\" in ").append(handler.method).append(" for ").append(now - handler.since).append(" ms");
+			for (StackTraceElement frame : handler.stack) {
+				dump.append("\n\tat ").append(frame);
+			}
+			dumped.add(handler.thread.getName());
+		}
+		Logger.warn(dump.toString());
+		return dumped;
+	}
+
+	/**
+	 * @return threads that are in a handler, the longest busy first
+	 */
+	private List<BusyHandler> sampleHandlers(long now) {
+		List<BusyHandler> busy = new ArrayList<>();
+		for (Thread thread : dispatcherThreads) {
+			if (!thread.isAlive()) {
+				dispatcherThreads.remove(thread);
+				busyHandlers.remove(thread);
+				continue;
+			}
+			StackTraceElement[] stack = thread.getStackTrace();
+			String method = handlerMethod(stack);
+			if (method == null) {
+				busyHandlers.remove(thread);
+				continue;
+			}
+			BusyHandler previous = busyHandlers.get(thread);
+			BusyHandler current = new BusyHandler(thread, method, previous != null && previous.method.equals(method) ? previous.since : now, stack);
+			busyHandlers.put(thread, current);
+			busy.add(current);
+		}
+		busy.sort(Comparator.comparingLong(handler -> handler.since));
+		return busy;
+	}
+
+	/**
+	 * @return the outermost method of the handler package on the stack, the subscriber the dispatcher called
+	 */
+	private String handlerMethod(StackTraceElement[] stack) {
+		for (int i = stack.length - 1; i >= 0; i--) {
+			if (stack[i].getClassName().startsWith(handlerPackage) && !stack[i].getClassName().equals(EventLagWatchdog.class.getName())) {
+				return stack[i].getClassName() + "." + stack[i].getMethodName();
+			}
+		}
+		return null;
+	}
+
+	private static class BusyHandler {
+		private final Thread thread;
+		private final String method;
+		private final long since;
+		private final StackTraceElement[] stack;
+
+		private BusyHandler(Thread thread, String method, long since, StackTraceElement[] stack) {
+			this.thread = thread;
+			this.method = method;
+			this.since = since;
+			this.stack = stack;
+		}
+	}
+
+}
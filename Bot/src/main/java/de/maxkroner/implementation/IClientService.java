@@ -1,9 +1,17 @@
 package de.maxkroner.implementation;
 
+import de.maxkroner.messaging.Priority;
+import sx.blah.discord.api.internal.json.objects.EmbedObject;
 import sx.blah.discord.handle.obj.IChannel;
 
 public interface IClientService {
 	
 	public void sendMessage(String message, IChannel channel, boolean tts);
+	
+	public default void sendMessage(String message, IChannel channel, boolean tts, Priority priority) {
+		sendMessage(message, channel, tts);
+	}
+	
+	public void sendEmbed(EmbedObject embed, IChannel channel, Priority priority);
 
 }
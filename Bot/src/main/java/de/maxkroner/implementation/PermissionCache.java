@@ -0,0 +1,67 @@
+package de.maxkroner.implementation;
+
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import sx.blah.discord.handle.obj.IChannel;
+import sx.blah.discord.handle.obj.Permissions;
+
+/**
+ * Permissions of the bot itself in every channel, including the overrides of the channel.
+ * Resolving them walks all roles and overrides, so they are only resolved once per channel
+ * until a role, member, guild or channel update invalidates them.
+ *
+ * @author kroner
+ *
+ */
+public class PermissionCache {
+	private final Function<IChannel, EnumSet<Permissions>> resolver;
+	private final Map<Long, Map<Long, EnumSet<Permissions>>> permissionsByGuild = new ConcurrentHashMap<>();
+
+	/**
+	 * @param resolver
+	 *            resolves the permissions of the bot in a channel, e.g. with IChannel.getModifiedPermissions
+	 */
+	public PermissionCache(Function<IChannel, EnumSet<Permissions>> resolver) {
+		this.resolver = resolver;
+	}
+
+	/**
+	 * @return true if the bot has the permission in the channel, always true in private channels
+	 */
+	public boolean hasPermission(IChannel channel, Permissions permission) {
+		if(channel.isPrivate()){
+			return true;
+		}
+		Map<Long, EnumSet<Permissions>> channels = permissionsByGuild.computeIfAbsent(channel.getGuild().getLongID(), guild_id -> new ConcurrentHashMap<>());
+		return channels.computeIfAbsent(channel.getLongID(), channel_id -> EnumSet.copyOf(resolver.apply(channel))).contains(permission);
+	}
+
+	/**
+	 * forget the permissions in all channels of the guild, e.g. after roles changed
+	 */
+	public void invalidateGuild(long guild_id) {
+		permissionsByGuild.remove(guild_id);
+	}
+
+	/**
+	 * forget the permissions in the channel, e.g. after its overrides changed
+	 */
+	public void invalidateChannel(long guild_id, long channel_id) {
+		Map<Long, EnumSet<Permissions>> channels = permissionsByGuild.get(guild_id);
+		if(channels != null){
+			channels.remove(channel_id);
+		}
+	}
+
+	public int size() {
+		int size = 0;
+		for (Map<Long, EnumSet<Permissions>> channels : permissionsByGuild.values()) {
+			size += channels.size();
+		}
+		return size;
+	}
+
+}
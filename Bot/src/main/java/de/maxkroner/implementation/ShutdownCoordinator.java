@@ -0,0 +1,207 @@
+package de.maxkroner.implementation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.pmw.tinylog.Logger;
+
+/**
+ * Shuts a bot down in phases: stop accepting commands, drain the outbound and database write queues,
+ * stop the schedulers of the modules, persist their state and close the databases. The bot and its
+ * modules register steps for the phases, the steps of a phase run in the order they were registered.
+ *
+ * Every phase has a time budget. A step gets what is left of the budget of its phase and reports how
+ * many items (commands, messages, updates, ...) it had to drop. A step that is still running when the
+ * budget is used up is left behind and the next one is started, so a hanging step can't keep the bot
+ * from shutting down.
+ *
+ * @author kroner
+ *
+ */
+public class ShutdownCoordinator {
+	private final Map<Phase, List<Step>> steps = new EnumMap<>(Phase.class);
+	private final Map<Phase, Long> budgetMillis = new EnumMap<>(Phase.class);
+	private final AtomicBoolean shutDown = new AtomicBoolean(false);
+
+	public ShutdownCoordinator() {
+		for (Phase phase : Phase.values()) {
+			steps.put(phase, new ArrayList<>());
+			budgetMillis.put(phase, phase.defaultBudgetMillis);
+		}
+	}
+
+	/**
+	 * @param name
+	 *            shown in the report of the shutdown
+	 */
+	public synchronized ShutdownCoordinator register(Phase phase, String name, IShutdownStep step) {
+		steps.get(phase).add(new Step(name, step));
+		return this;
+	}
+
+	public synchronized ShutdownCoordinator setBudget(Phase phase, long millis) {
+		budgetMillis.put(phase, millis);
+		return this;
+	}
+
+	public boolean isShutDown() {
+		return shutDown.get();
+	}
+
+	/**
+	 * runs all phases, only the first call shuts down
+	 *
+	 * @return the result of every step, empty if the bot was already shut down
+	 */
+	public List<StepResult> shutdown() {
+		if (!shutDown.compareAndSet(false, true)) {
+			return Collections.emptyList();
+		}
+		AtomicInteger threadCount = new AtomicInteger();
+		ExecutorService runner = Executors.newCachedThreadPool(runnable -> {
+			Thread thread = new Thread(runnable, "shutdown-" + threadCount.getAndIncrement());
+			// a step that is left behind must not keep the JVM alive
+			thread.setDaemon(true);
+			return thread;
+		});
+		List<StepResult> results = new ArrayList<>();
+		try {
+			for (Phase phase : Phase.values()) {
+				List<Step> phaseSteps;
+				long budget;
+				synchronized (this) {
+					phaseSteps = new ArrayList<>(steps.get(phase));
+					budget = budgetMillis.get(phase);
+				}
+				long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(budget);
+				for (Step step : phaseSteps) {
+					StepResult result = runStep(runner, phase, step, deadline);
+					log(result);
+					results.add(result);
+				}
+			}
+		} finally {
+			runner.shutdownNow();
+		}
+		return results;
+	}
+
+	private static StepResult runStep(ExecutorService runner, Phase phase, Step step, long deadline) {
+		long start = System.nanoTime();
+		long remainingMillis = Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadline - start));
+		Future<Integer> future = runner.submit(() -> step.step.run(remainingMillis));
+		Outcome outcome;
+		int dropped = 0;
+		try {
+			dropped = future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+			outcome = Outcome.DONE;
+		} catch (TimeoutException e) {
+			outcome = Outcome.TIMED_OUT;
+		} catch (ExecutionException e) {
+			Logger.error(e.getCause());
+			outcome = Outcome.FAILED;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			outcome = Outcome.TIMED_OUT;
+		}
+		return new StepResult(phase, step.name, outcome, dropped, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+	}
+
+	private static void log(StepResult result) {
+		if (result.getOutcome() == Outcome.DONE && result.getDropped() == 0) {
+			Logger.info("Shutdown {} {}: done in {} ms.", result.getPhase(), result.getName(), result.getMillis());
+		} else if (result.getOutcome() == Outcome.DONE) {
+			Logger.warn("Shutdown {} {}: done in {} ms, {} dropped.", result.getPhase(), result.getName(), result.getMillis(), result.getDropped());
+		} else {
+			Logger.warn("Shutdown {} {}: {} after {} ms.", result.getPhase(), result.getName(), result.getOutcome(), result.getMillis());
+		}
+	}
+
+	/**
+	 * the phases in the order they run, with their default budget
+	 */
+	public enum Phase {
+		STOP_ACCEPTING(5000), DRAIN_QUEUES(5000), STOP_SCHEDULERS(2000), PERSIST_STATE(5000), CLOSE_DATABASE(3000);
+
+		private final long defaultBudgetMillis;
+
+		private Phase(long defaultBudgetMillis) {
+			this.defaultBudgetMillis = defaultBudgetMillis;
+		}
+	}
+
+	public enum Outcome {
+		DONE, FAILED, TIMED_OUT
+	}
+
+	@FunctionalInterface
+	public interface IShutdownStep {
+		/**
+		 * @param timeoutMillis
+		 *            time left in the budget of the phase
+		 * @return number of items the step had to drop
+		 */
+		public int run(long timeoutMillis) throws Exception;
+	}
+
+	public static class StepResult {
+		private final Phase phase;
+		private final String name;
+		private final Outcome outcome;
+		private final int dropped;
+		private final long millis;
+
+		private StepResult(Phase phase, String name, Outcome outcome, int dropped, long millis) {
+			this.phase = phase;
+			this.name = name;
+			this.outcome = outcome;
+			this.dropped = dropped;
+			this.millis = millis;
+		}
+
+		public Phase getPhase() {
+			return phase;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public Outcome getOutcome() {
+			return outcome;
+		}
+
+		/**
+		 * @return items the step dropped, 0 if it didn't finish
+		 */
+		public int getDropped() {
+			return dropped;
+		}
+
+		public long getMillis() {
+			return millis;
+		}
+	}
+
+	private static class Step {
+		private final String name;
+		private final IShutdownStep step;
+
+		private Step(String name, IShutdownStep step) {
+			this.name = name;
+			this.step = step;
+		}
+	}
+
+}
@@ -0,0 +1,130 @@
+package de.maxkroner.logging;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.pmw.tinylog.Configuration;
+import org.pmw.tinylog.Level;
+import org.pmw.tinylog.LogEntry;
+import org.pmw.tinylog.writers.LogEntryValue;
+import org.pmw.tinylog.writers.Writer;
+
+/**
+ * Writer that hands log entries to another writer on a background thread.
+ * Logging threads only put the entry into a ring buffer of fixed size. The background thread takes
+ * all buffered entries at once, writes them and flushes the other writer once per batch, so a
+ * buffered file writer touches the disk once per batch instead of once per entry.
+ *
+ * @author kroner
+ *
+ */
+public class AsyncWriter implements Writer {
+	private static final int MAX_BATCH_SIZE = 512;
+	private static final long DROP_REPORT_INTERVAL_MILLIS = 60000;
+	private static final long CLOSE_TIMEOUT_SECONDS = 10;
+
+	private final Writer writer;
+	private final OverflowPolicy policy;
+	private final RingBuffer<LogEntry> buffer;
+	private final AtomicLong dropped = new AtomicLong();
+	private final Thread drainer;
+
+	/**
+	 * @param writer
+	 *            writes the entries, only called from the background thread
+	 * @param capacity
+	 *            number of entries the buffer holds
+	 */
+	public AsyncWriter(Writer writer, int capacity, OverflowPolicy policy) {
+		this.writer = writer;
+		this.policy = policy;
+		this.buffer = new RingBuffer<>(capacity);
+		this.drainer = new Thread(this::drain, "log-writer");
+		drainer.setDaemon(true);
+		drainer.start();
+	}
+
+	@Override
+	public Set<LogEntryValue> getRequiredLogEntryValues() {
+		return writer.getRequiredLogEntryValues();
+	}
+
+	@Override
+	public void init(Configuration configuration) throws Exception {
+		writer.init(configuration);
+	}
+
+	@Override
+	public void write(LogEntry logEntry) {
+		boolean droppable = policy == OverflowPolicy.DROP_DEBUG && (logEntry.getLevel() == Level.TRACE || logEntry.getLevel() == Level.DEBUG);
+		if (!buffer.put(logEntry, droppable)) {
+			dropped.incrementAndGet();
+		}
+	}
+
+	/**
+	 * waits until the entries buffered so far are written and flushed
+	 */
+	@Override
+	public void flush() throws InterruptedException {
+		buffer.awaitConsumed(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * writes the buffered entries and closes the other writer, entries logged afterwards are discarded
+	 */
+	@Override
+	public void close() throws Exception {
+		buffer.close();
+		drainer.join(TimeUnit.SECONDS.toMillis(CLOSE_TIMEOUT_SECONDS));
+		writer.close();
+	}
+
+	/**
+	 * @return number of entries dropped because the buffer was full
+	 */
+	public long getDroppedCount() {
+		return dropped.get();
+	}
+
+	/**
+	 * @return number of entries waiting to be written
+	 */
+	public int getBufferedCount() {
+		return buffer.size();
+	}
+
+	private void drain() {
+		List<LogEntry> batch = new ArrayList<>(MAX_BATCH_SIZE);
+		long reportedDrops = 0;
+		long lastDropReport = System.currentTimeMillis();
+		while (buffer.take(batch, MAX_BATCH_SIZE) > 0) {
+			for (LogEntry entry : batch) {
+				try {
+					writer.write(entry);
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+			}
+			batch.clear();
+			try {
+				writer.flush();
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+			buffer.consumed();
+
+			// the log itself can't report it, it is the reason for the drops
+			long now = System.currentTimeMillis();
+			if (now - lastDropReport >= DROP_REPORT_INTERVAL_MILLIS && dropped.get() > reportedDrops) {
+				System.err.println((dropped.get() - reportedDrops) + " log entries were dropped because the log buffer was full.");
+				reportedDrops = dropped.get();
+				lastDropReport = now;
+			}
+		}
+	}
+
+}
@@ -1,9 +1,9 @@
 package de.maxkroner.logging;
 
 import java.io.IOException;
-import java.nio.file.Paths;
 
 import org.pmw.tinylog.Configurator;
+import org.pmw.tinylog.Level;
 import org.pmw.tinylog.Logger;
 import org.pmw.tinylog.labelers.TimestampLabeler;
 import org.pmw.tinylog.policies.DailyPolicy;
@@ -16,12 +16,27 @@ import sx.blah.discord.handle.obj.IUser;
 
 
 public class DiscordLogger{
+	private static final String CONTEXT_FORMAT = "{} | {} | {} | ";
+	private AsyncWriter asyncWriter;
 
 	public DiscordLogger(String path) {
 		super();
 		configureLogging(path);
 	}
 	
+	/**
+	 * Writes the log file on a background thread, logging only puts the entry into a buffer.
+	 * 
+	 * @param capacity
+	 *            number of entries the buffer holds
+	 * @param policy
+	 *            what happens when the buffer is full
+	 */
+	public DiscordLogger(String path, int capacity, OverflowPolicy policy) {
+		super();
+		configureAsyncLogging(path, capacity, policy);
+	}
+	
 	public DiscordLogger(){
 		
 	}
@@ -66,29 +81,69 @@ public class DiscordLogger{
 		Logger.error(message, objects);
 	}
 	
+	// the names are only looked up if the level is enabled, they can need a request to Discord
+	
 	public void trace(IGuild guild, IUser user, IChannel channel, String message, Object...objects){
-		String advancedMessage = "{} | {} | {} | " + message;
-		Logger.trace(advancedMessage + guild.getName(), user.getName(), channel.getName(), objects);
+		if(isEnabled(Level.TRACE)){
+			Logger.trace(CONTEXT_FORMAT + message, withContext(guild, user, channel, objects));
+		}
 	}
 	
 	public void debug(IGuild guild, IUser user, IChannel channel, String message, Object... objects){
-		String advancedMessage = "{} | {} | {} | " + message;
-		Logger.debug(advancedMessage + guild.getName(), user.getName(), channel.getName(), objects);
+		if(isEnabled(Level.DEBUG)){
+			Logger.debug(CONTEXT_FORMAT + message, withContext(guild, user, channel, objects));
+		}
 	}
 	
 	public void info(IGuild guild, IUser user, IChannel channel, String message, Object... objects){
-		String advancedMessage = "{} | {} | {} | " + message;
-		Logger.info(advancedMessage + guild.getName(), user.getName(), channel.getName(), objects);
+		if(isEnabled(Level.INFO)){
+			Logger.info(CONTEXT_FORMAT + message, withContext(guild, user, channel, objects));
+		}
 	}
 	
 	public void warn(IGuild guild, IUser user, IChannel channel, String message, Object... objects){
-		String advancedMessage = "{} | {} | {} | " + message;
-		Logger.warn(advancedMessage + guild.getName(), user.getName(), channel.getName(), objects);
+		if(isEnabled(Level.WARNING)){
+			Logger.warn(CONTEXT_FORMAT + message, withContext(guild, user, channel, objects));
+		}
 	}
 	
 	public void error(IGuild guild, IUser user, IChannel channel, String message, Object... objects){
-		String advancedMessage = "{} | {} | {} | " + message;
-		Logger.error(advancedMessage + guild.getName(), user.getName(), channel.getName(), objects);
+		if(isEnabled(Level.ERROR)){
+			Logger.error(CONTEXT_FORMAT + message, withContext(guild, user, channel, objects));
+		}
+	}
+	
+	public boolean isEnabled(Level level){
+		return level.ordinal() >= Logger.getLevel().ordinal();
+	}
+	
+	/**
+	 * @return number of entries dropped because the buffer was full, 0 if logging is synchronous
+	 */
+	public long getDroppedCount(){
+		return asyncWriter == null ? 0 : asyncWriter.getDroppedCount();
+	}
+	
+	/**
+	 * writes the buffered entries of asynchronous logging, entries logged afterwards are discarded
+	 */
+	public void shutdown(){
+		if(asyncWriter != null){
+			try {
+				asyncWriter.close();
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		}
+	}
+	
+	private static Object[] withContext(IGuild guild, IUser user, IChannel channel, Object[] objects){
+		Object[] arguments = new Object[objects.length + 3];
+		arguments[0] = guild == null ? "-" : guild.getName();
+		arguments[1] = user == null ? "-" : user.getName();
+		arguments[2] = channel == null ? "-" : channel.getName();
+		System.arraycopy(objects, 0, arguments, 3, objects.length);
+		return arguments;
 	}
 	
 	private void configureLogging(String path) {
@@ -100,5 +155,17 @@ public class DiscordLogger{
 			e.printStackTrace();
 		}
 	}
+	
+	private void configureAsyncLogging(String path, int capacity, OverflowPolicy policy) {
+		try {
+			// buffered, the async writer flushes it once per batch
+			asyncWriter = new AsyncWriter(new RollingFileWriter(path, 1000, true, new TimestampLabeler("yyyy-MM-dd"), new DailyPolicy()), capacity, policy);
+			Configurator.fromResource("tinylog.properties")
+						.addWriter(asyncWriter)
+						.activate();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
 
 }
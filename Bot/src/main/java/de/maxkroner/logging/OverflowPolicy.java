@@ -0,0 +1,18 @@
+package de.maxkroner.logging;
+
+/**
+ * What a logging thread does when the buffer of the asynchronous writer is full.
+ *
+ * @author kroner
+ *
+ */
+public enum OverflowPolicy {
+	/**
+	 * trace and debug entries are dropped and counted, entries of higher levels wait for space
+	 */
+	DROP_DEBUG,
+	/**
+	 * all entries wait for space, nothing is lost but a slow disk slows down the bot
+	 */
+	BLOCK
+}
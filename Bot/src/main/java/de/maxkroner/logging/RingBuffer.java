@@ -0,0 +1,150 @@
+package de.maxkroner.logging;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded buffer between many producers and one consumer that takes everything buffered at once.
+ * The array is allocated once, putting an entry doesn't allocate.
+ *
+ * @author kroner
+ *
+ */
+class RingBuffer<T> {
+	private final Object[] ring;
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition notEmpty = lock.newCondition();
+	private final Condition notFull = lock.newCondition();
+	// guarded by lock
+	private int head = 0;
+	private int count = 0;
+	private boolean closed = false;
+	private boolean consuming = false;
+
+	RingBuffer(int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("capacity must be positive");
+		}
+		this.ring = new Object[capacity];
+	}
+
+	/**
+	 * puts the item into the buffer, waits for space if it is full
+	 *
+	 * @param droppable
+	 *            true to drop the item instead of waiting
+	 * @return false if the item was dropped, because the buffer was full or closed or the thread was interrupted
+	 */
+	boolean put(T item, boolean droppable) {
+		lock.lock();
+		try {
+			while (count == ring.length && !closed) {
+				if (droppable) {
+					return false;
+				}
+				try {
+					notFull.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return false;
+				}
+			}
+			if (closed) {
+				return false;
+			}
+			ring[(head + count) % ring.length] = item;
+			count++;
+			notEmpty.signal();
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * waits for items and moves up to max of them into the batch, call consumed when the batch is processed
+	 *
+	 * @return number of moved items, 0 if the buffer is closed and empty
+	 */
+	@SuppressWarnings("unchecked")
+	int take(List<T> batch, int max) {
+		lock.lock();
+		try {
+			while (count == 0 && !closed) {
+				notEmpty.awaitUninterruptibly();
+			}
+			int n = Math.min(count, max);
+			for (int i = 0; i < n; i++) {
+				batch.add((T) ring[head]);
+				ring[head] = null;
+				head = (head + 1) % ring.length;
+			}
+			count -= n;
+			consuming = n > 0;
+			notFull.signalAll();
+			return n;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * the items of the last take are processed
+	 */
+	void consumed() {
+		lock.lock();
+		try {
+			consuming = false;
+			notFull.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * waits until all items put so far are taken and processed
+	 *
+	 * @return false if the timeout passed before
+	 */
+	boolean awaitConsumed(long timeout, TimeUnit unit) throws InterruptedException {
+		long nanos = unit.toNanos(timeout);
+		lock.lock();
+		try {
+			while (count > 0 || consuming) {
+				if (nanos <= 0) {
+					return false;
+				}
+				nanos = notFull.awaitNanos(nanos);
+			}
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * items put afterwards are dropped, the consumer still takes the buffered ones
+	 */
+	void close() {
+		lock.lock();
+		try {
+			closed = true;
+			notEmpty.signalAll();
+			notFull.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	int size() {
+		lock.lock();
+		try {
+			return count;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+}
@@ -12,6 +12,6 @@ public class ShutdownHook extends Thread{
 
 	@Override
 	public void run() {
-		bot.disconnect();
+		bot.shutdown();
 	}
 }
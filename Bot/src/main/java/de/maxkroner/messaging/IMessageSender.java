@@ -0,0 +1,9 @@
+package de.maxkroner.messaging;
+
+import sx.blah.discord.handle.obj.IChannel;
+
+public interface IMessageSender {
+	
+	public void sendMessage(String message, IChannel channel, boolean tts, Priority priority);
+
+}
@@ -0,0 +1,245 @@
+package de.maxkroner.messaging;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.pmw.tinylog.Logger;
+
+import de.maxkroner.tracing.Span;
+import de.maxkroner.tracing.Tracer;
+import de.maxkroner.tracing.Tracer.Continuation;
+import sx.blah.discord.handle.obj.IChannel;
+
+/**
+ * Outbound message queue per channel. The first message to a channel starts a short window,
+ * all messages to the channel within the window are sent together when it ends.
+ * Adjacent text messages are merged into one message (separated by a line break)
+ * as long as it stays within Discord's limit of 2000 characters, so sending many
+ * small messages costs less rate limited requests. TTS messages and embeds are never merged.
+ * A merged message gets the highest priority of its parts, a message with high priority
+ * ends the window of its channel right away.
+ * The order of the messages of a channel is kept.
+ * A message sent within a trace keeps the trace open until it is sent, the send is traced in the
+ * trace of the first part of the merged message.
+ *
+ * @author kroner
+ *
+ */
+public class MessageCoalescer implements IMessageSender {
+	public static final int MAX_MESSAGE_LENGTH = 2000;
+
+	private final IMessageSender sender;
+	private final long windowMillis;
+	private final Map<Long, ChannelQueue> queues = new ConcurrentHashMap<>();
+	// one thread, so the windows of a channel are flushed in order
+	private final ScheduledThreadPoolExecutor scheduler;
+
+	/**
+	 * @param sender
+	 *            sends the merged messages
+	 * @param windowMillis
+	 *            time messages to a channel are collected after the first one
+	 */
+	public MessageCoalescer(IMessageSender sender, long windowMillis) {
+		this.sender = sender;
+		this.windowMillis = windowMillis;
+		this.scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+			Thread thread = new Thread(runnable, "message-coalescer");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	public void sendMessage(String message, IChannel channel, boolean tts) {
+		sendMessage(message, channel, tts, Priority.NORMAL);
+	}
+
+	@Override
+	public void sendMessage(String message, IChannel channel, boolean tts, Priority priority) {
+		Continuation trace = Tracer.capture();
+		enqueue(channel, new OutboundMessage(message, tts, priority, trace == null ? Collections.emptyList() : Collections.singletonList(trace)),
+				() -> sender.sendMessage(message, channel, tts, priority));
+	}
+
+	/**
+	 * queues a message that isn't merged, e.g. an embed, so it is sent in order with the text messages of the channel
+	 *
+	 * @param send
+	 *            sends the message when the window of the channel ends
+	 */
+	public void send(IChannel channel, Priority priority, Runnable send) {
+		Continuation trace = Tracer.capture();
+		enqueue(channel, new OutboundMessage(send, priority, trace == null ? Collections.emptyList() : Collections.singletonList(trace)), send);
+	}
+
+	private void enqueue(IChannel channel, OutboundMessage outboundMessage, Runnable sendNow) {
+		while (true) {
+			ChannelQueue queue = queues.get(channel.getLongID());
+			if (queue == null) {
+				ChannelQueue created = new ChannelQueue(channel);
+				queue = queues.putIfAbsent(channel.getLongID(), created);
+				if (queue == null) {
+					queue = created;
+					try {
+						scheduler.schedule(() -> flush(created), windowMillis, TimeUnit.MILLISECONDS);
+					} catch (RejectedExecutionException e) {
+						// shut down, don't wait for a window anymore
+						queues.remove(channel.getLongID(), created);
+						for (Continuation trace : outboundMessage.traces) {
+							trace.release();
+						}
+						sendNow.run();
+						return;
+					}
+				}
+			}
+			synchronized (queue) {
+				// a flushed queue is replaced by a new one
+				if (!queue.flushed) {
+					queue.messages.add(outboundMessage);
+					if (outboundMessage.priority == Priority.HIGH) {
+						flushNow(queue);
+					}
+					return;
+				}
+			}
+		}
+	}
+
+	private void flushNow(ChannelQueue queue) {
+		try {
+			scheduler.execute(() -> flush(queue));
+		} catch (RejectedExecutionException e) {
+			// shut down, the scheduled flush still runs
+		}
+	}
+
+	/**
+	 * @return number of messages waiting for the end of their window
+	 */
+	public int getQueuedMessageCount() {
+		int queued = 0;
+		for (ChannelQueue queue : queues.values()) {
+			synchronized (queue) {
+				queued += queue.messages.size();
+			}
+		}
+		return queued;
+	}
+
+	/**
+	 * sends all queued messages at the end of their windows, messages sent afterwards aren't merged anymore
+	 */
+	public void shutdown() {
+		scheduler.shutdown();
+	}
+
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		return scheduler.awaitTermination(timeout, unit);
+	}
+
+	private void flush(ChannelQueue queue) {
+		List<OutboundMessage> messages;
+		synchronized (queue) {
+			if (queue.flushed) {
+				return;
+			}
+			queue.flushed = true;
+			queues.remove(queue.channel.getLongID(), queue);
+			messages = queue.messages;
+		}
+		for (OutboundMessage message : coalesce(messages)) {
+			try (Span span = message.traces.isEmpty() ? Span.NOOP : message.traces.get(0).resume("send")) {
+				if (message.send != null) {
+					message.send.run();
+				} else {
+					sender.sendMessage(message.content, queue.channel, message.tts, message.priority);
+				}
+			} catch (Exception e) {
+				Logger.error(e);
+			} finally {
+				for (Continuation trace : message.traces) {
+					trace.release();
+				}
+			}
+		}
+	}
+
+	static List<OutboundMessage> coalesce(List<OutboundMessage> messages) {
+		List<OutboundMessage> merged = new ArrayList<>();
+		StringBuilder builder = null;
+		Priority priority = null;
+		List<Continuation> traces = null;
+		for (OutboundMessage message : messages) {
+			boolean mergeable = message.send == null && !message.tts && message.content.length() <= MAX_MESSAGE_LENGTH;
+			if (mergeable && builder != null && builder.length() + 1 + message.content.length() <= MAX_MESSAGE_LENGTH) {
+				builder.append('\n').append(message.content);
+				priority = message.priority.compareTo(priority) < 0 ? message.priority : priority;
+				traces.addAll(message.traces);
+				continue;
+			}
+			if (builder != null) {
+				merged.add(new OutboundMessage(builder.toString(), false, priority, traces));
+				builder = null;
+			}
+			if (mergeable) {
+				builder = new StringBuilder(message.content);
+				priority = message.priority;
+				traces = new ArrayList<>(message.traces);
+			} else {
+				merged.add(message);
+			}
+		}
+		if (builder != null) {
+			merged.add(new OutboundMessage(builder.toString(), false, priority, traces));
+		}
+		return merged;
+	}
+
+	static class OutboundMessage {
+		final String content;
+		final boolean tts;
+		final Priority priority;
+		// traces the message was sent in
+		final List<Continuation> traces;
+		// sends a message that isn't text, null for text
+		final Runnable send;
+
+		OutboundMessage(String content, boolean tts, Priority priority) {
+			this(content, tts, priority, Collections.emptyList());
+		}
+
+		OutboundMessage(String content, boolean tts, Priority priority, List<Continuation> traces) {
+			this.content = content;
+			this.tts = tts;
+			this.priority = priority;
+			this.traces = traces;
+			this.send = null;
+		}
+
+		OutboundMessage(Runnable send, Priority priority, List<Continuation> traces) {
+			this.content = "";
+			this.tts = false;
+			this.priority = priority;
+			this.traces = traces;
+			this.send = send;
+		}
+	}
+
+	private static class ChannelQueue {
+		private final IChannel channel;
+		private final List<OutboundMessage> messages = new ArrayList<>();
+		private boolean flushed = false;
+
+		private ChannelQueue(IChannel channel) {
+			this.channel = channel;
+		}
+	}
+
+}
@@ -0,0 +1,16 @@
+package de.maxkroner.messaging;
+
+/**
+ * Priority lanes of outgoing requests, requests of a higher lane are sent first
+ * when the rate limit doesn't allow to send all of them.
+ *
+ * @author kroner
+ *
+ */
+public enum Priority {
+	/** answers users are waiting for, e.g. game answers */
+	HIGH,
+	NORMAL,
+	/** notifications nobody waits for, e.g. warning DMs */
+	LOW
+}
@@ -0,0 +1,497 @@
+package de.maxkroner.messaging;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import de.maxkroner.tracing.Span;
+import de.maxkroner.tracing.Tracer;
+import de.maxkroner.tracing.Tracer.Continuation;
+import sx.blah.discord.handle.obj.IChannel;
+import sx.blah.discord.util.RateLimitException;
+
+/**
+ * Sends REST requests within the rate limits of Discord instead of retrying them after a 429.
+ * Every route (e.g. the messages of a channel) has its own budget and all routes share a global budget.
+ * Requests of a route are sent one after another in the order of their priority lane,
+ * if the global budget is used up the waiting requests of the highest lane are sent first.
+ * A RateLimitException still blocks the route (or all routes if it was global) for the
+ * retry delay, then the request is sent again.
+ *
+ * All scheduling happens on one dispatcher thread, the requests are executed by worker threads.
+ * Discord limits every bot token on its own, so several bots in one JVM use a scheduler each,
+ * which can share the threads of another scheduler but keep their own routes and global budget.
+ * A request submitted within a trace is traced as a span per attempt on the worker thread.
+ *
+ * @author kroner
+ *
+ */
+public class RateLimitScheduler {
+	private final int routeRequests;
+	private final long routePeriodMillis;
+	private final TokenBucket global;
+	private final ScheduledThreadPoolExecutor dispatcher;
+	private final ExecutorService workers;
+	// false if the threads belong to another scheduler
+	private final boolean ownsThreads;
+	private volatile boolean shutDown = false;
+
+	// only accessed by the dispatcher thread
+	private final Map<String, Route> routes = new HashMap<>();
+	private long globalBlockedUntil = 0;
+	private ScheduledFuture<?> wakeUp;
+	private long wakeUpAt = Long.MAX_VALUE;
+
+	private final AtomicInteger queuedRequests = new AtomicInteger();
+	private final AtomicLong rateLimitHits = new AtomicLong();
+	private final QueueWaitStatistics[] queueWaitStatistics = new QueueWaitStatistics[Priority.values().length];
+
+	/**
+	 * @param routeRequests
+	 *            requests per period a route may send
+	 * @param routePeriodMillis
+	 *            period of the route budget
+	 * @param globalRequests
+	 *            requests per period all routes together may send
+	 * @param globalPeriodMillis
+	 *            period of the global budget
+	 * @param workerThreads
+	 *            number of requests executed at once
+	 */
+	public RateLimitScheduler(int routeRequests, long routePeriodMillis, int globalRequests, long globalPeriodMillis, int workerThreads) {
+		this.routeRequests = routeRequests;
+		this.routePeriodMillis = routePeriodMillis;
+		this.global = new TokenBucket(globalRequests, globalPeriodMillis, now());
+		this.dispatcher = new ScheduledThreadPoolExecutor(1, runnable -> {
+			Thread thread = new Thread(runnable, "rate-limit-dispatcher");
+			thread.setDaemon(true);
+			return thread;
+		});
+		AtomicInteger threadCount = new AtomicInteger();
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(workerThreads, workerThreads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+			Thread thread = new Thread(runnable, "rate-limit-worker-" + threadCount.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		});
+		pool.allowCoreThreadTimeOut(true);
+		this.workers = pool;
+		this.ownsThreads = true;
+		for (Priority priority : Priority.values()) {
+			queueWaitStatistics[priority.ordinal()] = new QueueWaitStatistics();
+		}
+	}
+
+	/**
+	 * a scheduler with its own routes and global budget, e.g. for another bot token, that sends its
+	 * requests with the threads of the given scheduler
+	 *
+	 * @param threads
+	 *            scheduler whose dispatcher and workers are used, it has to be shut down after this one
+	 */
+	public RateLimitScheduler(int routeRequests, long routePeriodMillis, int globalRequests, long globalPeriodMillis, RateLimitScheduler threads) {
+		this.routeRequests = routeRequests;
+		this.routePeriodMillis = routePeriodMillis;
+		this.global = new TokenBucket(globalRequests, globalPeriodMillis, now());
+		this.dispatcher = threads.dispatcher;
+		this.workers = threads.workers;
+		this.ownsThreads = false;
+		for (Priority priority : Priority.values()) {
+			queueWaitStatistics[priority.ordinal()] = new QueueWaitStatistics();
+		}
+	}
+
+	/**
+	 * @return the route of the messages sent to the channel
+	 */
+	public static String messageRoute(IChannel channel) {
+		return "channels/" + channel.getLongID() + "/messages";
+	}
+
+	/**
+	 * Queues the request, it is sent as soon as the budget of the route allows it
+	 *
+	 * @param route
+	 *            rate limit bucket of the request
+	 * @param priority
+	 *            lane of the request
+	 * @param request
+	 *            executes the REST request
+	 * @return completed with the result of the request or the exception it failed with
+	 */
+	public <T> CompletableFuture<T> submit(String route, Priority priority, Supplier<T> request) {
+		ScheduledRequest<T> scheduledRequest = new ScheduledRequest<>(route, priority, request, Tracer.capture());
+		queuedRequests.incrementAndGet();
+		if (!post(() -> {
+			// posted right before the shutdown, after the waiting requests were failed
+			if (shutDown) {
+				queuedRequests.decrementAndGet();
+				scheduledRequest.reject();
+				return;
+			}
+			routes.computeIfAbsent(route, name -> new Route()).lanes[priority.ordinal()].add(scheduledRequest);
+			dispatch();
+		})) {
+			queuedRequests.decrementAndGet();
+			scheduledRequest.reject();
+		}
+		return scheduledRequest.future;
+	}
+
+	public CompletableFuture<Void> submit(String route, Priority priority, Runnable request) {
+		return submit(route, priority, () -> {
+			request.run();
+			return null;
+		});
+	}
+
+	/**
+	 * @return number of requests waiting for their budget
+	 */
+	public int getQueuedRequestCount() {
+		return queuedRequests.get();
+	}
+
+	/**
+	 * @return number of requests that were answered with a 429 anyway
+	 */
+	public long getRateLimitHits() {
+		return rateLimitHits.get();
+	}
+
+	/**
+	 * @return time requests of the lane waited before they were sent
+	 */
+	public QueueWaitStatistics getQueueWaitStatistics(Priority priority) {
+		return queueWaitStatistics[priority.ordinal()];
+	}
+
+	/**
+	 * stops accepting requests and completes the waiting requests exceptionally,
+	 * the threads are only stopped if they belong to this scheduler
+	 */
+	public void shutdown() {
+		stop();
+	}
+
+	/**
+	 * waits until the queued requests are sent, then shuts down
+	 *
+	 * @return number of requests that were still waiting for their budget
+	 */
+	public int drain(long timeout, TimeUnit unit) throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		while (queuedRequests.get() > 0 && System.nanoTime() < deadline) {
+			Thread.sleep(10);
+		}
+		Future<Integer> failed = stop();
+		int dropped;
+		try {
+			dropped = failed.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+		} catch (ExecutionException | TimeoutException e) {
+			dropped = queuedRequests.get();
+		}
+		if (ownsThreads) {
+			workers.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+		}
+		return dropped;
+	}
+
+	/**
+	 * @return completed with the number of waiting requests that were failed
+	 */
+	private Future<Integer> stop() {
+		// set before the requests are failed, so no request is queued behind them
+		shutDown = true;
+		Future<Integer> failed;
+		try {
+			failed = dispatcher.submit(this::failWaitingRequests);
+		} catch (RejectedExecutionException e) {
+			// the scheduler owning the threads was shut down first, or this one was already
+			failed = CompletableFuture.completedFuture(0);
+		}
+		if (ownsThreads) {
+			dispatcher.shutdown();
+			workers.shutdown();
+		}
+		return failed;
+	}
+
+	private int failWaitingRequests() {
+		int failed = 0;
+		for (Route route : routes.values()) {
+			for (ArrayDeque<ScheduledRequest<?>> lane : route.lanes) {
+				for (ScheduledRequest<?> request = lane.poll(); request != null; request = lane.poll()) {
+					queuedRequests.decrementAndGet();
+					request.reject();
+					failed++;
+				}
+			}
+		}
+		if (wakeUp != null) {
+			wakeUp.cancel(false);
+		}
+		return failed;
+	}
+
+	private void dispatch() {
+		long now = now();
+		long nextReady = Long.MAX_VALUE;
+		for (Priority priority : Priority.values()) {
+			for (Route route : routes.values()) {
+				ArrayDeque<ScheduledRequest<?>> lane = route.lanes[priority.ordinal()];
+				if (route.inFlight || lane.isEmpty()) {
+					continue;
+				}
+				long readyAt = Math.max(Math.max(route.blockedUntil, globalBlockedUntil), Math.max(route.bucket.nextTokenAt(now), global.nextTokenAt(now)));
+				if (readyAt > now) {
+					nextReady = Math.min(nextReady, readyAt);
+					continue;
+				}
+				route.bucket.take();
+				global.take();
+				execute(route, lane.poll(), now);
+			}
+		}
+
+		// forget idle routes once their budget is refilled
+		for (Iterator<Route> iterator = routes.values().iterator(); iterator.hasNext();) {
+			Route route = iterator.next();
+			if (route.isIdle() && route.blockedUntil <= now && route.bucket.isFull(now)) {
+				iterator.remove();
+			}
+		}
+
+		if (nextReady != Long.MAX_VALUE) {
+			scheduleWakeUp(nextReady, now);
+		}
+	}
+
+	private void scheduleWakeUp(long at, long now) {
+		// keep a pending wake up that comes early enough
+		if (wakeUp != null && wakeUpAt > now && wakeUpAt <= at) {
+			return;
+		}
+		if (wakeUp != null) {
+			wakeUp.cancel(false);
+		}
+		try {
+			wakeUp = dispatcher.schedule(this::dispatch, at - now, TimeUnit.MILLISECONDS);
+			wakeUpAt = at;
+		} catch (RejectedExecutionException e) {
+			// shut down, the waiting requests are failed by the shutdown
+		}
+	}
+
+	private <T> void execute(Route route, ScheduledRequest<T> request, long now) {
+		route.inFlight = true;
+		queuedRequests.decrementAndGet();
+		queueWaitStatistics[request.priority.ordinal()].record(now - request.queuedAt);
+		workers.execute(() -> {
+			boolean retry = false;
+			try (Span span = request.trace == null ? Span.NOOP : request.trace.resume("rest " + request.route)) {
+				T result = request.request.get();
+				span.close();
+				request.release();
+				request.future.complete(result);
+			} catch (RateLimitException e) {
+				retry = true;
+				rateLimitHits.incrementAndGet();
+				if (!post(() -> rateLimited(route, request, e))) {
+					request.reject();
+				}
+			} catch (Exception e) {
+				request.release();
+				request.future.completeExceptionally(e);
+			} finally {
+				// also after an Error, otherwise the route stays in flight and none of its requests are sent anymore
+				if (!retry) {
+					post(() -> finished(route));
+				}
+			}
+		});
+	}
+
+	/**
+	 * runs the task on the dispatcher thread
+	 *
+	 * @return false if the scheduler is shut down
+	 */
+	private boolean post(Runnable task) {
+		if (shutDown) {
+			return false;
+		}
+		try {
+			dispatcher.execute(task);
+			return true;
+		} catch (RejectedExecutionException e) {
+			return false;
+		}
+	}
+
+	private void finished(Route route) {
+		route.inFlight = false;
+		dispatch();
+	}
+
+	private void rateLimited(Route route, ScheduledRequest<?> request, RateLimitException e) {
+		// posted right before the shutdown, after the waiting requests were failed
+		if (shutDown) {
+			request.reject();
+			return;
+		}
+		long blockedUntil = now() + e.getRetryDelay();
+		if (e.isGlobal()) {
+			globalBlockedUntil = Math.max(globalBlockedUntil, blockedUntil);
+		} else {
+			route.blockedUntil = Math.max(route.blockedUntil, blockedUntil);
+		}
+		// send it again as the next request of its route
+		request.queuedAt = now();
+		queuedRequests.incrementAndGet();
+		route.lanes[request.priority.ordinal()].addFirst(request);
+		finished(route);
+	}
+
+	private static long now() {
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+	}
+
+	/**
+	 * count, average and maximum of the time requests of a lane waited
+	 */
+	public static class QueueWaitStatistics {
+		private long count = 0;
+		private long totalMillis = 0;
+		private long maxMillis = 0;
+
+		private synchronized void record(long waitMillis) {
+			count++;
+			totalMillis += waitMillis;
+			maxMillis = Math.max(maxMillis, waitMillis);
+		}
+
+		public synchronized long getCount() {
+			return count;
+		}
+
+		public synchronized double getAverageMillis() {
+			return count == 0 ? 0 : (double) totalMillis / count;
+		}
+
+		public synchronized long getMaxMillis() {
+			return maxMillis;
+		}
+	}
+
+	private static class ScheduledRequest<T> {
+		private final String route;
+		private final Priority priority;
+		private final Supplier<T> request;
+		// null if the request wasn't submitted within a trace
+		private final Continuation trace;
+		private final CompletableFuture<T> future = new CompletableFuture<>();
+		private long queuedAt = now();
+
+		private ScheduledRequest(String route, Priority priority, Supplier<T> request, Continuation trace) {
+			this.route = route;
+			this.priority = priority;
+			this.request = request;
+			this.trace = trace;
+		}
+
+		private void release() {
+			if (trace != null) {
+				trace.release();
+			}
+		}
+
+		private void reject() {
+			release();
+			future.completeExceptionally(new RejectedExecutionException("RateLimitScheduler is shut down"));
+		}
+	}
+
+	private class Route {
+		private final TokenBucket bucket = new TokenBucket(routeRequests, routePeriodMillis, now());
+		@SuppressWarnings("unchecked")
+		private final ArrayDeque<ScheduledRequest<?>>[] lanes = new ArrayDeque[Priority.values().length];
+		private long blockedUntil = 0;
+		private boolean inFlight = false;
+
+		private Route() {
+			for (int i = 0; i < lanes.length; i++) {
+				lanes[i] = new ArrayDeque<>();
+			}
+		}
+
+		private boolean isIdle() {
+			if (inFlight) {
+				return false;
+			}
+			for (ArrayDeque<ScheduledRequest<?>> lane : lanes) {
+				if (!lane.isEmpty()) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * budget of capacity requests per period, refilled continuously
+	 */
+	private static class TokenBucket {
+		private final int capacity;
+		private final double tokensPerMilli;
+		private double tokens;
+		private long lastRefill;
+
+		private TokenBucket(int capacity, long periodMillis, long now) {
+			this.capacity = capacity;
+			this.tokensPerMilli = (double) capacity / periodMillis;
+			this.tokens = capacity;
+			this.lastRefill = now;
+		}
+
+		private void refill(long now) {
+			if (now > lastRefill) {
+				tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerMilli);
+				lastRefill = now;
+			}
+		}
+
+		private long nextTokenAt(long now) {
+			refill(now);
+			// tolerate rounding errors of the continuous refill
+			if (tokens > 1 - 1e-6) {
+				return now;
+			}
+			return now + (long) Math.ceil((1 - tokens) / tokensPerMilli);
+		}
+
+		private void take() {
+			tokens--;
+		}
+
+		private boolean isFull(long now) {
+			refill(now);
+			return tokens >= capacity;
+		}
+	}
+
+}
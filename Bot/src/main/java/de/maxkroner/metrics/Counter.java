@@ -0,0 +1,29 @@
+package de.maxkroner.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A count that only goes up, e.g. of messages seen. Threads incrementing at the same time don't contend.
+ *
+ * @author kroner
+ *
+ */
+public class Counter {
+	private final LongAdder value = new LongAdder();
+
+	public void increment() {
+		value.increment();
+	}
+
+	public void add(long amount) {
+		if (amount < 0) {
+			throw new IllegalArgumentException("A counter can't go down.");
+		}
+		value.add(amount);
+	}
+
+	public long get() {
+		return value.sum();
+	}
+
+}
@@ -0,0 +1,170 @@
+package de.maxkroner.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of latencies in microseconds with buckets growing exponentially, like an HdrHistogram
+ * with one significant digit: every power of two is split into 16 buckets, so a percentile is at most
+ * about 6% above the recorded value. Recording doesn't lock and doesn't allocate, the memory is fixed
+ * no matter how many values are recorded.
+ *
+ * @author kroner
+ *
+ */
+public class LatencyHistogram {
+	private static final int SUB_BUCKET_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	// values up to 2^40 microseconds, about 12 days
+	private static final int MAX_MAGNITUDE = 40;
+	private static final int BUCKETS = (MAX_MAGNITUDE - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder totalMicros = new LongAdder();
+	private final AtomicLong maxMicros = new AtomicLong();
+
+	public void record(long duration, TimeUnit unit) {
+		recordMicros(unit.toMicros(duration));
+	}
+
+	public void recordMicros(long micros) {
+		long value = Math.max(0, micros);
+		buckets.incrementAndGet(indexOf(value));
+		count.increment();
+		totalMicros.add(value);
+		if (value > maxMicros.get()) {
+			maxMicros.accumulateAndGet(value, Math::max);
+		}
+	}
+
+	/**
+	 * adds the values recorded by the other histogram to this one
+	 */
+	public void add(LatencyHistogram other) {
+		for (int i = 0; i < BUCKETS; i++) {
+			long n = other.buckets.get(i);
+			if (n > 0) {
+				buckets.addAndGet(i, n);
+			}
+		}
+		count.add(other.count.sum());
+		totalMicros.add(other.totalMicros.sum());
+		maxMicros.accumulateAndGet(other.maxMicros.get(), Math::max);
+	}
+
+	/**
+	 * removes the values of an earlier copy of this histogram, what's left are the values recorded since.
+	 * The maximum can't be taken back, it stays the maximum of all values.
+	 */
+	public void subtract(LatencyHistogram earlier) {
+		for (int i = 0; i < BUCKETS; i++) {
+			long n = earlier.buckets.get(i);
+			if (n > 0) {
+				buckets.addAndGet(i, -Math.min(n, buckets.get(i)));
+			}
+		}
+		count.add(-Math.min(earlier.count.sum(), count.sum()));
+		totalMicros.add(-Math.min(earlier.totalMicros.sum(), totalMicros.sum()));
+	}
+
+	/**
+	 * forgets all values, values recorded at the same time may be lost
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			buckets.set(i, 0);
+		}
+		count.reset();
+		totalMicros.reset();
+		maxMicros.set(0);
+	}
+
+	public long getCount() {
+		return count.sum();
+	}
+
+	public double getMeanMicros() {
+		long n = count.sum();
+		return n == 0 ? 0 : (double) totalMicros.sum() / n;
+	}
+
+	public long getTotalMicros() {
+		return totalMicros.sum();
+	}
+
+	public long getMaxMicros() {
+		return maxMicros.get();
+	}
+
+	/**
+	 * @param percentile
+	 *            between 0 and 100
+	 * @return upper bound of the bucket the percentile falls into, 0 if nothing was recorded
+	 */
+	public long getPercentileMicros(double percentile) {
+		long[] snapshot = new long[BUCKETS];
+		long n = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			snapshot[i] = buckets.get(i);
+			n += snapshot[i];
+		}
+		if (n == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(n * Math.min(100, Math.max(0, percentile)) / 100));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += snapshot[i];
+			if (seen >= rank) {
+				return Math.min(upperBoundOf(i), maxMicros.get());
+			}
+		}
+		return maxMicros.get();
+	}
+
+	/**
+	 * @return the number of values per bucket and the largest value of every bucket,
+	 *         only buckets with values, in ascending order
+	 */
+	public long[][] getBuckets() {
+		int used = 0;
+		long[] snapshot = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) {
+			snapshot[i] = buckets.get(i);
+			if (snapshot[i] > 0) {
+				used++;
+			}
+		}
+		long[][] result = new long[used][];
+		int j = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			if (snapshot[i] > 0) {
+				result[j++] = new long[] { upperBoundOf(i), snapshot[i] };
+			}
+		}
+		return result;
+	}
+
+	private static int indexOf(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int magnitude = Math.min(63 - Long.numberOfLeadingZeros(value), MAX_MAGNITUDE);
+		int subBucket = (int) (value >>> (magnitude - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (magnitude - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	private static long upperBoundOf(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		int magnitude = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		long subBucket = index % SUB_BUCKETS;
+		long lowerBound = (1L << magnitude) + (subBucket << (magnitude - SUB_BUCKET_BITS));
+		return lowerBound + (1L << (magnitude - SUB_BUCKET_BITS)) - 1;
+	}
+
+}
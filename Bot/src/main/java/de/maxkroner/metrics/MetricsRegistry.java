@@ -0,0 +1,262 @@
+package de.maxkroner.metrics;
+
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+import org.pmw.tinylog.Logger;
+
+/**
+ * Counters, gauges and latency histograms of a bot, written in the Prometheus text format.
+ * A metric is identified by its name and labels, given as name and value pairs, e.g.
+ * {@code counter("bot_messages_total", "...", "type", "command")}. Registering the same metric
+ * again returns the one registered first, so callers don't have to keep a reference.
+ * Histograms are written as summaries in seconds with the 0.5, 0.9 and 0.99 quantiles.
+ * Several bots in one process share a registry through views that add a label to all their metrics.
+ *
+ * @author kroner
+ *
+ */
+public class MetricsRegistry {
+	private static final Pattern NAME = Pattern.compile("[a-zA-Z_:][a-zA-Z0-9_:]*");
+	private static final double[] QUANTILES = { 0.5, 0.9, 0.99 };
+
+	private final Map<String, Family> families;
+	// rendered labels of the view, added to every series registered through it
+	private final String viewLabels;
+
+	public MetricsRegistry() {
+		this(new ConcurrentHashMap<>(), "");
+	}
+
+	private MetricsRegistry(Map<String, Family> families, String viewLabels) {
+		this.families = families;
+		this.viewLabels = viewLabels;
+	}
+
+	/**
+	 * @return a view that registers its metrics in this registry with the labels added, e.g. {@code withLabels("bot", "JokeBot")},
+	 *         the values and histograms of the view only contain its own series
+	 */
+	public MetricsRegistry withLabels(String... labels) {
+		return new MetricsRegistry(families, renderLabels(labels));
+	}
+
+	public Counter counter(String name, String help, String... labels) {
+		return (Counter) family(name, help, "counter").series.computeIfAbsent(renderLabels(labels), l -> new Counter());
+	}
+
+	/**
+	 * @param value
+	 *            read every time the metrics are written, it must not block
+	 */
+	public void gauge(String name, String help, DoubleSupplier value, String... labels) {
+		family(name, help, "gauge").series.put(renderLabels(labels), value);
+	}
+
+	public LatencyHistogram histogram(String name, String help, String... labels) {
+		return (LatencyHistogram) family(name, help, "summary").series.computeIfAbsent(renderLabels(labels), l -> new LatencyHistogram());
+	}
+
+	/**
+	 * registers a histogram that is replaced while the bot runs, e.g. one over a rolling window
+	 *
+	 * @param histogram
+	 *            read every time the metrics are written
+	 */
+	public void histogram(String name, String help, Supplier<LatencyHistogram> histogram, String... labels) {
+		family(name, help, "summary").series.put(renderLabels(labels), histogram);
+	}
+
+	/**
+	 * registers histograms that are created elsewhere while the bot runs, e.g. one per command
+	 *
+	 * @param label
+	 *            name of the label that gets the key of a histogram as value
+	 * @param histograms
+	 *            read every time the metrics are written
+	 */
+	public void histograms(String name, String help, String label, Supplier<Map<String, LatencyHistogram>> histograms, String... labels) {
+		checkName(label);
+		family(name, help, "summary").series.put(renderLabels(labels), new DynamicHistograms(label, histograms));
+	}
+
+	/**
+	 * @return all metrics in the Prometheus text format, version 0.0.4
+	 */
+	public String scrape() {
+		StringBuilder out = new StringBuilder();
+		for (Family family : new TreeMap<>(families).values()) {
+			out.append("# HELP ").append(family.name).append(' ').append(family.help.replace("\\", "\\\\").replace("\n", "\\n")).append('\n');
+			out.append("# TYPE ").append(family.name).append(' ').append(family.type).append('\n');
+			for (Entry<String, Object> series : new TreeMap<>(family.series).entrySet()) {
+				try {
+					writeSeries(out, family.name, series.getKey(), series.getValue());
+				} catch (RuntimeException e) {
+					// one failing gauge must not hide the other metrics
+					Logger.warn("Reading metric {}{} failed: {}", family.name, series.getKey(), e);
+				}
+			}
+		}
+		return out.toString();
+	}
+
+	/**
+	 * @return the current value of every counter and gauge by name and labels, e.g. bot_outbound_queue_depth{stage="coalescer"}
+	 */
+	public SortedMap<String, Double> getValues() {
+		SortedMap<String, Double> values = new TreeMap<>();
+		for (Family family : families.values()) {
+			for (Entry<String, Object> series : family.series.entrySet()) {
+				if (!inView(series.getKey())) {
+					continue;
+				}
+				try {
+					if (series.getValue() instanceof Counter) {
+						values.put(family.name + series.getKey(), (double) ((Counter) series.getValue()).get());
+					} else if (series.getValue() instanceof DoubleSupplier) {
+						values.put(family.name + series.getKey(), ((DoubleSupplier) series.getValue()).getAsDouble());
+					}
+				} catch (RuntimeException e) {
+					Logger.warn("Reading metric {}{} failed: {}", family.name, series.getKey(), e);
+				}
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * @return a new histogram with the values of all series of the histogram, e.g. of all commands
+	 */
+	public LatencyHistogram mergeHistograms(String name) {
+		LatencyHistogram merged = new LatencyHistogram();
+		Family family = families.get(name);
+		if (family == null || !family.type.equals("summary")) {
+			return merged;
+		}
+		for (Entry<String, Object> entry : family.series.entrySet()) {
+			if (!inView(entry.getKey())) {
+				continue;
+			}
+			Object series = entry.getValue();
+			if (series instanceof LatencyHistogram) {
+				merged.add((LatencyHistogram) series);
+			} else if (series instanceof Supplier) {
+				merged.add((LatencyHistogram) ((Supplier<?>) series).get());
+			} else {
+				for (LatencyHistogram histogram : ((DynamicHistograms) series).histograms.get().values()) {
+					merged.add(histogram);
+				}
+			}
+		}
+		return merged;
+	}
+
+	private void writeSeries(StringBuilder out, String name, String labels, Object series) {
+		if (series instanceof Counter) {
+			writeSample(out, name, labels, ((Counter) series).get());
+		} else if (series instanceof DoubleSupplier) {
+			writeSample(out, name, labels, ((DoubleSupplier) series).getAsDouble());
+		} else if (series instanceof LatencyHistogram) {
+			writeSummary(out, name, labels, (LatencyHistogram) series);
+		} else if (series instanceof Supplier) {
+			writeSummary(out, name, labels, (LatencyHistogram) ((Supplier<?>) series).get());
+		} else {
+			DynamicHistograms dynamic = (DynamicHistograms) series;
+			for (Entry<String, LatencyHistogram> histogram : new TreeMap<>(dynamic.histograms.get()).entrySet()) {
+				writeSummary(out, name, addLabel(labels, dynamic.label, histogram.getKey()), histogram.getValue());
+			}
+		}
+	}
+
+	private static void writeSummary(StringBuilder out, String name, String labels, LatencyHistogram histogram) {
+		for (double quantile : QUANTILES) {
+			writeSample(out, name, addLabel(labels, "quantile", Double.toString(quantile)), histogram.getPercentileMicros(quantile * 100) / 1e6);
+		}
+		writeSample(out, name + "_sum", labels, histogram.getTotalMicros() / 1e6);
+		writeSample(out, name + "_count", labels, histogram.getCount());
+	}
+
+	private static void writeSample(StringBuilder out, String name, String labels, double value) {
+		out.append(name).append(labels).append(' ');
+		if (Double.isInfinite(value)) {
+			out.append(value > 0 ? "+Inf" : "-Inf");
+		} else if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+			out.append((long) value);
+		} else {
+			out.append(Double.toString(value));
+		}
+		out.append('\n');
+	}
+
+	private Family family(String name, String help, String type) {
+		checkName(name);
+		Family family = families.computeIfAbsent(name, n -> new Family(name, help, type));
+		if (!family.type.equals(type)) {
+			throw new IllegalArgumentException("Metric " + name + " is already registered as " + family.type + ".");
+		}
+		return family;
+	}
+
+	private boolean inView(String labels) {
+		if (viewLabels.isEmpty()) {
+			return true;
+		}
+		// the labels of the view come first, followed by the end or the next label
+		String prefix = viewLabels.substring(0, viewLabels.length() - 1);
+		return labels.startsWith(prefix) && (labels.length() == prefix.length() + 1 || labels.charAt(prefix.length()) == ',');
+	}
+
+	private String renderLabels(String[] labels) {
+		if (labels.length % 2 != 0) {
+			throw new IllegalArgumentException("Labels have to be given as name and value pairs.");
+		}
+		String rendered = viewLabels;
+		for (int i = 0; i < labels.length; i += 2) {
+			checkName(labels[i]);
+			rendered = addLabel(rendered, labels[i], labels[i + 1]);
+		}
+		return rendered;
+	}
+
+	private static String addLabel(String labels, String label, String value) {
+		String pair = label + "=\"" + value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n") + "\"";
+		return labels.isEmpty() ? "{" + pair + "}" : labels.substring(0, labels.length() - 1) + "," + pair + "}";
+	}
+
+	private static void checkName(String name) {
+		if (!NAME.matcher(name).matches()) {
+			throw new IllegalArgumentException("Invalid metric or label name: " + name);
+		}
+	}
+
+	private static class Family {
+		private final String name;
+		private final String help;
+		private final String type;
+		// by rendered labels
+		private final Map<String, Object> series = new ConcurrentHashMap<>();
+
+		private Family(String name, String help, String type) {
+			this.name = name;
+			this.help = help;
+			this.type = type;
+		}
+	}
+
+	private static class DynamicHistograms {
+		private final String label;
+		private final Supplier<Map<String, LatencyHistogram>> histograms;
+
+		private DynamicHistograms(String label, Supplier<Map<String, LatencyHistogram>> histograms) {
+			this.label = label;
+			this.histograms = histograms;
+		}
+	}
+
+}
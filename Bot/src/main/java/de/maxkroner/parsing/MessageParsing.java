@@ -1,11 +1,9 @@
 package de.maxkroner.parsing;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
-import java.util.stream.Collectors;
 
 import org.pmw.tinylog.Logger;
 
@@ -15,105 +13,115 @@ import org.pmw.tinylog.Logger;
  * 		argument-style: !command [argument1 argument2 ...]
  * 		option-style: !command [-option [parameter1 parameter2 ...] ...
  * 
+ * The message is scanned once, arguments and parameters only store their
+ * offsets in the message and are cut out when they are read.
+ * 
  * @author kroner
  *
  */
 public class MessageParsing {
 	
 	public static Command parseMessageWithCommandSet(String message, Set<String> commands, String commandPrefix, Character optionIdentifier){
-		if(message.startsWith(commandPrefix) && message.length() > commandPrefix.length()){
-			String commandString = message.substring(commandPrefix.length());
-			boolean commandHasOptionsOrArguments = commandString.contains(" ");
-			boolean commandIsOptionStyle = commandString.charAt(commandString.indexOf(" ") + 1) == optionIdentifier;
-			String commandName;
-			if(commandHasOptionsOrArguments){
-				commandName = commandString.substring(0, commandString.indexOf(" "));
-			} else {
-				commandName = commandString;
-				return new Command(commandName, Optional.empty(), Optional.empty());
-			}		
-
+		int commandStart = commandPrefix.length();
+		if(message.startsWith(commandPrefix) && message.length() > commandStart){
+			int commandEnd = message.indexOf(' ', commandStart);
+			if(commandEnd < 0){
+				return new Command(message.substring(commandStart), Optional.empty(), Optional.empty());
+			}
+			
+			String commandName = message.substring(commandStart, commandEnd);
 			if(commands.contains(commandName)){
 				Logger.info("Parsing message: {}", message);
-				if(commandIsOptionStyle){
-					//parse options
-					String[] commandOptionStrings = new String[0];
-					List<CommandOption> commandOptions = new ArrayList<>();							
-					String optionsString = commandString.substring(commandString.indexOf(" ") + 1);
-					//split all options in own Strings
-					commandOptionStrings = optionsString.split(String.valueOf(optionIdentifier));
-					commandOptions = Arrays.stream(commandOptionStrings).map(String::trim).filter(s -> !s.isEmpty())
-							.map(s -> parseOptionFromString(s)).collect(Collectors.toList());
-					if (commandOptions.isEmpty()){
-						commandOptions = null;
-					}
-					return new Command(commandName, Optional.ofNullable(commandOptions), Optional.empty());
-					
+				int argumentsStart = commandEnd + 1;
+				char identifier = optionIdentifier;
+				if(argumentsStart < message.length() && message.charAt(argumentsStart) == identifier){
+					List<CommandOption> commandOptions = parseOptions(message, argumentsStart, identifier);
+					return new Command(commandName, commandOptions.isEmpty() ? Optional.empty() : Optional.of(commandOptions), Optional.empty());
 				} else {
-					//parse arguments
-					List<String> arguments = new ArrayList<>();
-					String argumentsString = commandString.substring(commandString.indexOf(" ") + 1);
-					splitArgumentsIntoList(argumentsString, arguments);
-					if(arguments.isEmpty()){
-						arguments = null;
-					}
-					return new Command(commandName, Optional.empty(), Optional.ofNullable(arguments));
-				}	
-			}	
+					TokenList arguments = new TokenList(message);
+					splitArguments(message, argumentsStart, message.length(), arguments);
+					return new Command(commandName, Optional.empty(), arguments.isEmpty() ? Optional.empty() : Optional.of(arguments));
+				}
+			}
 		}
 		
 		return null;
 	}
 	
-	private static CommandOption parseOptionFromString(String optionString) {
-		CommandOption commandOption;
-
-		if (optionString.contains(" ")) {
-			//optionString contains parameters
-			commandOption = new CommandOption(optionString.substring(0, optionString.indexOf(" ")));
-			String parameterString = optionString.substring(optionString.indexOf(" ") + 1);
-			parameterString = parameterString + " ";
-			splitParametersIntoCommandOption(parameterString, commandOption);
-		} else {
-			//optionString does not contain parameters
-			commandOption = new CommandOption(optionString);
+	/**
+	 * every option identifier starts a new option, even inside of quotes
+	 */
+	private static List<CommandOption> parseOptions(String message, int from, char optionIdentifier){
+		List<CommandOption> commandOptions = new ArrayList<>();
+		int optionStart = from;
+		for(int i = from; i <= message.length(); i++){
+			if(i == message.length() || message.charAt(i) == optionIdentifier){
+				CommandOption commandOption = parseOption(message, optionStart, i);
+				if(commandOption != null){
+					commandOptions.add(commandOption);
+				}
+				optionStart = i + 1;
+			}
 		}
-
-		return commandOption;
+		return commandOptions;
+	}
+	
+	private static CommandOption parseOption(String message, int start, int end){
+		//trim the option
+		while(start < end && message.charAt(start) <= ' '){
+			start++;
+		}
+		while(end > start && message.charAt(end - 1) <= ' '){
+			end--;
+		}
+		if(start == end){
+			return null;
+		}
+		
+		TokenList parameters = new TokenList(message);
+		int nameEnd = message.indexOf(' ', start);
+		if(nameEnd < 0 || nameEnd >= end){
+			//option does not contain parameters
+			return new CommandOption(message.substring(start, end), parameters);
+		}
+		splitArguments(message, nameEnd + 1, end, parameters);
+		return new CommandOption(message.substring(start, nameEnd), parameters);
 	}
 	
-	private static void splitArgumentsIntoList(String argumentsString, List<String> list){
-		StringBuilder builder = new StringBuilder();
+	/**
+	 * Splits the arguments at spaces outside of quotes, quotes are removed and arguments are trimmed.
+	 * A token starts at its first non-whitespace character, so only its end has to be trimmed later.
+	 */
+	private static void splitArguments(String message, int from, int to, TokenList tokens){
+		int tokenStart = -1;
+		boolean tokenQuoted = false;
 		boolean inQuotation = false;
-		for (char character : argumentsString.toCharArray()){
-			
-			if(character != ' ' && character != '"'){
-				builder.append(character);
-			} else if (character == ' ' && !inQuotation) {
-				if(builder.toString().trim().length() > 0){
-					list.add(builder.toString().trim());
-					builder = new StringBuilder();
-				}				
-			} else if (character == ' ' && inQuotation) {
-				builder.append(character);
-			} else if (character == '"'){
+		for(int i = from; i < to; i++){
+			char character = message.charAt(i);
+			if(character == '"'){
 				if(inQuotation){
-					if(builder.toString().trim().length() > 0){
-						list.add(builder.toString().trim());
-						builder = new StringBuilder();
-					}	
+					if(tokenStart >= 0){
+						tokens.add(tokenStart, i, tokenQuoted);
+						tokenStart = -1;
+						tokenQuoted = false;
+					}
 					inQuotation = false;
 				} else {
 					inQuotation = true;
+					tokenQuoted = tokenStart >= 0;
+				}
+			} else if(character == ' ' && !inQuotation){
+				if(tokenStart >= 0){
+					tokens.add(tokenStart, i, tokenQuoted);
+					tokenStart = -1;
+					tokenQuoted = false;
 				}
+			} else if(tokenStart < 0 && character > ' '){
+				tokenStart = i;
 			}
-		}		
-		if(builder.toString().trim().length() > 0){
-			list.add(builder.toString().trim());
-		}	
-	}
-	
-	private static void splitParametersIntoCommandOption(String parameterString, CommandOption commandOption){
-		splitArgumentsIntoList(parameterString, commandOption.getParameterList());
+		}
+		if(tokenStart >= 0){
+			tokens.add(tokenStart, to, tokenQuoted);
+		}
 	}
 }
@@ -0,0 +1,145 @@
+package de.maxkroner.parsing;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import de.maxkroner.util.Snowflakes;
+
+/**
+ * Decides if a message could be a command for a guild before it gets parsed.
+ * Holds the default command prefix and the custom prefixes of all guilds.
+ * Lookups only read an immutable snapshot (open addressing over primitive guild ids
+ * plus a bitset of all possible first characters), so rejecting a message needs
+ * neither an allocation nor a database query. Changes replace the snapshot.
+ *
+ * @author kroner
+ *
+ */
+public class PrefixMatcher {
+	private volatile Snapshot snapshot;
+
+	public PrefixMatcher(String defaultPrefix) {
+		this(defaultPrefix, Collections.emptyMap());
+	}
+
+	public PrefixMatcher(String defaultPrefix, Map<Long, String> guildPrefixes) {
+		this.snapshot = new Snapshot(defaultPrefix, guildPrefixes);
+	}
+
+	/**
+	 * Checks if the message starts with the command prefix of the guild and has more content after it
+	 *
+	 * @param guild_id
+	 *            guild the message was sent in
+	 * @param content
+	 *            content of the message
+	 * @return false if the message can not be a command for this guild
+	 */
+	public boolean couldBeCommand(long guild_id, String content) {
+		Snapshot current = snapshot;
+		if (content.isEmpty() || !current.isPossibleFirstChar(content.charAt(0))) {
+			return false;
+		}
+		String prefix = current.getPrefix(guild_id);
+		return content.length() > prefix.length() && content.startsWith(prefix);
+	}
+
+	public String getPrefix(long guild_id) {
+		return snapshot.getPrefix(guild_id);
+	}
+
+	public String getDefaultPrefix() {
+		return snapshot.defaultPrefix;
+	}
+
+	public synchronized void setDefaultPrefix(String defaultPrefix) {
+		snapshot = new Snapshot(defaultPrefix, snapshot.toMap());
+	}
+
+	public synchronized void setPrefix(long guild_id, String prefix) {
+		Map<Long, String> guildPrefixes = snapshot.toMap();
+		guildPrefixes.put(guild_id, prefix);
+		snapshot = new Snapshot(snapshot.defaultPrefix, guildPrefixes);
+	}
+
+	public synchronized void setPrefixes(Map<Long, String> prefixes) {
+		Map<Long, String> guildPrefixes = snapshot.toMap();
+		guildPrefixes.putAll(prefixes);
+		snapshot = new Snapshot(snapshot.defaultPrefix, guildPrefixes);
+	}
+
+	public synchronized void removePrefix(long guild_id) {
+		Map<Long, String> guildPrefixes = snapshot.toMap();
+		guildPrefixes.remove(guild_id);
+		snapshot = new Snapshot(snapshot.defaultPrefix, guildPrefixes);
+	}
+
+	private static class Snapshot {
+		private final String defaultPrefix;
+		private final long[] guildIds;
+		private final String[] prefixes;
+		private final int mask;
+		private final long[] firstChars = new long[(Character.MAX_VALUE + 1) / 64];
+		private boolean emptyPrefix = false;
+
+		private Snapshot(String defaultPrefix, Map<Long, String> guildPrefixes) {
+			this.defaultPrefix = defaultPrefix;
+			int capacity = 2;
+			while (capacity < guildPrefixes.size() * 2) {
+				capacity <<= 1;
+			}
+			this.guildIds = new long[capacity];
+			this.prefixes = new String[capacity];
+			this.mask = capacity - 1;
+
+			addFirstChar(defaultPrefix);
+			for (Map.Entry<Long, String> entry : guildPrefixes.entrySet()) {
+				int index = indexOf(entry.getKey());
+				guildIds[index] = entry.getKey();
+				prefixes[index] = entry.getValue();
+				addFirstChar(entry.getValue());
+			}
+		}
+
+		private String getPrefix(long guild_id) {
+			String prefix = prefixes[indexOf(guild_id)];
+			return prefix != null ? prefix : defaultPrefix;
+		}
+
+		private boolean isPossibleFirstChar(char c) {
+			return emptyPrefix || (firstChars[c >>> 6] & (1L << c)) != 0;
+		}
+
+		/**
+		 * linear probing, returns the slot of the guild or the empty slot where it would be stored
+		 */
+		private int indexOf(long guild_id) {
+			int index = Snowflakes.spread(guild_id) & mask;
+			while (prefixes[index] != null && guildIds[index] != guild_id) {
+				index = (index + 1) & mask;
+			}
+			return index;
+		}
+
+		private void addFirstChar(String prefix) {
+			if (prefix.isEmpty()) {
+				emptyPrefix = true;
+			} else {
+				char c = prefix.charAt(0);
+				firstChars[c >>> 6] |= 1L << c;
+			}
+		}
+
+		private Map<Long, String> toMap() {
+			Map<Long, String> map = new HashMap<>();
+			for (int i = 0; i < prefixes.length; i++) {
+				if (prefixes[i] != null) {
+					map.put(guildIds[i], prefixes[i]);
+				}
+			}
+			return map;
+		}
+	}
+
+}
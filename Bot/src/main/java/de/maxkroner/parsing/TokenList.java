@@ -0,0 +1,108 @@
+package de.maxkroner.parsing;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * List of the arguments or parameters of a parsed message.
+ * Only the offsets of the tokens in the message are stored, a token is
+ * cut out of the message the first time it is requested. Handlers may change
+ * the list, the first change copies all tokens into a plain list.
+ *
+ * @author kroner
+ *
+ */
+class TokenList extends AbstractList<String> implements RandomAccess {
+	private final String content;
+	// start and end offset of every token, end is negative if the token contains quotes
+	private int[] bounds = new int[8];
+	private int size = 0;
+	private String[] materialized;
+	// all tokens once the list was changed
+	private List<String> changed;
+
+	TokenList(String content) {
+		this.content = content;
+	}
+
+	void add(int start, int end, boolean quoted) {
+		if (size * 2 == bounds.length) {
+			bounds = Arrays.copyOf(bounds, bounds.length * 2);
+		}
+		bounds[size * 2] = start;
+		bounds[size * 2 + 1] = quoted ? ~end : end;
+		size++;
+	}
+
+	@Override
+	public String get(int index) {
+		if (changed != null) {
+			return changed.get(index);
+		}
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+		if (materialized == null) {
+			materialized = new String[size];
+		}
+		String token = materialized[index];
+		if (token == null) {
+			token = materialize(bounds[index * 2], bounds[index * 2 + 1]);
+			materialized[index] = token;
+		}
+		return token;
+	}
+
+	@Override
+	public int size() {
+		return changed != null ? changed.size() : size;
+	}
+
+	@Override
+	public String set(int index, String element) {
+		return changed().set(index, element);
+	}
+
+	@Override
+	public void add(int index, String element) {
+		changed().add(index, element);
+		modCount++;
+	}
+
+	@Override
+	public String remove(int index) {
+		String removed = changed().remove(index);
+		modCount++;
+		return removed;
+	}
+
+	private List<String> changed() {
+		if (changed == null) {
+			List<String> tokens = new ArrayList<>(size);
+			for (int i = 0; i < size; i++) {
+				tokens.add(get(i));
+			}
+			changed = tokens;
+		}
+		return changed;
+	}
+
+	private String materialize(int start, int end) {
+		if (end >= 0) {
+			return content.substring(start, end).trim();
+		}
+		end = ~end;
+		StringBuilder builder = new StringBuilder(end - start);
+		for (int i = start; i < end; i++) {
+			char character = content.charAt(i);
+			if (character != '"') {
+				builder.append(character);
+			}
+		}
+		return builder.toString().trim();
+	}
+
+}
@@ -0,0 +1,49 @@
+package de.maxkroner.sharding;
+
+import sx.blah.discord.api.IDiscordClient;
+import sx.blah.discord.api.IShard;
+
+/**
+ * The shards of a Discord4J client, which runs all of them in one process.
+ *
+ * @author kroner
+ *
+ */
+public class DiscordShardedClient implements IShardedClient {
+	private final IDiscordClient client;
+
+	public DiscordShardedClient(IDiscordClient client) {
+		this.client = client;
+	}
+
+	@Override
+	public int getShardCount() {
+		return client.getShardCount();
+	}
+
+	@Override
+	public boolean isReady(int shard) {
+		return shard(shard).isReady();
+	}
+
+	@Override
+	public boolean isLoggedIn(int shard) {
+		return shard(shard).isLoggedIn();
+	}
+
+	@Override
+	public long getResponseTime(int shard) {
+		return shard(shard).getResponseTime();
+	}
+
+	@Override
+	public int getGuildCount(int shard) {
+		return shard(shard).getGuilds().size();
+	}
+
+	private IShard shard(int shard) {
+		// ordered by shard index
+		return client.getShards().get(shard);
+	}
+
+}
@@ -0,0 +1,32 @@
+package de.maxkroner.sharding;
+
+/**
+ * The shards of a client, as far as the bot needs to watch them.
+ * Shards are numbered from 0 to getShardCount() - 1, Discord sends the events of a guild
+ * to shard (guild_id >> 22) % getShardCount().
+ *
+ * @author kroner
+ *
+ */
+public interface IShardedClient {
+
+	public int getShardCount();
+
+	/**
+	 * @return true once the shard received all of its guilds
+	 */
+	public boolean isReady(int shard);
+
+	/**
+	 * @return true while the shard is connected to the gateway
+	 */
+	public boolean isLoggedIn(int shard);
+
+	/**
+	 * @return time the gateway took to answer the last heartbeat of the shard, in milliseconds
+	 */
+	public long getResponseTime(int shard);
+
+	public int getGuildCount(int shard);
+
+}
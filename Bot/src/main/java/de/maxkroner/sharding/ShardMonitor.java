@@ -0,0 +1,87 @@
+package de.maxkroner.sharding;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import de.maxkroner.metrics.MetricsRegistry;
+
+/**
+ * Health and traffic of every shard of a bot. A shard is healthy when it is connected, has received
+ * its guilds and answers heartbeats within the latency limit. The messages and disconnects are counted
+ * per shard, so an overloaded or flapping shard shows up in the metrics.
+ *
+ * @author kroner
+ *
+ */
+public class ShardMonitor {
+	private final IShardedClient client;
+	private final int shardCount;
+	private final long maxLatencyMillis;
+	private final AtomicLongArray messages;
+	private final AtomicLongArray disconnects;
+
+	/**
+	 * @param maxLatencyMillis
+	 *            heartbeat response time above which a shard is slow
+	 */
+	public ShardMonitor(IShardedClient client, long maxLatencyMillis) {
+		this.client = client;
+		this.shardCount = client.getShardCount();
+		this.maxLatencyMillis = maxLatencyMillis;
+		this.messages = new AtomicLongArray(shardCount);
+		this.disconnects = new AtomicLongArray(shardCount);
+	}
+
+	/**
+	 * registers the gauges of every shard, labeled with the shard index
+	 */
+	public void registerMetrics(MetricsRegistry metrics) {
+		for (int i = 0; i < shardCount; i++) {
+			int shard = i;
+			String label = Integer.toString(shard);
+			metrics.gauge("bot_shard_up", "1 if the shard is healthy", () -> getHealth(shard) == Health.HEALTHY ? 1 : 0, "shard", label);
+			metrics.gauge("bot_shard_latency_seconds", "Heartbeat response time of the shard", () -> client.getResponseTime(shard) / 1000.0, "shard", label);
+			metrics.gauge("bot_shard_guilds", "Guilds served by the shard", () -> client.getGuildCount(shard), "shard", label);
+			metrics.gauge("bot_shard_messages_seen", "Messages received by the shard", () -> messages.get(shard), "shard", label);
+			metrics.gauge("bot_shard_disconnects", "Times the shard lost its connection", () -> disconnects.get(shard), "shard", label);
+		}
+	}
+
+	public int getShardCount() {
+		return shardCount;
+	}
+
+	public int shardOf(long guild_id) {
+		return Shards.shardOf(guild_id, shardCount);
+	}
+
+	public void messageReceived(long guild_id) {
+		messages.incrementAndGet(shardOf(guild_id));
+	}
+
+	public void disconnected(int shard) {
+		disconnects.incrementAndGet(shard);
+	}
+
+	public long getMessageCount(int shard) {
+		return messages.get(shard);
+	}
+
+	public long getDisconnectCount(int shard) {
+		return disconnects.get(shard);
+	}
+
+	public Health getHealth(int shard) {
+		if (!client.isLoggedIn(shard)) {
+			return Health.DISCONNECTED;
+		}
+		if (!client.isReady(shard)) {
+			return Health.STARTING;
+		}
+		return client.getResponseTime(shard) > maxLatencyMillis ? Health.SLOW : Health.HEALTHY;
+	}
+
+	public enum Health {
+		HEALTHY, SLOW, STARTING, DISCONNECTED
+	}
+
+}
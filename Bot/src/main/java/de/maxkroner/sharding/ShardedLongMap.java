@@ -0,0 +1,109 @@
+package de.maxkroner.sharding;
+
+import de.maxkroner.util.ConcurrentLongMap;
+import de.maxkroner.util.ConcurrentLongMap.LongObjectConsumer;
+
+/**
+ * Map from guild ids to per-guild state with one partition per shard, a guild is stored in the
+ * partition of the shard that serves it. Writes of different shards don't contend and the state of a
+ * shard can be counted or dropped on its own. Reads don't lock.
+ *
+ * @author kroner
+ *
+ */
+public class ShardedLongMap<V> {
+	private volatile ConcurrentLongMap<V>[] partitions;
+
+	public ShardedLongMap(int shardCount) {
+		this.partitions = createPartitions(shardCount);
+	}
+
+	/**
+	 * moves the mappings into partitions for the new number of shards,
+	 * call it while nobody else uses the map, e.g. before the state is loaded
+	 */
+	public synchronized void setShardCount(int shardCount) {
+		ConcurrentLongMap<V>[] old = partitions;
+		if (old.length == shardCount) {
+			return;
+		}
+		ConcurrentLongMap<V>[] resized = createPartitions(shardCount);
+		for (ConcurrentLongMap<V> partition : old) {
+			partition.forEach((key, value) -> resized[Shards.shardOf(key, shardCount)].put(key, value));
+		}
+		partitions = resized;
+	}
+
+	public int getShardCount() {
+		return partitions.length;
+	}
+
+	public V get(long guild_id) {
+		return partition(guild_id).get(guild_id);
+	}
+
+	public V put(long guild_id, V value) {
+		return partition(guild_id).put(guild_id, value);
+	}
+
+	public V remove(long guild_id) {
+		return partition(guild_id).remove(guild_id);
+	}
+
+	public void clear() {
+		for (ConcurrentLongMap<V> partition : partitions) {
+			partition.clear();
+		}
+	}
+
+	public void clearShard(int shard) {
+		partitions[shard].clear();
+	}
+
+	public int size() {
+		int size = 0;
+		for (ConcurrentLongMap<V> partition : partitions) {
+			size += partition.size();
+		}
+		return size;
+	}
+
+	public int sizeOfShard(int shard) {
+		return partitions[shard].size();
+	}
+
+	public void forEach(LongObjectConsumer<? super V> action) {
+		for (ConcurrentLongMap<V> partition : partitions) {
+			partition.forEach(action);
+		}
+	}
+
+	/**
+	 * @return approximate bytes used by the partitions, without the values
+	 */
+	public long estimateBytes() {
+		long bytes = 16 + 4L * partitions.length;
+		for (ConcurrentLongMap<V> partition : partitions) {
+			bytes += partition.estimateBytes();
+		}
+		return bytes;
+	}
+
+	private ConcurrentLongMap<V> partition(long guild_id) {
+		ConcurrentLongMap<V>[] current = partitions;
+		return current[Shards.shardOf(guild_id, current.length)];
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <V> ConcurrentLongMap<V>[] createPartitions(int shardCount) {
+		if (shardCount < 1) {
+			throw new IllegalArgumentException("shardCount must be at least 1");
+		}
+		ConcurrentLongMap<V>[] partitions = new ConcurrentLongMap[shardCount];
+		for (int i = 0; i < shardCount; i++) {
+			partitions[i] = new ConcurrentLongMap<>();
+		}
+		return partitions;
+	}
+
+}
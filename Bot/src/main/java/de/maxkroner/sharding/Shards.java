@@ -0,0 +1,21 @@
+package de.maxkroner.sharding;
+
+/**
+ * Routing of guilds to shards.
+ *
+ * @author kroner
+ *
+ */
+public class Shards {
+
+	private Shards() {
+	}
+
+	/**
+	 * @return the shard Discord sends the events of the guild to
+	 */
+	public static int shardOf(long guild_id, int shardCount) {
+		return (int) ((guild_id >>> 22) % shardCount);
+	}
+
+}
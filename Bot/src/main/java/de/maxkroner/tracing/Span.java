@@ -0,0 +1,174 @@
+package de.maxkroner.tracing;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A timed part of a traced command. Spans are opened with try-with-resources, a span opened while
+ * another one is open on the same thread becomes its child. The first span of a trace is its root,
+ * the trace is finished when all of its spans are closed, also those continued on other threads.
+ *
+ * @author kroner
+ *
+ */
+public class Span implements AutoCloseable {
+	/**
+	 * span of commands that aren't traced, closing it does nothing
+	 */
+	public static final Span NOOP = new Span();
+
+	private final Span root;
+	private final Span parent;
+	private final long startNanos;
+	private final Span previous;
+	private final List<Span> children = new ArrayList<>();
+	private volatile String name;
+	private volatile long endNanos = -1;
+	// only used by the root
+	private final Tracer tracer;
+	private final long startMillis;
+	private final AtomicInteger openSpans;
+
+	private Span() {
+		this.root = this;
+		this.parent = null;
+		this.startNanos = 0;
+		this.previous = null;
+		this.tracer = null;
+		this.startMillis = 0;
+		this.openSpans = null;
+	}
+
+	/**
+	 * a new trace
+	 */
+	Span(Tracer tracer, String name, Span previous) {
+		this.root = this;
+		this.parent = null;
+		this.name = name;
+		this.startNanos = System.nanoTime();
+		this.previous = previous;
+		this.tracer = tracer;
+		this.startMillis = System.currentTimeMillis();
+		this.openSpans = new AtomicInteger(1);
+	}
+
+	/**
+	 * a child of the parent
+	 */
+	Span(Span parent, String name, Span previous) {
+		this.root = parent.root;
+		this.parent = parent;
+		this.name = name;
+		this.startNanos = System.nanoTime();
+		this.previous = previous;
+		this.tracer = null;
+		this.startMillis = 0;
+		this.openSpans = null;
+		root.openSpans.incrementAndGet();
+		synchronized (parent.children) {
+			parent.children.add(this);
+		}
+	}
+
+	public boolean isTraced() {
+		return this != NOOP;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * e.g. to name the trace after the command, which is only known after parsing
+	 */
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * @return when the trace of the span started
+	 */
+	public Instant getTraceStart() {
+		return Instant.ofEpochMilli(root.startMillis);
+	}
+
+	/**
+	 * @return microseconds between the start of the trace and the start of this span
+	 */
+	public long getOffsetMicros() {
+		return TimeUnit.NANOSECONDS.toMicros(startNanos - root.startNanos);
+	}
+
+	/**
+	 * @return duration in microseconds, 0 while the span is open
+	 */
+	public long getDurationMicros() {
+		long end = endNanos;
+		return end < 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(end - startNanos);
+	}
+
+	public List<Span> getChildren() {
+		synchronized (children) {
+			return new ArrayList<>(children);
+		}
+	}
+
+	@Override
+	public void close() {
+		if (this == NOOP || endNanos >= 0) {
+			return;
+		}
+		endNanos = System.nanoTime();
+		if (Tracer.current() == this) {
+			Tracer.restore(previous);
+		}
+		root.spanClosed();
+	}
+
+	/**
+	 * @return the span and its children in one line: "name"@offset+duration[children], times in microseconds
+	 */
+	public String format() {
+		StringBuilder builder = new StringBuilder();
+		format(builder);
+		return builder.toString();
+	}
+
+	private void format(StringBuilder builder) {
+		builder.append('"').append(name.replace('"', '\'')).append("\"@").append(getOffsetMicros()).append('+').append(getDurationMicros());
+		List<Span> spans = getChildren();
+		if (!spans.isEmpty()) {
+			builder.append('[');
+			for (int i = 0; i < spans.size(); i++) {
+				if (i > 0) {
+					builder.append(' ');
+				}
+				spans.get(i).format(builder);
+			}
+			builder.append(']');
+		}
+	}
+
+	void spanClosed() {
+		if (openSpans.decrementAndGet() == 0) {
+			tracer.finished(this);
+		}
+	}
+
+	void reserve() {
+		root.openSpans.incrementAndGet();
+	}
+
+	Span getRoot() {
+		return root;
+	}
+
+	Span getParent() {
+		return parent;
+	}
+
+}
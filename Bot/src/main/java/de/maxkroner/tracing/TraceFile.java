@@ -0,0 +1,58 @@
+package de.maxkroner.tracing;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Text file with one trace per line. When it reaches its maximum size it is renamed to name.1,
+ * replacing the one before, and a new file is started, so at most twice the size is used.
+ *
+ * @author kroner
+ *
+ */
+public class TraceFile {
+	private final Path file;
+	private final Path rolled;
+	private final long maxBytes;
+	// guarded by this
+	private BufferedWriter writer;
+	private long size;
+
+	public TraceFile(Path file, long maxBytes) throws IOException {
+		this.file = file;
+		this.rolled = Paths.get(file.toString() + ".1");
+		this.maxBytes = maxBytes;
+		Files.createDirectories(file.toAbsolutePath().getParent());
+		open();
+	}
+
+	public synchronized void write(String line) throws IOException {
+		byte[] bytes = (line + System.lineSeparator()).getBytes(StandardCharsets.UTF_8);
+		if (size > 0 && size + bytes.length > maxBytes) {
+			writer.close();
+			Files.move(file, rolled, StandardCopyOption.REPLACE_EXISTING);
+			open();
+		}
+		writer.write(line);
+		writer.newLine();
+		// traces are sampled, a flush per trace is cheap and nothing is lost on a crash
+		writer.flush();
+		size += bytes.length;
+	}
+
+	public synchronized void close() throws IOException {
+		writer.close();
+	}
+
+	private void open() throws IOException {
+		writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+		size = Files.size(file);
+	}
+
+}
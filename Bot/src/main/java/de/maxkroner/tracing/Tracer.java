@@ -0,0 +1,170 @@
+package de.maxkroner.tracing;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.pmw.tinylog.Logger;
+
+/**
+ * Traces a sample of the commands. A traced command records a tree of spans, e.g. parsing, the handler,
+ * its database queries and the requests to Discord, the finished trees are kept in memory for the
+ * console and written to a trace file. The span that is open on a thread is found through a thread
+ * local, so code that is called by a command opens its spans without knowing the tracer, and commands
+ * that aren't sampled cost one thread local lookup per span.
+ *
+ * Work that a command hands to another thread captures a continuation, the other thread opens its
+ * spans in the trace by resuming it.
+ *
+ * @author kroner
+ *
+ */
+public class Tracer {
+	private static final ThreadLocal<Span> CURRENT = new ThreadLocal<>();
+	private static final int RECENT_TRACES = 256;
+
+	private final double sampleRate;
+	private final TraceFile file;
+	// guarded by itself
+	private final Deque<Span> recent = new ArrayDeque<>();
+
+	/**
+	 * @param sampleRate
+	 *            fraction of the commands that are traced, between 0 and 1
+	 * @param file
+	 *            file the finished traces are written to, null to keep them in memory only
+	 */
+	public Tracer(double sampleRate, TraceFile file) {
+		this.sampleRate = sampleRate;
+		this.file = file;
+	}
+
+	/**
+	 * starts a trace on this thread if the command is sampled
+	 *
+	 * @return the root span, Span.NOOP if the command isn't traced
+	 */
+	public Span startTrace(String name) {
+		if (CURRENT.get() != null || ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+			return Span.NOOP;
+		}
+		Span root = new Span(this, name, null);
+		CURRENT.set(root);
+		return root;
+	}
+
+	/**
+	 * opens a child of the span that is open on this thread
+	 *
+	 * @return the span, Span.NOOP if no trace is open on this thread
+	 */
+	public static Span span(String name) {
+		Span parent = CURRENT.get();
+		if (parent == null) {
+			return Span.NOOP;
+		}
+		Span span = new Span(parent, name, parent);
+		CURRENT.set(span);
+		return span;
+	}
+
+	/**
+	 * @return true if a trace is open on this thread, to skip building span names otherwise
+	 */
+	public static boolean isTracing() {
+		return CURRENT.get() != null;
+	}
+
+	/**
+	 * keeps the trace open for work that continues on another thread
+	 *
+	 * @return the continuation, null if no trace is open on this thread
+	 */
+	public static Continuation capture() {
+		Span parent = CURRENT.get();
+		if (parent == null) {
+			return null;
+		}
+		parent.reserve();
+		return new Continuation(parent);
+	}
+
+	/**
+	 * @return the slowest of the recently finished traces, the slowest first
+	 */
+	public List<Span> getSlowestTraces(int count) {
+		List<Span> traces;
+		synchronized (recent) {
+			traces = new ArrayList<>(recent);
+		}
+		traces.sort(Comparator.comparingLong(Span::getDurationMicros).reversed());
+		return traces.subList(0, Math.min(count, traces.size()));
+	}
+
+	public double getSampleRate() {
+		return sampleRate;
+	}
+
+	static Span current() {
+		return CURRENT.get();
+	}
+
+	static void restore(Span previous) {
+		if (previous == null) {
+			CURRENT.remove();
+		} else {
+			CURRENT.set(previous);
+		}
+	}
+
+	void finished(Span root) {
+		synchronized (recent) {
+			if (recent.size() == RECENT_TRACES) {
+				recent.removeFirst();
+			}
+			recent.addLast(root);
+		}
+		if (file != null) {
+			try {
+				file.write(root.getTraceStart() + " " + root.getDurationMicros() + " " + root.format());
+			} catch (Exception e) {
+				Logger.error(e);
+			}
+		}
+	}
+
+	/**
+	 * a trace handed to another thread, it stays open until the continuation is released
+	 */
+	public static class Continuation {
+		private final Span parent;
+		private boolean released = false;
+
+		private Continuation(Span parent) {
+			this.parent = parent;
+		}
+
+		/**
+		 * opens a span in the trace on this thread, the spans this thread opens until it is closed are its children
+		 */
+		public Span resume(String name) {
+			Span span = new Span(parent, name, CURRENT.get());
+			CURRENT.set(span);
+			return span;
+		}
+
+		/**
+		 * the work is done, the trace can finish
+		 */
+		public synchronized void release() {
+			if (!released) {
+				released = true;
+				parent.getRoot().spanClosed();
+			}
+		}
+	}
+
+}
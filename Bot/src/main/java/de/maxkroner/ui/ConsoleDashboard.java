@@ -0,0 +1,122 @@
+package de.maxkroner.ui;
+
+import java.io.PrintStream;
+import java.util.Map.Entry;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.pmw.tinylog.Logger;
+
+import de.maxkroner.metrics.LatencyHistogram;
+import de.maxkroner.metrics.MetricsRegistry;
+
+/**
+ * Live view of the metrics of a bot in the console, redrawn in a fixed interval until it is stopped.
+ * Rates and latencies are those of the last interval, the gauges (queue depths, gauges of the modules)
+ * are their current values. It only reads the metrics, which never block, and draws on its own
+ * thread, so the bot isn't slowed down while it is shown.
+ *
+ * @author kroner
+ *
+ */
+public class ConsoleDashboard {
+	private static final String COMMAND_HISTOGRAM = "bot_command_seconds";
+	private static final String QUERY_HISTOGRAM = "bot_db_query_seconds";
+	// move to the top left and clear the screen
+	private static final String CLEAR_SCREEN = "\033[H\033[2J";
+
+	private final MetricsRegistry metrics;
+	private final PrintStream out;
+	private final boolean clearScreen;
+	// only accessed by the drawing thread
+	private LatencyHistogram previousCommands;
+	private LatencyHistogram previousQueries;
+	private long previousNanos;
+	private ScheduledThreadPoolExecutor drawer;
+
+	public ConsoleDashboard(MetricsRegistry metrics, PrintStream out) {
+		this.metrics = metrics;
+		this.out = out;
+		// the windows console shows the escape codes instead of clearing
+		this.clearScreen = !System.getProperty("os.name", "").startsWith("Windows");
+	}
+
+	/**
+	 * draws the dashboard every refreshMillis until stop is called
+	 */
+	public synchronized void start(long refreshMillis) {
+		if (drawer != null) {
+			return;
+		}
+		previousCommands = metrics.mergeHistograms(COMMAND_HISTOGRAM);
+		previousQueries = metrics.mergeHistograms(QUERY_HISTOGRAM);
+		previousNanos = System.nanoTime();
+		drawer = new ScheduledThreadPoolExecutor(1, runnable -> {
+			Thread thread = new Thread(runnable, "console-dashboard");
+			thread.setDaemon(true);
+			return thread;
+		});
+		drawer.scheduleWithFixedDelay(() -> {
+			try {
+				out.print((clearScreen ? CLEAR_SCREEN : System.lineSeparator()) + render(System.nanoTime()));
+				out.flush();
+			} catch (RuntimeException e) {
+				Logger.error(e);
+			}
+		}, 0, refreshMillis, TimeUnit.MILLISECONDS);
+	}
+
+	public synchronized void stop() {
+		if (drawer != null) {
+			drawer.shutdownNow();
+			drawer = null;
+		}
+	}
+
+	/**
+	 * @return the dashboard with the rates and latencies since the last call
+	 */
+	String render(long nowNanos) {
+		double seconds = Math.max(1e-3, (nowNanos - previousNanos) / 1e9);
+		previousNanos = nowNanos;
+		LatencyHistogram commands = metrics.mergeHistograms(COMMAND_HISTOGRAM);
+		LatencyHistogram commandInterval = interval(commands, previousCommands);
+		previousCommands = commands;
+		LatencyHistogram queries = metrics.mergeHistograms(QUERY_HISTOGRAM);
+		LatencyHistogram queryInterval = interval(queries, previousQueries);
+		previousQueries = queries;
+
+		StringBuilder screen = new StringBuilder();
+		line(screen, "Dashboard, press enter to leave");
+		line(screen, latencyLine("commands", commandInterval, seconds));
+		line(screen, latencyLine("db queries", queryInterval, seconds));
+		Runtime runtime = Runtime.getRuntime();
+		line(screen, String.format("%-12s %8.1f of %.1f MiB", "heap", (runtime.totalMemory() - runtime.freeMemory()) / 1048576.0, runtime.maxMemory() / 1048576.0));
+		line(screen, "");
+		for (Entry<String, Double> value : metrics.getValues().entrySet()) {
+			line(screen, String.format("%-60s %12s", value.getKey(), format(value.getValue())));
+		}
+		return screen.toString();
+	}
+
+	private static LatencyHistogram interval(LatencyHistogram current, LatencyHistogram previous) {
+		LatencyHistogram interval = new LatencyHistogram();
+		interval.add(current);
+		interval.subtract(previous);
+		return interval;
+	}
+
+	private static String latencyLine(String name, LatencyHistogram histogram, double seconds) {
+		return String.format("%-12s %8.1f/s   p50 %8.2f ms   p99 %8.2f ms", name, histogram.getCount() / seconds,
+				histogram.getPercentileMicros(50) / 1000.0, histogram.getPercentileMicros(99) / 1000.0);
+	}
+
+	private static String format(double value) {
+		return value == Math.rint(value) && Math.abs(value) < 1e15 ? Long.toString((long) value) : String.format("%.2f", value);
+	}
+
+	private static void line(StringBuilder screen, String line) {
+		screen.append(line).append(System.lineSeparator());
+	}
+
+}
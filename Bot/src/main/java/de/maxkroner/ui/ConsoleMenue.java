@@ -1,8 +1,11 @@
 package de.maxkroner.ui;
 
 import de.maxkroner.implementation.Bot;
+import de.maxkroner.tracing.Span;
 
 public class ConsoleMenue implements IConsoleMenue {
+	private static final int SHOWN_TRACES = 10;
+	private static final long DASHBOARD_REFRESH_MILLIS = 1000;
 	protected Bot bot;
 	
 	public ConsoleMenue(Bot bot){
@@ -17,8 +20,8 @@ public class ConsoleMenue implements IConsoleMenue {
 	protected void customizeBot(){
 		int auswahl = 0;
 		
-		while (!(auswahl==4)){
-			auswahl = ConsoleUserInput.getMultipleChoiceResult("What do you want to do?", "change bot name", "change bot playing text", "change bot avatar", "exit menue");
+		while (!(auswahl==7)){
+			auswahl = ConsoleUserInput.getMultipleChoiceResult("What do you want to do?", "change bot name", "change bot playing text", "change bot avatar", "show query statistics", "show slowest traces", "show live dashboard", "exit menue");
 			switch(auswahl){
 			case 1: 
 				bot.changeName(ConsoleUserInput.getStringAnswer("enter new bot name:")); break;
@@ -26,9 +29,60 @@ public class ConsoleMenue implements IConsoleMenue {
 				bot.changePlayingText(ConsoleUserInput.getStringAnswer("enter new playing text:")); break;
 			case 3:
 				bot.changeAvatar(ConsoleUserInput.getStringAnswer("enter url to image:"), ConsoleUserInput.getStringAnswer("enter image type (jpeg, png, etc.):")); break;
+			case 4:
+				printQueryStatistics(); break;
+			case 5:
+				printSlowestTraces(); break;
+			case 6:
+				showDashboard(); break;
 			}
 		}
 		
 	}
+	
+	protected void printQueryStatistics(){
+		if(bot.getQueryStatistics().isEmpty()){
+			System.out.println("The bot uses no database.");
+		}
+		bot.getQueryStatistics().forEach((database, statistics) -> {
+			System.out.println(database + " (queries over " + statistics.getSlowQueryMillis() + " ms are logged):");
+			statistics.getHistograms().forEach((shape, histogram) -> System.out.println(String.format("%8d  p50 %8.2f  p95 %8.2f  p99 %8.2f  max %8.2f ms  %s",
+					histogram.getCount(), histogram.getPercentileMicros(50) / 1000.0, histogram.getPercentileMicros(95) / 1000.0,
+					histogram.getPercentileMicros(99) / 1000.0, histogram.getMaxMicros() / 1000.0, shape)));
+		});
+	}
+	
+	protected void showDashboard(){
+		ConsoleDashboard dashboard = new ConsoleDashboard(bot.getMetrics(), System.out);
+		dashboard.start(DASHBOARD_REFRESH_MILLIS);
+		try{
+			ConsoleUserInput.waitForEnter();
+		} finally {
+			dashboard.stop();
+		}
+	}
+	
+	protected void printSlowestTraces(){
+		if(bot.getTracer().getSampleRate() == 0){
+			System.out.println("Tracing is not enabled.");
+			return;
+		}
+		for(Span trace : bot.getTracer().getSlowestTraces(SHOWN_TRACES)){
+			System.out.println(trace.getTraceStart());
+			printSpan(trace, 1);
+		}
+	}
+	
+	private void printSpan(Span span, int depth){
+		StringBuilder line = new StringBuilder();
+		for(int i = 0; i < depth; i++){
+			line.append("  ");
+		}
+		line.append(String.format("%s  %.2f ms (+%.2f ms)", span.getName(), span.getDurationMicros() / 1000.0, span.getOffsetMicros() / 1000.0));
+		System.out.println(line);
+		for(Span child : span.getChildren()){
+			printSpan(child, depth + 1);
+		}
+	}
 		
 }
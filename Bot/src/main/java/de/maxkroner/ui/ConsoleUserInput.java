@@ -139,4 +139,14 @@ public class ConsoleUserInput {
 		}
 		return answer;
 	}
+	
+	/**
+	 * Waits until the user presses enter, call it after a multiple choice question
+	 */
+	public static void waitForEnter(){
+		getScanner();
+		// the rest of the line of the chosen number
+		scanner.nextLine();
+		scanner.nextLine();
+	}
 }
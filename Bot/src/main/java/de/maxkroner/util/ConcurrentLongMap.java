@@ -0,0 +1,162 @@
+package de.maxkroner.util;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BiConsumer;
+
+/**
+ * Map from primitive long keys (e.g. guild ids) to values, without boxing the keys or
+ * allocating an entry per mapping. Open addressing with linear probing over a key array
+ * and a value array. Reads don't lock, writes are synchronized.
+ *
+ * A slot belongs to one key until the table is resized: a removed mapping leaves a marker,
+ * so a reader can never see the value of one key under another.
+ *
+ * @author kroner
+ *
+ */
+public class ConcurrentLongMap<V> {
+	private static final Object REMOVED = new Object();
+	private static final int MIN_CAPACITY = 16;
+
+	private volatile Table table = new Table(MIN_CAPACITY);
+	// guarded by this
+	private int size = 0;
+	private int usedSlots = 0;
+
+	public V get(long key) {
+		return table.get(key);
+	}
+
+	public synchronized V put(long key, V value) {
+		if (value == null) {
+			throw new NullPointerException("value");
+		}
+		Table current = table;
+		int index = current.indexOf(key);
+		Object previous = current.values.get(index);
+		if (previous == null) {
+			// a new slot, keep at least half of the table empty
+			if ((usedSlots + 1) * 2 > current.keys.length) {
+				current = resize(size + 1);
+				index = current.indexOf(key);
+			}
+			current.keys[index] = key;
+			usedSlots++;
+		}
+		// the key is written before the value, a reader that sees the value sees the key
+		current.values.set(index, value);
+		if (previous == null || previous == REMOVED) {
+			size++;
+			return null;
+		}
+		return cast(previous);
+	}
+
+	public synchronized V remove(long key) {
+		Table current = table;
+		int index = current.indexOf(key);
+		Object previous = current.values.get(index);
+		if (previous == null || previous == REMOVED) {
+			return null;
+		}
+		current.values.set(index, REMOVED);
+		size--;
+		return cast(previous);
+	}
+
+	public synchronized void clear() {
+		table = new Table(MIN_CAPACITY);
+		size = 0;
+		usedSlots = 0;
+	}
+
+	public synchronized int size() {
+		return size;
+	}
+
+	public void forEach(LongObjectConsumer<? super V> action) {
+		Table current = table;
+		for (int i = 0; i < current.keys.length; i++) {
+			Object value = current.values.get(i);
+			if (value != null && value != REMOVED) {
+				action.accept(current.keys[i], cast(value));
+			}
+		}
+	}
+
+	/**
+	 * @return approximate bytes used by the map itself, without the values
+	 */
+	public long estimateBytes() {
+		int capacity = table.keys.length;
+		// two arrays with 16 byte headers, 8 bytes per key and a compressed reference per value
+		return 32 + 16 + 8L * capacity + 16 + 4L * capacity;
+	}
+
+	private Table resize(int entries) {
+		int capacity = MIN_CAPACITY;
+		while (capacity < entries * 4) {
+			capacity <<= 1;
+		}
+		Table old = table;
+		Table resized = new Table(capacity);
+		for (int i = 0; i < old.keys.length; i++) {
+			Object value = old.values.get(i);
+			if (value != null && value != REMOVED) {
+				int index = resized.indexOf(old.keys[i]);
+				resized.keys[index] = old.keys[i];
+				resized.values.set(index, value);
+			}
+		}
+		usedSlots = size;
+		table = resized;
+		return resized;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <V> V cast(Object value) {
+		return (V) value;
+	}
+
+	@FunctionalInterface
+	public interface LongObjectConsumer<V> {
+		public void accept(long key, V value);
+	}
+
+	private static class Table {
+		private final long[] keys;
+		private final AtomicReferenceArray<Object> values;
+		private final int mask;
+
+		private Table(int capacity) {
+			this.keys = new long[capacity];
+			this.values = new AtomicReferenceArray<>(capacity);
+			this.mask = capacity - 1;
+		}
+
+		private <V> V get(long key) {
+			int index = Snowflakes.spread(key) & mask;
+			Object value;
+			// the value is read first, a written value publishes the key of its slot
+			while ((value = values.get(index)) != null) {
+				if (keys[index] == key) {
+					return value == REMOVED ? null : cast(value);
+				}
+				index = (index + 1) & mask;
+			}
+			return null;
+		}
+
+		/**
+		 * linear probing, returns the slot of the key or the empty slot where it would be stored
+		 */
+		private int indexOf(long key) {
+			int index = Snowflakes.spread(key) & mask;
+			while (values.get(index) != null && keys[index] != key) {
+				index = (index + 1) & mask;
+			}
+			return index;
+		}
+	}
+
+}
@@ -0,0 +1,24 @@
+package de.maxkroner.util;
+
+/**
+ * Helpers for Discord ids, the snowflakes.
+ *
+ * @author kroner
+ *
+ */
+public final class Snowflakes {
+
+	private Snowflakes() {
+	}
+
+	/**
+	 * @return a hash of the id whose lower bits differ for ids created close together,
+	 *         to pick a slot by mask or modulo
+	 */
+	public static int spread(long snowflake) {
+		// snowflakes have their entropy in the upper bits, mix them down
+		long h = snowflake * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+}
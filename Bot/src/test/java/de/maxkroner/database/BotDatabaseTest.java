@@ -3,8 +3,14 @@ package de.maxkroner.database;
 import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.assertThat;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.SQLException;
 import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Test;
 
@@ -109,5 +115,98 @@ public class BotDatabaseTest {
 		assertThat(db.getIntGuildProperty(1, "number1").orElse(null), is(2));
 		assertThat(db.getIntGuildProperty(2, "number1").orElse(null), is(2));	
 	}
+	
+	@Test
+	public void guildSettingsCacheWriteThroughAndEviction() throws SQLException {
+		// GIVEN
+		db.resetDatabase();
+		db.addGuildProperty(1, "prefix", "?");
+		db.loadGuildSettings(1);
+		
+		// WHEN
+		db.addGuildProperty(1, "prefix", "$");
+		db.executeStatement("UPDATE guildpropertiesstring SET value='#' WHERE guild_id=1");
+		
+		// THEN
+		assertThat(db.getStringGuildProperty(1, "prefix").orElse(null), is("$"));
+		
+		// WHEN
+		db.evictGuildSettings(1);
+		
+		// THEN
+		assertThat(db.getStringGuildProperty(1, "prefix").orElse(null), is("#"));
+	}
+	
+	@Test
+	public void writeBehindCoalescesUpdates() throws SQLException {
+		// GIVEN
+		BotDatabase writeBehindDb = new BotDatabase("botdbwritebehindtest");
+		writeBehindDb.resetDatabase();
+		writeBehindDb.enableWriteBehind(60000);
+		
+		// WHEN
+		writeBehindDb.addGuildProperty(1, "prefix", "?");
+		writeBehindDb.addGuildProperty(1, "prefix", "$");
+		writeBehindDb.addGuildProperty(1, "timeout", 5);
+		
+		// THEN
+		assertThat(writeBehindDb.getPendingGuildPropertyCount(), is(2));
+		assertThat(writeBehindDb.getRowCount("SELECT COUNT(*) FROM guildpropertiesstring"), is(0));
+		assertThat(writeBehindDb.getStringGuildProperty(1, "prefix").orElse(null), is("$"));
+		assertThat(writeBehindDb.getStringGuildPropertyForAllGuilds("prefix").get(1L), is("$"));
+		
+		// WHEN
+		writeBehindDb.flushGuildProperties();
+		writeBehindDb.evictGuildSettings(1);
+		
+		// THEN
+		assertThat(writeBehindDb.getPendingGuildPropertyCount(), is(0));
+		assertThat(writeBehindDb.getRowCount("SELECT COUNT(*) FROM guildpropertiesstring"), is(1));
+		assertThat(writeBehindDb.getStringGuildProperty(1, "prefix").orElse(null), is("$"));
+		assertThat(writeBehindDb.getIntGuildProperty(1, "timeout").orElse(null), is(5));
+		writeBehindDb.close();
+	}
+	
+	@Test
+	public void slowLoadOfOneGuildDoesNotBlockOtherGuilds() throws Exception {
+		// GIVEN
+		CountDownLatch loading = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		Path file = Files.createTempDirectory("propertylog").resolve("guildproperties.log");
+		db.setGuildPropertyStore(new MappedGuildPropertyStore(file, 60000) {
+			@Override
+			public GuildSettings load(long guild_id) {
+				if (guild_id == 1) {
+					loading.countDown();
+					try {
+						release.await();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+				return super.load(guild_id);
+			}
+		});
+		ExecutorService threads = Executors.newFixedThreadPool(2);
+		threads.submit(() -> {
+			db.loadGuildSettings(1);
+			return null;
+		});
+		loading.await();
+		
+		try {
+			// WHEN
+			Optional<String> prefix = threads.submit(() -> {
+				db.addGuildProperty(2, "prefix", "?");
+				return db.getStringGuildProperty(2, "prefix");
+			}).get(5, TimeUnit.SECONDS);
+			
+			// THEN
+			assertThat(prefix.orElse(null), is("?"));
+		} finally {
+			release.countDown();
+			threads.shutdown();
+		}
+	}
 
 }
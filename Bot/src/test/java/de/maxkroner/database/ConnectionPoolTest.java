@@ -0,0 +1,186 @@
+package de.maxkroner.database;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import de.maxkroner.database.ConnectionPool.PooledConnection;
+
+public class ConnectionPoolTest {
+	private static final String URL = "jdbc:pooltest:";
+	private static final AtomicInteger prepared = new AtomicInteger();
+
+	@BeforeClass
+	public static void registerDriver() throws SQLException {
+		DriverManager.registerDriver(new TestDriver());
+	}
+
+	@Test
+	public void reuseConnectionInSameThread() throws SQLException {
+		// GIVEN
+		ConnectionPool pool = new ConnectionPool(URL, "sa", "", 1, 100);
+
+		// WHEN
+		try (PooledConnection outer = pool.acquire()) {
+			try (PooledConnection inner = pool.acquire()) {
+				// THEN
+				assertTrue(inner == outer);
+			}
+			assertThat(pool.getIdleCount(), is(0));
+		}
+
+		// THEN
+		assertThat(pool.getIdleCount(), is(1));
+	}
+
+	@Test
+	public void failWhenNoConnectionIsFree() throws Exception {
+		// GIVEN
+		ConnectionPool pool = new ConnectionPool(URL, "sa", "", 1, 50);
+		PooledConnection held = pool.acquire();
+		AtomicInteger failed = new AtomicInteger();
+
+		// WHEN
+		Thread thread = new Thread(() -> {
+			try (PooledConnection connection = pool.acquire()) {
+				fail();
+			} catch (SQLException e) {
+				failed.incrementAndGet();
+			}
+		});
+		thread.start();
+		thread.join();
+		held.close();
+
+		// THEN
+		assertThat(failed.get(), is(1));
+		assertThat(pool.getIdleCount(), is(1));
+	}
+
+	@Test
+	public void reusePreparedStatements() throws SQLException {
+		// GIVEN
+		ConnectionPool pool = new ConnectionPool(URL, "sa", "", 1, 100);
+		prepared.set(0);
+
+		// WHEN
+		try (PooledConnection connection = pool.acquire()) {
+			for (int i = 0; i < 3; i++) {
+				connection.returnStatement("SELECT 1", false, connection.borrowStatement("SELECT 1", false));
+			}
+			PreparedStatement st = connection.borrowStatement("SELECT 1", false);
+			// a nested borrow of the same query gets its own statement
+			PreparedStatement nested = connection.borrowStatement("SELECT 1", false);
+			assertTrue(nested != st);
+			connection.returnStatement("SELECT 1", false, nested);
+			connection.returnStatement("SELECT 1", false, st);
+		}
+
+		// THEN
+		assertThat(prepared.get(), is(2));
+	}
+
+	@Test
+	public void clearStatementsOfConnectionInUseWhenGivenBack() throws SQLException {
+		// GIVEN
+		ConnectionPool pool = new ConnectionPool(URL, "sa", "", 1, 100);
+		prepared.set(0);
+
+		// WHEN
+		try (PooledConnection connection = pool.acquire()) {
+			connection.returnStatement("SELECT 1", false, connection.borrowStatement("SELECT 1", false));
+			pool.clearStatementCaches();
+		}
+		try (PooledConnection connection = pool.acquire()) {
+			connection.returnStatement("SELECT 1", false, connection.borrowStatement("SELECT 1", false));
+		}
+
+		// THEN
+		assertThat(prepared.get(), is(2));
+	}
+
+	private static class TestDriver implements Driver {
+
+		@Override
+		public Connection connect(String url, Properties info) {
+			if (!acceptsURL(url)) {
+				return null;
+			}
+			return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] { Connection.class }, (proxy, method, args) -> {
+				switch (method.getName()) {
+				case "prepareStatement":
+					prepared.incrementAndGet();
+					return statement();
+				case "isClosed":
+					return false;
+				case "close":
+					return null;
+				default:
+					throw new UnsupportedOperationException(method.getName());
+				}
+			});
+		}
+
+		private static PreparedStatement statement() {
+			return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(), new Class<?>[] { PreparedStatement.class }, (proxy, method, args) -> {
+				switch (method.getName()) {
+				case "isClosed":
+					return false;
+				case "hashCode":
+					return System.identityHashCode(proxy);
+				case "equals":
+					return proxy == args[0];
+				default:
+					return null;
+				}
+			});
+		}
+
+		@Override
+		public boolean acceptsURL(String url) {
+			return url.startsWith(URL);
+		}
+
+		@Override
+		public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+			return new DriverPropertyInfo[0];
+		}
+
+		@Override
+		public int getMajorVersion() {
+			return 1;
+		}
+
+		@Override
+		public int getMinorVersion() {
+			return 0;
+		}
+
+		@Override
+		public boolean jdbcCompliant() {
+			return false;
+		}
+
+		@Override
+		public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+			throw new SQLFeatureNotSupportedException();
+		}
+	}
+
+}
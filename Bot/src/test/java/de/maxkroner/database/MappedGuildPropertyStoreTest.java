@@ -0,0 +1,115 @@
+package de.maxkroner.database;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.Optional;
+
+import org.junit.Test;
+
+public class MappedGuildPropertyStoreTest {
+
+	@Test
+	public void readPropertiesAfterReopen() throws IOException, SQLException {
+		// GIVEN
+		Path file = Files.createTempDirectory("propertylog").resolve("guildproperties.log");
+		MappedGuildPropertyStore store = new MappedGuildPropertyStore(file, 60000);
+
+		// WHEN
+		store.put(PropertyType.STRING, 1, "prefix", "?");
+		store.put(PropertyType.STRING, 1, "prefix", "$");
+		store.put(PropertyType.BOOLEAN, 1, "jokeEnabled", false);
+		store.put(PropertyType.INT, 2, "timeout", 5);
+		store.close();
+		store = new MappedGuildPropertyStore(file, 60000);
+
+		// THEN
+		assertThat(store.load(1).getString("prefix").orElse(null), is("$"));
+		assertThat(store.load(1).getBoolean("jokeEnabled").orElse(null), is(false));
+		assertThat(store.load(2).getInt("timeout").orElse(null), is(5));
+		assertThat(store.load(3).size(), is(0));
+		assertThat(store.loadStringPropertyForAllGuilds("prefix").size(), is(1));
+		assertThat(store.getRecordCount(), is(4));
+		store.close();
+	}
+
+	@Test
+	public void recoverFromInterruptedWrite() throws IOException, SQLException {
+		// GIVEN
+		Path file = Files.createTempDirectory("propertylog").resolve("guildproperties.log");
+		MappedGuildPropertyStore store = new MappedGuildPropertyStore(file, 60000);
+		store.put(PropertyType.STRING, 1, "prefix", "?");
+		store.put(PropertyType.STRING, 1, "prefix", "$");
+		store.close();
+
+		// WHEN
+		// corrupt the value of the last record like a write that didn't reach the disk completely
+		long lastValue = findLast(file, (byte) '$');
+		try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+			raf.seek(lastValue);
+			raf.write('#');
+		}
+		store = new MappedGuildPropertyStore(file, 60000);
+
+		// THEN
+		assertThat(store.load(1).getString("prefix"), is(Optional.of("?")));
+		assertThat(store.getRecordCount(), is(1));
+
+		// WHEN
+		store.put(PropertyType.INT, 1, "timeout", 3);
+		store.close();
+		store = new MappedGuildPropertyStore(file, 60000);
+
+		// THEN
+		assertThat(store.load(1).getString("prefix"), is(Optional.of("?")));
+		assertThat(store.load(1).getInt("timeout"), is(Optional.of(3)));
+		assertThat(store.getRecordCount(), is(2));
+		store.close();
+	}
+
+	@Test
+	public void compactKeepsCurrentValues() throws IOException, SQLException {
+		// GIVEN
+		Path file = Files.createTempDirectory("propertylog").resolve("guildproperties.log");
+		MappedGuildPropertyStore store = new MappedGuildPropertyStore(file, 60000);
+		for (int i = 0; i < 100; i++) {
+			store.put(PropertyType.INT, i % 10, "counter", i);
+		}
+
+		// WHEN
+		store.compact();
+
+		// THEN
+		assertThat(store.getRecordCount(), is(10));
+		assertThat(store.load(3).getInt("counter").orElse(null), is(93));
+		assertTrue(!Files.exists(file.resolveSibling("guildproperties.log.compact")));
+
+		// WHEN
+		store.put(PropertyType.INT, 3, "counter", 1000);
+		store.close();
+		store = new MappedGuildPropertyStore(file, 60000);
+
+		// THEN
+		assertThat(store.getRecordCount(), is(11));
+		assertThat(store.load(3).getInt("counter").orElse(null), is(1000));
+		assertThat(store.load(9).getInt("counter").orElse(null), is(99));
+		store.close();
+	}
+
+	private static long findLast(Path file, byte value) throws IOException {
+		byte[] bytes = Files.readAllBytes(file);
+		for (int i = bytes.length - 1; i >= 0; i--) {
+			if (bytes[i] == value) {
+				return i;
+			}
+		}
+		throw new IllegalStateException("value not found");
+	}
+
+}
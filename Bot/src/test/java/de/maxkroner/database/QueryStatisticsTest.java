@@ -0,0 +1,43 @@
+package de.maxkroner.database;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class QueryStatisticsTest {
+
+	@Test
+	public void literalsAreNormalized() {
+		assertThat(QueryStatistics.normalize("SELECT * FROM joke WHERE category = 'it''s'  AND id > 12;"),
+				is("SELECT * FROM joke WHERE category = ? AND id > ?"));
+		assertThat(QueryStatistics.normalize("SELECT word FROM words2 LIMIT 1 OFFSET ?"), is("SELECT word FROM words2 LIMIT ? OFFSET ?"));
+	}
+
+	@Test
+	public void parameterValuesAreRedacted() {
+		assertThat(QueryStatistics.redact(new Object[] { "secret", 42L, null }), is("[String, Long, null]"));
+		assertThat(QueryStatistics.redact(null), is("[]"));
+	}
+
+	@Test
+	public void queriesWithDifferentLiteralsShareOneHistogram() throws SQLException {
+		// GIVEN
+		QueryStatistics statistics = new QueryStatistics();
+
+		// WHEN
+		statistics.record("DELETE FROM joke WHERE category = 'a'", null, TimeUnit.MILLISECONDS.toNanos(2));
+		statistics.record("DELETE FROM joke WHERE category = 'b'", null, TimeUnit.MILLISECONDS.toNanos(4));
+		int rows = statistics.time("SELECT 1", null, () -> 1);
+
+		// THEN
+		assertThat(rows, is(1));
+		assertThat(statistics.getHistograms().size(), is(2));
+		assertThat(statistics.getHistograms().get("DELETE FROM joke WHERE category = ?").getCount(), is(2L));
+		assertThat(statistics.getHistograms().get("SELECT ?").getCount(), is(1L));
+	}
+
+}
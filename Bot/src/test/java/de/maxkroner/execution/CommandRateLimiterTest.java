@@ -0,0 +1,140 @@
+package de.maxkroner.execution;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import de.maxkroner.execution.CommandRateLimiter.Rejection;
+import de.maxkroner.execution.CommandRateLimiter.Scope;
+
+public class CommandRateLimiterTest {
+	private static final long USER = 81384788765712384L;
+	private static final long OTHER_USER = 175928847299117063L;
+	private static final long GUILD = 290926798626357250L;
+
+	private final AtomicLong clock = new AtomicLong(1000);
+
+	@Test
+	public void onlyTheFirstRejectionAsksForANotice() {
+		// GIVEN
+		CommandRateLimiter limiter = new CommandRateLimiter(3, 1, 1024, 100, 100, 1024, clock::get);
+
+		// WHEN
+		for (int i = 0; i < 3; i++) {
+			assertNull(limiter.tryAcquire(USER, GUILD, "joke"));
+		}
+		Rejection first = limiter.tryAcquire(USER, GUILD, "joke");
+		Rejection second = limiter.tryAcquire(USER, GUILD, "joke");
+		clock.addAndGet(1000);
+		Rejection afterRefill = limiter.tryAcquire(USER, GUILD, "joke");
+		Rejection afterNextCommand = limiter.tryAcquire(USER, GUILD, "joke");
+
+		// THEN
+		assertThat(first.getScope(), is(Scope.USER));
+		assertThat(first.isNoticeDue(), is(true));
+		assertThat(first.getWaitMillis(), is(1000L));
+		assertThat(second.isNoticeDue(), is(false));
+		assertNull(afterRefill);
+		assertThat(afterNextCommand.isNoticeDue(), is(true));
+		assertNull(limiter.tryAcquire(OTHER_USER, GUILD, "joke"));
+	}
+
+	@Test
+	public void guildLimitKeepsTheTokensOfTheUser() {
+		// GIVEN
+		CommandRateLimiter limiter = new CommandRateLimiter(2, 1, 1024, 2, 1, 1024, clock::get);
+		assertNull(limiter.tryAcquire(OTHER_USER, GUILD, null));
+		assertNull(limiter.tryAcquire(OTHER_USER, GUILD, null));
+
+		// WHEN
+		Rejection rejection = limiter.tryAcquire(USER, GUILD, null);
+
+		// THEN
+		assertThat(rejection.getScope(), is(Scope.GUILD));
+		assertThat(rejection.isNoticeDue(), is(true));
+		assertNull(limiter.tryAcquire(USER, GUILD + 1, null));
+		assertNull(limiter.tryAcquire(USER, GUILD + 1, null));
+	}
+
+	@Test
+	public void commandsTakeTheirCost() {
+		// GIVEN
+		CommandRateLimiter limiter = new CommandRateLimiter(5, 0.5, 1024, 100, 100, 1024, clock::get);
+
+		// WHEN
+		limiter.setCost("create", 3);
+
+		// THEN
+		assertNull(limiter.tryAcquire(USER, GUILD, "create"));
+		Rejection rejection = limiter.tryAcquire(USER, GUILD, "create");
+		assertNotNull(rejection);
+		// one token is missing, it takes 2 seconds to refill
+		assertThat(rejection.getWaitMillis(), is(2000L));
+		assertNull(limiter.tryAcquire(USER, GUILD, "joke"));
+		assertNull(limiter.tryAcquire(USER, GUILD, "joke"));
+		try {
+			limiter.setCost("create", 6);
+			fail("a cost above the capacity can never be paid");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void memoryDoesNotGrowWithTheUsers() {
+		// GIVEN
+		CommandRateLimiter limiter = new CommandRateLimiter(5, 1, 5, 1);
+		long bytes = limiter.estimateBytes();
+
+		// WHEN
+		for (long user_id = 0; user_id < 1000000; user_id++) {
+			limiter.tryAcquire(user_id << 22, user_id << 22, null);
+		}
+
+		// THEN
+		assertThat(limiter.estimateBytes(), is(bytes));
+		assertThat(bytes < 1024 * 1024, is(true));
+	}
+
+	@Test
+	public void concurrentCommandsNeverTakeMoreThanTheCapacity() throws InterruptedException {
+		// GIVEN
+		CommandRateLimiter limiter = new CommandRateLimiter(50, 0.001, 1024, 1000, 0.001, 1024, clock::get);
+		AtomicInteger allowed = new AtomicInteger();
+		AtomicInteger notices = new AtomicInteger();
+		List<Thread> threads = new ArrayList<>();
+
+		// WHEN
+		for (int t = 0; t < 8; t++) {
+			Thread thread = new Thread(() -> {
+				for (int i = 0; i < 1000; i++) {
+					Rejection rejection = limiter.tryAcquire(USER, GUILD, null);
+					if (rejection == null) {
+						allowed.incrementAndGet();
+					} else if (rejection.isNoticeDue()) {
+						notices.incrementAndGet();
+					}
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		// THEN
+		assertThat(allowed.get(), is(50));
+		assertThat(notices.get(), is(1));
+	}
+
+}
@@ -0,0 +1,65 @@
+package de.maxkroner.execution;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class StartupReconcilerTest {
+
+	@Test
+	public void guildsAreReconciledInParallel() throws Exception {
+		// GIVEN
+		CountDownLatch bothStarted = new CountDownLatch(2);
+		StartupReconciler reconciler = new StartupReconciler("test", 2, guild_id -> {
+			bothStarted.countDown();
+			// only finishes if the other guild runs at the same time
+			if (!bothStarted.await(5, TimeUnit.SECONDS)) {
+				throw new IllegalStateException("guilds were reconciled one after another");
+			}
+		});
+
+		// WHEN
+		reconciler.start(Arrays.asList(1L, 2L)).get(10, TimeUnit.SECONDS);
+
+		// THEN
+		assertThat(reconciler.getCompletedCount(), is(2));
+		assertThat(reconciler.getFailedCount(), is(0));
+	}
+
+	@Test
+	public void guildIsReadyOnceReconciled() throws Exception {
+		// GIVEN
+		CountDownLatch release = new CountDownLatch(1);
+		StartupReconciler reconciler = new StartupReconciler("test", 1, guild_id -> {
+			if (guild_id == 2L) {
+				release.await();
+			} else if (guild_id == 3L) {
+				throw new IllegalStateException("missing permissions");
+			}
+		});
+
+		// WHEN
+		CompletableFuture<Void> done = reconciler.start(Arrays.asList(1L, 2L, 3L));
+		while (reconciler.getCompletedCount() < 1) {
+			Thread.sleep(5);
+		}
+
+		// THEN
+		assertThat(reconciler.isReconciled(1L), is(true));
+		assertThat(reconciler.isReconciled(2L), is(false));
+		assertThat(reconciler.isReconciled(3L), is(false));
+		assertThat(reconciler.isReconciled(4L), is(true));
+		release.countDown();
+		done.get(10, TimeUnit.SECONDS);
+		assertThat(reconciler.isReconciled(3L), is(true));
+		assertThat(reconciler.getFailedCount(), is(1));
+		assertThat(reconciler.getPendingCount(), is(0));
+	}
+
+}
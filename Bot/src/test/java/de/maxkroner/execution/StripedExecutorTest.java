@@ -0,0 +1,103 @@
+package de.maxkroner.execution;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class StripedExecutorTest {
+
+	@Test
+	public void tasksWithSameKeyRunInOrder() throws InterruptedException {
+		// GIVEN
+		StripedExecutor executor = new StripedExecutor("test", 4, 1000);
+		List<Integer> executed = Collections.synchronizedList(new ArrayList<>());
+
+		// WHEN
+		for (int i = 0; i < 1000; i++) {
+			int task = i;
+			executor.execute(42L, () -> executed.add(task));
+		}
+		executor.shutdown();
+
+		// THEN
+		assertThat(executor.awaitTermination(5, TimeUnit.SECONDS), is(true));
+		assertThat(executed.size(), is(1000));
+		for (int i = 0; i < 1000; i++) {
+			assertThat(executed.get(i), is(i));
+		}
+	}
+
+	@Test
+	public void blockedStripeDoesNotBlockOtherStripes() throws InterruptedException {
+		// GIVEN
+		StripedExecutor executor = new StripedExecutor("test", 2, 10);
+		long blockedKey = 1;
+		long otherKey = keyOnOtherStripe(executor, blockedKey);
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch otherExecuted = new CountDownLatch(1);
+
+		// WHEN
+		executor.execute(blockedKey, () -> await(release));
+		executor.execute(otherKey, otherExecuted::countDown);
+
+		// THEN
+		assertThat(otherExecuted.await(5, TimeUnit.SECONDS), is(true));
+		release.countDown();
+		executor.shutdown();
+	}
+
+	@Test
+	public void fullQueueRejectsTasks() throws InterruptedException {
+		// GIVEN
+		StripedExecutor executor = new StripedExecutor("test", 1, 2);
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		executor.execute(1, () -> {
+			started.countDown();
+			await(release);
+		});
+		started.await();
+
+		// WHEN
+		boolean first = executor.execute(1, () -> {});
+		boolean second = executor.execute(1, () -> {});
+		boolean third = executor.execute(1, () -> {});
+
+		// THEN
+		assertThat(first, is(true));
+		assertThat(second, is(true));
+		assertThat(third, is(false));
+		assertThat(executor.getQueueDepth(1), is(2));
+		assertThat(executor.getRejectedTaskCount(), is(1L));
+		assertThat(executor.getActiveCount(), is(1));
+
+		release.countDown();
+		executor.shutdown();
+		assertThat(executor.awaitTermination(5, TimeUnit.SECONDS), is(true));
+		assertThat(executor.getCompletedTaskCount(), is(3L));
+	}
+
+	private long keyOnOtherStripe(StripedExecutor executor, long key) {
+		long other = key + 1;
+		while (executor.indexFor(other) == executor.indexFor(key)) {
+			other++;
+		}
+		return other;
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
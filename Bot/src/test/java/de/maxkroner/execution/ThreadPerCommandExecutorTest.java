@@ -0,0 +1,82 @@
+package de.maxkroner.execution;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class ThreadPerCommandExecutorTest {
+
+	@Test
+	public void runsAtMostMaxConcurrentCommands() throws InterruptedException {
+		// GIVEN
+		ThreadPerCommandExecutor executor = new ThreadPerCommandExecutor("test", 3, 100);
+		AtomicInteger running = new AtomicInteger();
+		AtomicInteger maxRunning = new AtomicInteger();
+		CountDownLatch done = new CountDownLatch(50);
+
+		// WHEN
+		for (int i = 0; i < 50; i++) {
+			executor.execute(1, () -> {
+				maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+				sleep(2);
+				running.decrementAndGet();
+				done.countDown();
+			});
+		}
+
+		// THEN
+		assertThat(done.await(10, TimeUnit.SECONDS), is(true));
+		assertTrue(maxRunning.get() <= 3);
+		executor.shutdown();
+		assertThat(executor.awaitTermination(5, TimeUnit.SECONDS), is(true));
+		assertThat(executor.getCompletedTaskCount(), is(50L));
+	}
+
+	@Test
+	public void rejectsCommandsWhenTooManyAreWaiting() throws InterruptedException {
+		// GIVEN
+		ThreadPerCommandExecutor executor = new ThreadPerCommandExecutor("test", 1, 2);
+		CountDownLatch release = new CountDownLatch(1);
+
+		// WHEN
+		boolean running = executor.execute(1, () -> await(release));
+		boolean firstWaiting = executor.execute(2, () -> {});
+		boolean secondWaiting = executor.execute(3, () -> {});
+		boolean rejected = executor.execute(4, () -> {});
+
+		// THEN
+		assertThat(running, is(true));
+		assertThat(firstWaiting, is(true));
+		assertThat(secondWaiting, is(true));
+		assertThat(rejected, is(false));
+		assertThat(executor.getRejectedTaskCount(), is(1L));
+
+		release.countDown();
+		executor.shutdown();
+		assertThat(executor.awaitTermination(5, TimeUnit.SECONDS), is(true));
+		assertThat(executor.getCompletedTaskCount(), is(3L));
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
@@ -0,0 +1,76 @@
+package de.maxkroner.implementation;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import de.maxkroner.implementation.ShutdownCoordinator.Outcome;
+import de.maxkroner.implementation.ShutdownCoordinator.StepResult;
+
+public class BotHostTest {
+
+	@Test
+	public void botsShareTheResourcesOfTheHost() {
+		// GIVEN
+		BotHost host = new BotHost(2);
+
+		// WHEN
+		Bot joke = new TestBot("JokeBot", host);
+		Bot temp = new TestBot("TempChannels", host);
+
+		// THEN
+		assertThat(host.getBots(), is(Arrays.asList(joke, temp)));
+		// every token has its own rate limits
+		assertTrue(joke.getRateLimitScheduler() != temp.getRateLimitScheduler());
+		assertSame(host.getCommandExecutor(), joke.getCommandExecutor());
+		assertSame(host.getShutdownCoordinator(), temp.getShutdownCoordinator());
+		String text = host.getMetrics().scrape();
+		assertTrue(text, text.contains("bot_messages_seen_total{bot=\"JokeBot\"} 0\n"));
+		assertTrue(text, text.contains("bot_messages_seen_total{bot=\"TempChannels\"} 0\n"));
+		assertTrue(text, text.contains("bot_host_bots 2\n"));
+	}
+
+	@Test
+	public void shutdownStopsTheCommandsFirstAndDrainsTheRateLimiterAfterTheBots() {
+		// GIVEN
+		BotHost host = new BotHost(2);
+		Bot joke = new TestBot("JokeBot", host);
+		new TestBot("TempChannels", host);
+
+		// WHEN
+		List<StepResult> results = joke.shutdown();
+		List<StepResult> again = host.shutdown();
+
+		// THEN
+		List<String> names = new ArrayList<>();
+		for (StepResult result : results) {
+			assertThat(result.getName(), result.getOutcome(), is(Outcome.DONE));
+			names.add(result.getName());
+		}
+		assertThat(names.get(0), is("commands"));
+		assertTrue(names.toString(), names.indexOf("rate limited requests") > names.indexOf("TempChannels outbound messages"));
+		assertTrue(names.toString(), names.contains("JokeBot database"));
+		assertTrue(again.isEmpty());
+		assertThat(host.getCommandExecutor().execute(1, () -> {
+		}), is(false));
+	}
+
+	private static class TestBot extends Bot {
+
+		private TestBot(String botName, BotHost host) {
+			super(botName, host);
+		}
+
+		@Override
+		public void disconnect() {
+		}
+	}
+
+}
@@ -0,0 +1,73 @@
+package de.maxkroner.implementation;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+public class EventLagWatchdogTest {
+
+	@Test
+	public void snowflakeTimestamp() {
+		// example from the Discord API documentation
+		assertThat(EventLagWatchdog.timestampOf(175928847299117063L), is(1462015105796L));
+	}
+
+	@Test
+	public void lagIsRecorded() {
+		// GIVEN
+		EventLagWatchdog watchdog = new EventLagWatchdog("de.maxkroner", 5000);
+
+		// WHEN
+		watchdog.recordLag(System.currentTimeMillis() - 2000);
+		watchdog.recordLag(System.currentTimeMillis() + 1000);
+
+		// THEN
+		assertThat(watchdog.getLagHistogram().getCount(), is(2L));
+		assertTrue(watchdog.getLagHistogram().getMaxMicros() >= 2000000);
+	}
+
+	@Test
+	public void blockedHandlerIsDumped() throws InterruptedException {
+		// GIVEN
+		EventLagWatchdog watchdog = new EventLagWatchdog("de.maxkroner", 5000);
+		CountDownLatch registered = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		Thread handler = new Thread(() -> blockingHandler(watchdog, registered, release), "dispatcher-1");
+		handler.start();
+		registered.await();
+
+		try {
+			// WHEN
+			long now = System.currentTimeMillis();
+			List<String> first = watchdog.check(now);
+			List<String> second = watchdog.check(now + 6000);
+			List<String> third = watchdog.check(now + 7000);
+
+			// THEN
+			assertThat(first, is(Collections.<String> emptyList()));
+			assertThat(second, is(Collections.singletonList("dispatcher-1")));
+			// dumps are throttled
+			assertThat(third, is(Collections.<String> emptyList()));
+		} finally {
+			release.countDown();
+			handler.join();
+		}
+	}
+
+	private static void blockingHandler(EventLagWatchdog watchdog, CountDownLatch registered, CountDownLatch release) {
+		watchdog.registerDispatcherThread();
+		registered.countDown();
+		try {
+			release.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
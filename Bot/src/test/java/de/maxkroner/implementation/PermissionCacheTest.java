@@ -0,0 +1,100 @@
+package de.maxkroner.implementation;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import java.lang.reflect.Proxy;
+import java.util.EnumSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import sx.blah.discord.handle.obj.IChannel;
+import sx.blah.discord.handle.obj.IGuild;
+import sx.blah.discord.handle.obj.Permissions;
+
+public class PermissionCacheTest {
+
+	@Test
+	public void resolvePermissionsOncePerChannel() {
+		// GIVEN
+		AtomicInteger resolved = new AtomicInteger();
+		PermissionCache cache = new PermissionCache(channel -> {
+			resolved.incrementAndGet();
+			return EnumSet.of(Permissions.SEND_MESSAGES);
+		});
+		IChannel channel1 = channel(1, 10, false);
+		IChannel channel2 = channel(1, 11, false);
+
+		// WHEN
+		cache.hasPermission(channel1, Permissions.SEND_MESSAGES);
+		cache.hasPermission(channel1, Permissions.EMBED_LINKS);
+		cache.hasPermission(channel2, Permissions.SEND_MESSAGES);
+
+		// THEN
+		assertThat(resolved.get(), is(2));
+		assertThat(cache.hasPermission(channel1, Permissions.SEND_MESSAGES), is(true));
+		assertThat(cache.hasPermission(channel1, Permissions.EMBED_LINKS), is(false));
+		assertThat(cache.size(), is(2));
+	}
+
+	@Test
+	public void resolveAgainAfterInvalidation() {
+		// GIVEN
+		EnumSet<Permissions> permissions = EnumSet.of(Permissions.SEND_MESSAGES);
+		PermissionCache cache = new PermissionCache(channel -> permissions);
+		IChannel channel1 = channel(1, 10, false);
+		IChannel channel2 = channel(1, 11, false);
+		IChannel otherGuild = channel(2, 20, false);
+		cache.hasPermission(channel1, Permissions.SEND_MESSAGES);
+		cache.hasPermission(channel2, Permissions.SEND_MESSAGES);
+		cache.hasPermission(otherGuild, Permissions.SEND_MESSAGES);
+
+		// WHEN
+		permissions.clear();
+		cache.invalidateChannel(1, 10);
+
+		// THEN
+		assertThat(cache.hasPermission(channel1, Permissions.SEND_MESSAGES), is(false));
+		assertThat(cache.hasPermission(channel2, Permissions.SEND_MESSAGES), is(true));
+
+		// WHEN
+		cache.invalidateGuild(1);
+
+		// THEN
+		assertThat(cache.hasPermission(channel2, Permissions.SEND_MESSAGES), is(false));
+		assertThat(cache.hasPermission(otherGuild, Permissions.SEND_MESSAGES), is(true));
+	}
+
+	@Test
+	public void privateChannelsAreAllowed() {
+		// GIVEN
+		PermissionCache cache = new PermissionCache(channel -> EnumSet.noneOf(Permissions.class));
+
+		// THEN
+		assertThat(cache.hasPermission(channel(0, 30, true), Permissions.SEND_MESSAGES), is(true));
+		assertThat(cache.size(), is(0));
+	}
+
+	private static IChannel channel(long guild_id, long channel_id, boolean isPrivate) {
+		IGuild guild = (IGuild) Proxy.newProxyInstance(IGuild.class.getClassLoader(), new Class<?>[] { IGuild.class }, (proxy, method, args) -> {
+			if (method.getName().equals("getLongID")) {
+				return guild_id;
+			}
+			throw new UnsupportedOperationException(method.getName());
+		});
+		return (IChannel) Proxy.newProxyInstance(IChannel.class.getClassLoader(), new Class<?>[] { IChannel.class }, (proxy, method, args) -> {
+			switch (method.getName()) {
+			case "getLongID":
+				return channel_id;
+			case "getGuild":
+				return guild;
+			case "isPrivate":
+				return isPrivate;
+			default:
+				throw new UnsupportedOperationException(method.getName());
+			}
+		});
+	}
+
+}
@@ -0,0 +1,95 @@
+package de.maxkroner.implementation;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+import de.maxkroner.implementation.ShutdownCoordinator.Outcome;
+import de.maxkroner.implementation.ShutdownCoordinator.Phase;
+import de.maxkroner.implementation.ShutdownCoordinator.StepResult;
+
+public class ShutdownCoordinatorTest {
+
+	@Test
+	public void phasesRunInOrder() {
+		// GIVEN
+		ShutdownCoordinator coordinator = new ShutdownCoordinator();
+		List<String> steps = new ArrayList<>();
+		coordinator.register(Phase.CLOSE_DATABASE, "database", timeout -> {
+			steps.add("database");
+			return 0;
+		});
+		coordinator.register(Phase.DRAIN_QUEUES, "messages", timeout -> {
+			steps.add("messages");
+			return 3;
+		});
+		coordinator.register(Phase.STOP_ACCEPTING, "commands", timeout -> {
+			steps.add("commands");
+			return 0;
+		});
+
+		// WHEN
+		List<StepResult> results = coordinator.shutdown();
+
+		// THEN
+		assertThat(steps, is(Arrays.asList("commands", "messages", "database")));
+		assertThat(results.get(1).getOutcome(), is(Outcome.DONE));
+		assertThat(results.get(1).getDropped(), is(3));
+		assertTrue(coordinator.isShutDown());
+		assertTrue(coordinator.shutdown().isEmpty());
+	}
+
+	@Test
+	public void hangingStepIsLeftBehind() {
+		// GIVEN
+		ShutdownCoordinator coordinator = new ShutdownCoordinator();
+		CountDownLatch never = new CountDownLatch(1);
+		coordinator.setBudget(Phase.STOP_SCHEDULERS, 100);
+		coordinator.register(Phase.STOP_SCHEDULERS, "hanging", timeout -> {
+			never.await();
+			return 0;
+		});
+		coordinator.register(Phase.PERSIST_STATE, "state", timeout -> {
+			throw new IllegalStateException("disk full");
+		});
+		coordinator.register(Phase.CLOSE_DATABASE, "database", timeout -> 0);
+
+		// WHEN
+		long start = System.currentTimeMillis();
+		List<StepResult> results = coordinator.shutdown();
+
+		// THEN
+		assertTrue(System.currentTimeMillis() - start < 2000);
+		assertThat(results.get(0).getOutcome(), is(Outcome.TIMED_OUT));
+		assertThat(results.get(1).getOutcome(), is(Outcome.FAILED));
+		assertThat(results.get(2).getOutcome(), is(Outcome.DONE));
+	}
+
+	@Test
+	public void botWithoutMessageWindowShutsDown() {
+		// GIVEN
+		Bot bot = new Bot("ShutdownTest") {
+			@Override
+			public void disconnect() {
+			}
+		};
+		bot.setMessageWindow(0);
+
+		// WHEN
+		List<StepResult> results = bot.shutdown();
+
+		// THEN
+		for (StepResult result : results) {
+			assertThat(result.getName(), result.getOutcome(), is(Outcome.DONE));
+		}
+		assertTrue(bot.getShutdownCoordinator().isShutDown());
+	}
+
+}
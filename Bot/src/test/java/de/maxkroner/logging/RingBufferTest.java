@@ -0,0 +1,91 @@
+package de.maxkroner.logging;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class RingBufferTest {
+
+	@Test
+	public void takesBufferedItemsInOrderAcrossTheEnd() {
+		// GIVEN
+		RingBuffer<String> buffer = new RingBuffer<>(3);
+		List<String> batch = new ArrayList<>();
+		buffer.put("a", false);
+		buffer.put("b", false);
+		buffer.take(batch, 1);
+
+		// WHEN
+		buffer.put("c", false);
+		buffer.put("d", false);
+		int taken = buffer.take(batch, 10);
+
+		// THEN
+		assertThat(taken, is(3));
+		assertThat(batch, is(Arrays.asList("a", "b", "c", "d")));
+	}
+
+	@Test
+	public void droppableItemsAreDroppedWhenFull() {
+		// GIVEN
+		RingBuffer<String> buffer = new RingBuffer<>(1);
+		buffer.put("info", false);
+
+		// WHEN
+		boolean put = buffer.put("debug", true);
+
+		// THEN
+		assertFalse(put);
+		assertThat(buffer.size(), is(1));
+	}
+
+	@Test
+	public void blockedProducerContinuesAfterTake() throws InterruptedException {
+		// GIVEN
+		RingBuffer<String> buffer = new RingBuffer<>(1);
+		buffer.put("first", false);
+		CountDownLatch done = new CountDownLatch(1);
+		Thread producer = new Thread(() -> {
+			buffer.put("second", false);
+			done.countDown();
+		});
+		producer.start();
+		assertFalse(done.await(100, TimeUnit.MILLISECONDS));
+
+		// WHEN
+		List<String> batch = new ArrayList<>();
+		buffer.take(batch, 10);
+
+		// THEN
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		assertThat(buffer.size(), is(1));
+	}
+
+	@Test
+	public void closedBufferIsDrainedBeforeTakeReturnsZero() {
+		// GIVEN
+		RingBuffer<String> buffer = new RingBuffer<>(4);
+		buffer.put("last", false);
+
+		// WHEN
+		buffer.close();
+		List<String> batch = new ArrayList<>();
+
+		// THEN
+		assertFalse(buffer.put("late", false));
+		assertThat(buffer.take(batch, 10), is(1));
+		buffer.consumed();
+		assertThat(buffer.take(batch, 10), is(0));
+		assertThat(batch, is(Arrays.asList("last")));
+	}
+
+}
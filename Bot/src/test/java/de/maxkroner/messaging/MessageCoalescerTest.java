@@ -0,0 +1,154 @@
+package de.maxkroner.messaging;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import de.maxkroner.messaging.MessageCoalescer.OutboundMessage;
+import sx.blah.discord.handle.obj.IChannel;
+
+public class MessageCoalescerTest {
+
+	@Test
+	public void mergeAdjacentMessages() {
+		// WHEN
+		List<OutboundMessage> merged = MessageCoalescer.coalesce(messages("a", "b", "c"));
+
+		// THEN
+		assertThat(contents(merged), is(Arrays.asList("a\nb\nc")));
+	}
+
+	@Test
+	public void keepMessagesWithinLimit() {
+		// GIVEN
+		String half = repeat('x', 1000);
+
+		// WHEN
+		List<OutboundMessage> merged = MessageCoalescer.coalesce(messages(half, half, "a", repeat('y', 2001), "b"));
+
+		// THEN
+		assertThat(contents(merged), is(Arrays.asList(half, half + "\na", repeat('y', 2001), "b")));
+		for (OutboundMessage message : merged.subList(0, 2)) {
+			assertThat(message.content.length() <= MessageCoalescer.MAX_MESSAGE_LENGTH, is(true));
+		}
+	}
+
+	@Test
+	public void doNotMergeTextToSpeech() {
+		// GIVEN
+		List<OutboundMessage> messages = messages("a", "b");
+		messages.add(1, new OutboundMessage("joke", true, Priority.NORMAL));
+
+		// WHEN
+		List<OutboundMessage> merged = MessageCoalescer.coalesce(messages);
+
+		// THEN
+		assertThat(contents(merged), is(Arrays.asList("a", "joke", "b")));
+		assertThat(merged.get(1).tts, is(true));
+	}
+
+	@Test
+	public void keepEmbedsInOrder() throws InterruptedException {
+		// GIVEN
+		List<String> sent = Collections.synchronizedList(new ArrayList<>());
+		MessageCoalescer coalescer = new MessageCoalescer((message, channel, tts, priority) -> sent.add(message), 50);
+		IChannel channel = channel(1);
+
+		// WHEN
+		coalescer.sendMessage("new round", channel, false);
+		coalescer.sendMessage("what is it?", channel, false);
+		coalescer.send(channel, Priority.NORMAL, () -> sent.add("image"));
+		coalescer.sendMessage("hint", channel, false);
+		coalescer.shutdown();
+
+		// THEN
+		assertThat(coalescer.awaitTermination(5, TimeUnit.SECONDS), is(true));
+		assertThat(sent, is(Arrays.asList("new round\nwhat is it?", "image", "hint")));
+	}
+
+	@Test
+	public void sendMessagesOfWindowTogether() throws InterruptedException {
+		// GIVEN
+		List<String> sent = Collections.synchronizedList(new ArrayList<>());
+		MessageCoalescer coalescer = new MessageCoalescer((message, channel, tts, priority) -> sent.add(channel.getLongID() + ":" + message), 50);
+		IChannel channel1 = channel(1);
+		IChannel channel2 = channel(2);
+
+		// WHEN
+		coalescer.sendMessage("a", channel1, false);
+		coalescer.sendMessage("x", channel2, false);
+		coalescer.sendMessage("b", channel1, false);
+		coalescer.shutdown();
+
+		// THEN
+		assertThat(coalescer.awaitTermination(5, TimeUnit.SECONDS), is(true));
+		assertThat(sent, is(Arrays.asList("1:a\nb", "2:x")));
+	}
+
+	@Test
+	public void highPriorityEndsWindow() throws InterruptedException {
+		// GIVEN
+		List<String> sent = Collections.synchronizedList(new ArrayList<>());
+		CountDownLatch latch = new CountDownLatch(1);
+		MessageCoalescer coalescer = new MessageCoalescer((message, channel, tts, priority) -> {
+			sent.add(message + ":" + priority);
+			latch.countDown();
+		}, 60000);
+		IChannel channel = channel(1);
+
+		// WHEN
+		coalescer.sendMessage("hint", channel, false, Priority.NORMAL);
+		coalescer.sendMessage("right guess", channel, false, Priority.HIGH);
+
+		// THEN
+		assertThat(latch.await(5, TimeUnit.SECONDS), is(true));
+		assertThat(sent, is(Arrays.asList("hint\nright guess:HIGH")));
+	}
+
+	private static IChannel channel(long id) {
+		return (IChannel) Proxy.newProxyInstance(IChannel.class.getClassLoader(), new Class<?>[] { IChannel.class }, (proxy, method, args) -> {
+			switch (method.getName()) {
+			case "getLongID":
+				return id;
+			case "hashCode":
+				return Long.hashCode(id);
+			case "equals":
+				return proxy == args[0];
+			default:
+				throw new UnsupportedOperationException(method.getName());
+			}
+		});
+	}
+
+	private static List<OutboundMessage> messages(String... contents) {
+		List<OutboundMessage> messages = new ArrayList<>();
+		for (String content : contents) {
+			messages.add(new OutboundMessage(content, false, Priority.NORMAL));
+		}
+		return messages;
+	}
+
+	private static List<String> contents(List<OutboundMessage> messages) {
+		List<String> contents = new ArrayList<>();
+		for (OutboundMessage message : messages) {
+			contents.add(message.content);
+		}
+		return contents;
+	}
+
+	private static String repeat(char character, int count) {
+		char[] chars = new char[count];
+		Arrays.fill(chars, character);
+		return new String(chars);
+	}
+
+}
@@ -0,0 +1,135 @@
+package de.maxkroner.messaging;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class RateLimitSchedulerTest {
+
+	@Test
+	public void requestsOfRouteStayWithinBudget() throws Exception {
+		// GIVEN
+		RateLimitScheduler scheduler = new RateLimitScheduler(2, 300, 100, 1000, 2);
+		List<Long> sentAt = Collections.synchronizedList(new ArrayList<>());
+		long start = System.nanoTime();
+
+		// WHEN
+		List<CompletableFuture<Void>> futures = new ArrayList<>();
+		for (int i = 0; i < 4; i++) {
+			futures.add(scheduler.submit("route", Priority.NORMAL, () -> {
+				sentAt.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+			}));
+		}
+		CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(5, TimeUnit.SECONDS);
+
+		// THEN
+		// 2 requests right away, then one every 150ms
+		assertTrue(sentAt.get(1) < 100);
+		assertTrue(sentAt.get(2) >= 140);
+		assertTrue(sentAt.get(3) >= 290);
+		assertThat(scheduler.getQueueWaitStatistics(Priority.NORMAL).getCount(), is(4L));
+		assertThat(scheduler.getQueuedRequestCount(), is(0));
+		scheduler.shutdown();
+	}
+
+	@Test
+	public void higherPriorityIsSentFirst() throws Exception {
+		// GIVEN
+		RateLimitScheduler scheduler = new RateLimitScheduler(100, 1000, 1, 200, 2);
+		List<String> sent = Collections.synchronizedList(new ArrayList<>());
+		scheduler.submit("route1", Priority.NORMAL, () -> {
+			sent.add("first");
+		}).get(5, TimeUnit.SECONDS);
+
+		// WHEN
+		CompletableFuture<Void> low = scheduler.submit("route2", Priority.LOW, () -> {
+			sent.add("warning");
+		});
+		CompletableFuture<Void> high = scheduler.submit("route3", Priority.HIGH, () -> {
+			sent.add("answer");
+		});
+		CompletableFuture.allOf(low, high).get(5, TimeUnit.SECONDS);
+
+		// THEN
+		assertThat(sent, is(Arrays.asList("first", "answer", "warning")));
+		assertTrue(scheduler.getQueueWaitStatistics(Priority.LOW).getMaxMillis() > scheduler.getQueueWaitStatistics(Priority.HIGH).getMaxMillis());
+		scheduler.shutdown();
+	}
+
+	@Test
+	public void schedulersSharingThreadsHaveTheirOwnGlobalBudget() throws Exception {
+		// GIVEN
+		RateLimitScheduler threads = new RateLimitScheduler(5, 1000, 1, 60000, 2);
+		RateLimitScheduler other = new RateLimitScheduler(5, 1000, 1, 60000, threads);
+		threads.submit("route1", Priority.NORMAL, () -> "first").get(5, TimeUnit.SECONDS);
+
+		// WHEN
+		CompletableFuture<String> blocked = threads.submit("route2", Priority.NORMAL, () -> "blocked");
+		CompletableFuture<String> sent = other.submit("route2", Priority.NORMAL, () -> "sent");
+
+		// THEN
+		assertThat(sent.get(5, TimeUnit.SECONDS), is("sent"));
+		assertThat(blocked.isDone(), is(false));
+		other.drain(1, TimeUnit.SECONDS);
+		threads.shutdown();
+	}
+
+	@Test
+	public void drainFailsRequestsStillWaiting() throws Exception {
+		// GIVEN
+		RateLimitScheduler scheduler = new RateLimitScheduler(1, 60000, 50, 1000, 1);
+		scheduler.submit("route", Priority.NORMAL, () -> "first").get(5, TimeUnit.SECONDS);
+		CompletableFuture<String> waiting = scheduler.submit("route", Priority.NORMAL, () -> "waiting");
+
+		// WHEN
+		int dropped = scheduler.drain(50, TimeUnit.MILLISECONDS);
+
+		// THEN
+		assertThat(dropped, is(1));
+		assertThat(waiting.isCompletedExceptionally(), is(true));
+		assertThat(scheduler.getQueuedRequestCount(), is(0));
+	}
+
+	@Test
+	public void failedRequestCompletesExceptionally() throws Exception {
+		// GIVEN
+		RateLimitScheduler scheduler = new RateLimitScheduler(5, 1000, 50, 1000, 1);
+
+		// WHEN
+		CompletableFuture<String> failed = scheduler.submit("route", Priority.NORMAL, () -> {
+			throw new IllegalStateException("failed");
+		});
+		CompletableFuture<String> next = scheduler.submit("route", Priority.NORMAL, () -> "next");
+
+		// THEN
+		assertThat(next.get(5, TimeUnit.SECONDS), is("next"));
+		assertThat(failed.isCompletedExceptionally(), is(true));
+		scheduler.shutdown();
+	}
+
+	@Test
+	public void routeIsFreedAfterError() throws Exception {
+		// GIVEN
+		RateLimitScheduler scheduler = new RateLimitScheduler(5, 1000, 50, 1000, 1);
+
+		// WHEN
+		scheduler.submit("route", Priority.NORMAL, () -> {
+			throw new AssertionError("failed");
+		});
+		CompletableFuture<String> next = scheduler.submit("route", Priority.NORMAL, () -> "next");
+
+		// THEN
+		assertThat(next.get(5, TimeUnit.SECONDS), is("next"));
+		scheduler.shutdown();
+	}
+
+}
@@ -0,0 +1,70 @@
+package de.maxkroner.metrics;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+	@Test
+	public void percentilesAreWithinBucketPrecision() {
+		// GIVEN
+		LatencyHistogram histogram = new LatencyHistogram();
+
+		// WHEN
+		for (int i = 1; i <= 1000; i++) {
+			histogram.record(i, TimeUnit.MILLISECONDS);
+		}
+
+		// THEN
+		assertThat(histogram.getCount(), is(1000L));
+		assertThat(histogram.getMaxMicros(), is(1000000L));
+		assertWithinPrecision(histogram.getPercentileMicros(50), 500000);
+		assertWithinPrecision(histogram.getPercentileMicros(99), 990000);
+		assertThat(histogram.getPercentileMicros(100), is(1000000L));
+	}
+
+	@Test
+	public void smallValuesAreExact() {
+		// GIVEN
+		LatencyHistogram histogram = new LatencyHistogram();
+
+		// WHEN
+		histogram.recordMicros(3);
+		histogram.recordMicros(3);
+		histogram.recordMicros(7);
+
+		// THEN
+		assertThat(histogram.getPercentileMicros(50), is(3L));
+		assertThat(histogram.getPercentileMicros(90), is(7L));
+		assertThat(histogram.getBuckets().length, is(2));
+		assertThat(new LatencyHistogram().getPercentileMicros(99), is(0L));
+	}
+
+	@Test
+	public void subtractLeavesNewerValues() {
+		// GIVEN
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.recordMicros(5000);
+		LatencyHistogram earlier = new LatencyHistogram();
+		earlier.add(histogram);
+		histogram.recordMicros(3);
+
+		// WHEN
+		histogram.subtract(earlier);
+
+		// THEN
+		assertThat(histogram.getCount(), is(1L));
+		assertThat(histogram.getTotalMicros(), is(3L));
+		assertThat(histogram.getPercentileMicros(99), is(3L));
+	}
+
+	private static void assertWithinPrecision(long actual, long expected) {
+		assertTrue(actual + " is not close to " + expected, actual >= expected && actual <= expected * 1.07);
+	}
+
+}
@@ -0,0 +1,152 @@
+package de.maxkroner.metrics;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class MetricsRegistryTest {
+
+	@Test
+	public void writesPrometheusTextFormat() {
+		// GIVEN
+		MetricsRegistry registry = new MetricsRegistry();
+		registry.counter("bot_messages_seen_total", "Messages").add(3);
+		registry.gauge("bot_queue_depth", "Queue", () -> 2, "stage", "rate_limit");
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(2, TimeUnit.SECONDS);
+		registry.histograms("bot_command_seconds", "Commands", "command", () -> Collections.singletonMap("joke", histogram));
+
+		// WHEN
+		String text = registry.scrape();
+
+		// THEN
+		assertTrue(text, text.contains("# TYPE bot_messages_seen_total counter\nbot_messages_seen_total 3\n"));
+		assertTrue(text, text.contains("bot_queue_depth{stage=\"rate_limit\"} 2\n"));
+		assertTrue(text, text.contains("# TYPE bot_command_seconds summary\n"));
+		assertTrue(text, text.contains("bot_command_seconds{command=\"joke\",quantile=\"0.99\"} 2\n"));
+		assertTrue(text, text.contains("bot_command_seconds_count{command=\"joke\"} 1\n"));
+	}
+
+	@Test
+	public void valuesAndMergedHistograms() {
+		// GIVEN
+		MetricsRegistry registry = new MetricsRegistry();
+		registry.counter("bot_messages_seen_total", "Messages").add(3);
+		registry.gauge("bot_queue_depth", "Queue", () -> 2, "stage", "rate_limit");
+		LatencyHistogram joke = new LatencyHistogram();
+		joke.recordMicros(10);
+		LatencyHistogram help = new LatencyHistogram();
+		help.recordMicros(20);
+		registry.histograms("bot_command_seconds", "Commands", "command", () -> Collections.singletonMap("joke", joke));
+		registry.histogram("bot_command_seconds", "Commands", () -> help, "command", "help");
+
+		// WHEN
+		LatencyHistogram merged = registry.mergeHistograms("bot_command_seconds");
+
+		// THEN
+		assertThat(registry.getValues().get("bot_messages_seen_total"), is(3.0));
+		assertThat(registry.getValues().get("bot_queue_depth{stage=\"rate_limit\"}"), is(2.0));
+		assertThat(registry.getValues().size(), is(2));
+		assertThat(merged.getCount(), is(2L));
+		assertThat(merged.getMaxMicros(), is(20L));
+		assertThat(registry.mergeHistograms("unknown").getCount(), is(0L));
+	}
+
+	@Test
+	public void sameMetricIsRegisteredOnce() {
+		// GIVEN
+		MetricsRegistry registry = new MetricsRegistry();
+
+		// WHEN
+		Counter first = registry.counter("bot_commands_total", "Commands", "command", "joke");
+		Counter second = registry.counter("bot_commands_total", "Commands", "command", "joke");
+
+		// THEN
+		assertSame(first, second);
+	}
+
+	@Test
+	public void typeOfANameCantChange() {
+		// GIVEN
+		MetricsRegistry registry = new MetricsRegistry();
+		registry.counter("bot_games", "Games");
+
+		// WHEN
+		try {
+			registry.gauge("bot_games", "Games", () -> 1);
+			fail("IllegalArgumentException expected!");
+		} catch (IllegalArgumentException e) {
+			// THEN
+			assertTrue(registry.scrape().contains("# TYPE bot_games counter"));
+		}
+	}
+
+	@Test
+	public void serverAnswersScrapes() throws IOException {
+		// GIVEN
+		MetricsRegistry registry = new MetricsRegistry();
+		registry.counter("bot_messages_seen_total", "Messages").increment();
+		MetricsServer server = new MetricsServer(registry, 0);
+
+		try {
+			// WHEN
+			HttpURLConnection connection = (HttpURLConnection) new URL("http://127.0.0.1:" + server.getPort() + "/metrics").openConnection();
+			ByteArrayOutputStream body = new ByteArrayOutputStream();
+			try (InputStream in = connection.getInputStream()) {
+				byte[] buffer = new byte[4096];
+				int read;
+				while ((read = in.read(buffer)) != -1) {
+					body.write(buffer, 0, read);
+				}
+			}
+
+			// THEN
+			assertThat(connection.getResponseCode(), is(200));
+			assertTrue(connection.getContentType().startsWith("text/plain; version=0.0.4"));
+			assertTrue(new String(body.toByteArray(), StandardCharsets.UTF_8).contains("bot_messages_seen_total 1\n"));
+		} finally {
+			server.stop();
+		}
+	}
+
+	@Test
+	public void viewsLabelTheirMetricsAndOnlySeeTheirOwn() {
+		// GIVEN
+		MetricsRegistry registry = new MetricsRegistry();
+		MetricsRegistry joke = registry.withLabels("bot", "JokeBot");
+		MetricsRegistry temp = registry.withLabels("bot", "TempChannels");
+
+		// WHEN
+		joke.counter("bot_messages_seen_total", "Messages").add(3);
+		temp.counter("bot_messages_seen_total", "Messages").add(5);
+		temp.gauge("bot_shard_up", "Up", () -> 1, "shard", "0");
+		joke.histogram("bot_command_seconds", "Commands").record(1, TimeUnit.SECONDS);
+		temp.histogram("bot_command_seconds", "Commands").record(1, TimeUnit.SECONDS);
+		temp.histogram("bot_command_seconds", "Commands").record(2, TimeUnit.SECONDS);
+
+		// THEN
+		String text = registry.scrape();
+		assertTrue(text, text.contains("# TYPE bot_messages_seen_total counter\nbot_messages_seen_total{bot=\"JokeBot\"} 3\nbot_messages_seen_total{bot=\"TempChannels\"} 5\n"));
+		assertTrue(text, text.contains("bot_shard_up{bot=\"TempChannels\",shard=\"0\"} 1\n"));
+		assertThat(joke.getValues().keySet(), is(Collections.singleton("bot_messages_seen_total{bot=\"JokeBot\"}")));
+		assertThat(temp.getValues().size(), is(2));
+		assertThat(registry.getValues().size(), is(3));
+		assertThat(joke.mergeHistograms("bot_command_seconds").getCount(), is(1L));
+		assertThat(temp.mergeHistograms("bot_command_seconds").getCount(), is(2L));
+		assertThat(registry.mergeHistograms("bot_command_seconds").getCount(), is(3L));
+	}
+
+}
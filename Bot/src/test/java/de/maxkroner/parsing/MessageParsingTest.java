@@ -0,0 +1,120 @@
+package de.maxkroner.parsing;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class MessageParsingTest {
+	private static final Set<String> COMMANDS = new HashSet<>(Arrays.asList("c", "create", "kick"));
+	private static final char[] ALPHABET = { 'a', 'b', 'c', '!', '-', '"', ' ', ' ', ' ', '\t', '\u00e4' };
+
+	@Test
+	public void argumentStyle() {
+		// WHEN
+		Command command = MessageParsing.parseMessageWithCommandSet("!kick  @user1 \"user two\"  ab\"c d\"e", COMMANDS, "!", '-');
+
+		// THEN
+		assertThat(command.getName(), is("kick"));
+		assertThat(command.hasOptions(), is(false));
+		assertThat(command.getArguments().get(), is(Arrays.asList("@user1", "user two", "abc d", "e")));
+	}
+
+	@Test
+	public void handlersCanChangeTheArguments() {
+		// GIVEN
+		Command command = MessageParsing.parseMessageWithCommandSet("!create pic animals \"hard mode\"", COMMANDS, "!", '-');
+		List<String> arguments = command.getArguments().get();
+
+		// WHEN
+		arguments.remove("pic");
+		arguments.add("-x");
+		arguments.set(0, "plants");
+
+		// THEN
+		assertThat(arguments, is(Arrays.asList("plants", "hard mode", "-x")));
+		assertThat(command.getArguments().get(), is(arguments));
+	}
+
+	@Test
+	public void optionStyle() {
+		// WHEN
+		Command command = MessageParsing.parseMessageWithCommandSet("!c -n \"my channel\" -p all -t 5 -", COMMANDS, "!", '-');
+
+		// THEN
+		assertThat(command.getName(), is("c"));
+		assertThat(command.hasArguments(), is(false));
+		List<CommandOption> options = command.getCommandOptions().get();
+		assertThat(options.size(), is(3));
+		assertThat(options.get(0).getCommandOptionName(), is("n"));
+		assertThat(options.get(0).getParameterList(), is(Arrays.asList("my channel")));
+		assertThat(options.get(1).getCommandOptionName(), is("p"));
+		assertThat(options.get(1).getParameterList(), is(Arrays.asList("all")));
+		assertThat(options.get(2).getCommandOptionName(), is("t"));
+		assertThat(options.get(2).getParameterList(), is(Arrays.asList("5")));
+	}
+
+	@Test
+	public void noCommand() {
+		assertThat(MessageParsing.parseMessageWithCommandSet("hello", COMMANDS, "!", '-'), is(nullValue()));
+		assertThat(MessageParsing.parseMessageWithCommandSet("!", COMMANDS, "!", '-'), is(nullValue()));
+		assertThat(MessageParsing.parseMessageWithCommandSet("!unknown a b", COMMANDS, "!", '-'), is(nullValue()));
+	}
+
+	@Test
+	public void trailingSpace() {
+		// the old parser failed with an IndexOutOfBoundsException here
+		// WHEN
+		Command command = MessageParsing.parseMessageWithCommandSet("!create ", COMMANDS, "!", '-');
+
+		// THEN
+		assertThat(command.getName(), is("create"));
+		assertThat(command.hasOptionsOrArguments(), is(false));
+	}
+
+	@Test
+	public void sameResultAsLegacyParser() {
+		// GIVEN
+		Random random = new Random(42);
+		String[] heads = { "!c ", "!create ", "!kick ", "!c -", "!create -", "!unknown ", "!c", "!", "?c ", "!!c " };
+
+		for (int i = 0; i < 20000; i++) {
+			StringBuilder message = new StringBuilder(heads[random.nextInt(heads.length)]);
+			int length = random.nextInt(24);
+			for (int j = 0; j < length; j++) {
+				message.append(ALPHABET[random.nextInt(ALPHABET.length)]);
+			}
+
+			// WHEN
+			Command expected;
+			try {
+				expected = LegacyMessageParsing.parseMessageWithCommandSet(message.toString(), COMMANDS, "!", '-');
+			} catch (StringIndexOutOfBoundsException e) {
+				continue;
+			}
+			Command actual = MessageParsing.parseMessageWithCommandSet(message.toString(), COMMANDS, "!", '-');
+
+			// THEN
+			assertThat(message.toString(), describe(actual), is(describe(expected)));
+		}
+	}
+
+	private static String describe(Command command) {
+		if (command == null) {
+			return "null";
+		}
+		List<String> options = new ArrayList<>();
+		command.getCommandOptions().ifPresent(list -> list.forEach(option -> options.add(option.getCommandOptionName() + "=" + option.getParameterList())));
+		return "[" + command.getName() + "] options: " + (command.hasOptions() ? options : "none") + " arguments: "
+				+ command.getArguments().map(List::toString).orElse("none");
+	}
+
+}
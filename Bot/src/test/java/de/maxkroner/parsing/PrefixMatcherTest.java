@@ -0,0 +1,82 @@
+package de.maxkroner.parsing;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class PrefixMatcherTest {
+	private static final long GUILD_1 = 367665720055824384L;
+	private static final long GUILD_2 = 250340229708251136L;
+	private static final long GUILD_3 = 1L;
+
+	@Test
+	public void defaultPrefix() {
+		// GIVEN
+		PrefixMatcher matcher = new PrefixMatcher("!");
+
+		// THEN
+		assertThat(matcher.couldBeCommand(GUILD_1, "!c -n test"), is(true));
+		assertThat(matcher.couldBeCommand(GUILD_1, "!"), is(false));
+		assertThat(matcher.couldBeCommand(GUILD_1, ""), is(false));
+		assertThat(matcher.couldBeCommand(GUILD_1, "hello !c"), is(false));
+		assertThat(matcher.getPrefix(GUILD_1), is("!"));
+	}
+
+	@Test
+	public void guildPrefixes() {
+		// GIVEN
+		Map<Long, String> prefixes = new HashMap<>();
+		prefixes.put(GUILD_1, "tc.");
+		prefixes.put(GUILD_2, "$");
+		PrefixMatcher matcher = new PrefixMatcher("!", prefixes);
+
+		// THEN
+		assertThat(matcher.couldBeCommand(GUILD_1, "tc.create"), is(true));
+		assertThat(matcher.couldBeCommand(GUILD_1, "!create"), is(false));
+		assertThat(matcher.couldBeCommand(GUILD_2, "$create"), is(true));
+		assertThat(matcher.couldBeCommand(GUILD_2, "tc.create"), is(false));
+		assertThat(matcher.couldBeCommand(GUILD_3, "!create"), is(true));
+		assertThat(matcher.couldBeCommand(GUILD_3, "$create"), is(false));
+	}
+
+	@Test
+	public void changePrefix() {
+		// GIVEN
+		PrefixMatcher matcher = new PrefixMatcher("!");
+
+		// WHEN
+		matcher.setPrefix(GUILD_1, "?");
+
+		// THEN
+		assertThat(matcher.couldBeCommand(GUILD_1, "?uptime"), is(true));
+		assertThat(matcher.couldBeCommand(GUILD_1, "!uptime"), is(false));
+		assertThat(matcher.couldBeCommand(GUILD_2, "!uptime"), is(true));
+
+		// WHEN
+		matcher.removePrefix(GUILD_1);
+
+		// THEN
+		assertThat(matcher.couldBeCommand(GUILD_1, "!uptime"), is(true));
+	}
+
+	@Test
+	public void manyGuilds() {
+		// GIVEN
+		Map<Long, String> prefixes = new HashMap<>();
+		for (long guild_id = 1; guild_id <= 1000; guild_id++) {
+			prefixes.put(guild_id << 22, "p" + guild_id);
+		}
+		PrefixMatcher matcher = new PrefixMatcher("!", prefixes);
+
+		// THEN
+		for (long guild_id = 1; guild_id <= 1000; guild_id++) {
+			assertThat(matcher.getPrefix(guild_id << 22), is("p" + guild_id));
+		}
+		assertThat(matcher.getPrefix(1001L << 22), is("!"));
+	}
+
+}
@@ -0,0 +1,67 @@
+package de.maxkroner.sharding;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import de.maxkroner.metrics.MetricsRegistry;
+import de.maxkroner.sharding.ShardMonitor.Health;
+
+public class ShardMonitorTest {
+	private static final long[] GUILDS = { 175928847299117063L, 81384788765712384L, 290926798626357250L, 41771983423143937L, 1L << 22, 2L << 22, 3L << 22 };
+
+	@Test
+	public void messagesAndStateAreRoutedToTheirShard() {
+		// GIVEN
+		StandInShardedClient client = new StandInShardedClient(3, GUILDS);
+		ShardMonitor monitor = new ShardMonitor(client, 1000);
+		ShardedLongMap<String> settings = new ShardedLongMap<>(1);
+		for (long guild_id : GUILDS) {
+			settings.put(guild_id, "settings of " + guild_id);
+		}
+
+		// WHEN
+		settings.setShardCount(monitor.getShardCount());
+		for (long guild_id : GUILDS) {
+			monitor.messageReceived(guild_id);
+		}
+
+		// THEN
+		for (int shard = 0; shard < 3; shard++) {
+			assertThat(monitor.getMessageCount(shard), is((long) client.getGuildCount(shard)));
+			assertThat(settings.sizeOfShard(shard), is(client.getGuildCount(shard)));
+			for (long guild_id : client.getGuilds(shard)) {
+				assertThat(monitor.shardOf(guild_id), is(shard));
+				assertThat(settings.get(guild_id), is("settings of " + guild_id));
+			}
+		}
+		assertThat(settings.size(), is(GUILDS.length));
+	}
+
+	@Test
+	public void healthPerShard() {
+		// GIVEN
+		StandInShardedClient client = new StandInShardedClient(3, GUILDS);
+		ShardMonitor monitor = new ShardMonitor(client, 1000);
+		MetricsRegistry metrics = new MetricsRegistry();
+		monitor.registerMetrics(metrics);
+
+		// WHEN
+		client.connect(0, 40);
+		client.connect(1, 2500);
+		client.disconnect(2);
+		monitor.disconnected(2);
+
+		// THEN
+		assertThat(monitor.getHealth(0), is(Health.HEALTHY));
+		assertThat(monitor.getHealth(1), is(Health.SLOW));
+		assertThat(monitor.getHealth(2), is(Health.DISCONNECTED));
+		String text = metrics.scrape();
+		assertTrue(text, text.contains("bot_shard_up{shard=\"0\"} 1\n"));
+		assertTrue(text, text.contains("bot_shard_up{shard=\"1\"} 0\n"));
+		assertTrue(text, text.contains("bot_shard_disconnects{shard=\"2\"} 1\n"));
+	}
+
+}
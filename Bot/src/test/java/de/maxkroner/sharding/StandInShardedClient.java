@@ -0,0 +1,71 @@
+package de.maxkroner.sharding;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Shards of a client that only exists in the test, guilds are assigned like Discord does it.
+ *
+ * @author kroner
+ *
+ */
+public class StandInShardedClient implements IShardedClient {
+	private final List<List<Long>> guilds = new ArrayList<>();
+	private final boolean[] ready;
+	private final boolean[] loggedIn;
+	private final long[] responseTimes;
+
+	public StandInShardedClient(int shardCount, long... guild_ids) {
+		for (int i = 0; i < shardCount; i++) {
+			guilds.add(new ArrayList<>());
+		}
+		for (long guild_id : guild_ids) {
+			// from the Discord documentation, independent of Shards.shardOf
+			guilds.get((int) ((guild_id >> 22) % shardCount)).add(guild_id);
+		}
+		this.ready = new boolean[shardCount];
+		this.loggedIn = new boolean[shardCount];
+		this.responseTimes = new long[shardCount];
+	}
+
+	public void connect(int shard, long responseTime) {
+		loggedIn[shard] = true;
+		ready[shard] = true;
+		responseTimes[shard] = responseTime;
+	}
+
+	public void disconnect(int shard) {
+		loggedIn[shard] = false;
+		ready[shard] = false;
+	}
+
+	public List<Long> getGuilds(int shard) {
+		return guilds.get(shard);
+	}
+
+	@Override
+	public int getShardCount() {
+		return guilds.size();
+	}
+
+	@Override
+	public boolean isReady(int shard) {
+		return ready[shard];
+	}
+
+	@Override
+	public boolean isLoggedIn(int shard) {
+		return loggedIn[shard];
+	}
+
+	@Override
+	public long getResponseTime(int shard) {
+		return responseTimes[shard];
+	}
+
+	@Override
+	public int getGuildCount(int shard) {
+		return guilds.get(shard).size();
+	}
+
+}
@@ -0,0 +1,83 @@
+package de.maxkroner.tracing;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import de.maxkroner.tracing.Tracer.Continuation;
+
+public class TracerTest {
+
+	@Test
+	public void spansFormTree() {
+		// GIVEN
+		Tracer tracer = new Tracer(1, null);
+
+		// WHEN
+		try (Span trace = tracer.startTrace("message")) {
+			trace.setName("joke");
+			try (Span parse = Tracer.span("parse")) {
+			}
+			try (Span handler = Tracer.span("handler joke")) {
+				try (Span query = Tracer.span("db SELECT ?")) {
+				}
+			}
+		}
+
+		// THEN
+		assertFalse(Tracer.isTracing());
+		List<Span> traces = tracer.getSlowestTraces(10);
+		assertThat(traces.size(), is(1));
+		assertTrue(traces.get(0).format().matches("\"joke\"@0\\+\\d+\\[\"parse\"@\\d+\\+\\d+ \"handler joke\"@\\d+\\+\\d+\\[\"db SELECT \\?\"@\\d+\\+\\d+\\]\\]"));
+	}
+
+	@Test
+	public void continuationKeepsTraceOpen() throws InterruptedException {
+		// GIVEN
+		Tracer tracer = new Tracer(1, null);
+		Continuation continuation;
+		try (Span trace = tracer.startTrace("joke")) {
+			continuation = Tracer.capture();
+		}
+		assertTrue(tracer.getSlowestTraces(10).isEmpty());
+
+		// WHEN
+		Thread sender = new Thread(() -> {
+			try (Span span = continuation.resume("rest channels/1/messages")) {
+				assertTrue(Tracer.isTracing());
+			}
+			continuation.release();
+		});
+		sender.start();
+		sender.join();
+
+		// THEN
+		List<Span> traces = tracer.getSlowestTraces(10);
+		assertThat(traces.size(), is(1));
+		assertThat(traces.get(0).getChildren().get(0).getName(), is("rest channels/1/messages"));
+	}
+
+	@Test
+	public void unsampledCommandsAreNotTraced() {
+		// GIVEN
+		Tracer tracer = new Tracer(0, null);
+
+		// WHEN
+		try (Span trace = tracer.startTrace("joke")) {
+			try (Span span = Tracer.span("parse")) {
+				assertFalse(span.isTraced());
+			}
+			assertFalse(trace.isTraced());
+			assertThat(Tracer.capture() == null, is(true));
+		}
+
+		// THEN
+		assertTrue(tracer.getSlowestTraces(10).isEmpty());
+	}
+
+}
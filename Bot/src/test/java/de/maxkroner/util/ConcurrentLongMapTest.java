@@ -0,0 +1,69 @@
+package de.maxkroner.util;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class ConcurrentLongMapTest {
+
+	@Test
+	public void putGetAndRemoveAcrossResizes() {
+		// GIVEN
+		ConcurrentLongMap<String> map = new ConcurrentLongMap<>();
+
+		// WHEN
+		for (long i = 0; i < 1000; i++) {
+			map.put(i << 22, "guild" + i);
+		}
+		for (long i = 0; i < 1000; i += 2) {
+			map.remove(i << 22);
+		}
+
+		// THEN
+		assertThat(map.size(), is(500));
+		assertNull(map.get(0));
+		assertThat(map.get(1L << 22), is("guild1"));
+		assertThat(map.get(999L << 22), is("guild999"));
+	}
+
+	@Test
+	public void removedKeyCanBePutAgain() {
+		// GIVEN
+		ConcurrentLongMap<String> map = new ConcurrentLongMap<>();
+		map.put(42, "a");
+		map.remove(42);
+
+		// WHEN
+		String previous = map.put(42, "b");
+
+		// THEN
+		assertNull(previous);
+		assertThat(map.get(42), is("b"));
+		assertThat(map.size(), is(1));
+	}
+
+	@Test
+	public void forEachVisitsAllMappings() {
+		// GIVEN
+		ConcurrentLongMap<Integer> map = new ConcurrentLongMap<>();
+		for (int i = 1; i <= 100; i++) {
+			map.put(-i, i);
+		}
+		map.remove(-50);
+
+		// WHEN
+		Map<Long, Integer> visited = new HashMap<>();
+		map.forEach(visited::put);
+
+		// THEN
+		assertThat(visited.size(), is(99));
+		assertThat(visited.get(-100L), is(100));
+		assertNull(visited.get(-50L));
+	}
+
+}
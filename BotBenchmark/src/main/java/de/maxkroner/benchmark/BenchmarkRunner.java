@@ -0,0 +1,35 @@
+package de.maxkroner.benchmark;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks and writes the results as JSON, so results of different
+ * releases can be compared by tools like jmh-visualizer.
+ *
+ * usage: java -jar benchmarks.jar [benchmark regex] [result file]
+ *
+ * Runs all benchmarks into jmh-result.json by default. For all other JMH options
+ * use org.openjdk.jmh.Main, which is in the jar as well.
+ *
+ * @author kroner
+ *
+ */
+public class BenchmarkRunner {
+
+	public static void main(String[] args) throws RunnerException {
+		String include = args.length > 0 ? args[0] : BenchmarkRunner.class.getPackage().getName() + ".*";
+		String resultFile = args.length > 1 ? args[1] : "jmh-result.json";
+
+		Options options = new OptionsBuilder()
+				.include(include)
+				.resultFormat(ResultFormatType.JSON)
+				.result(resultFile)
+				.build();
+		new Runner(options).run();
+	}
+
+}
@@ -0,0 +1,89 @@
+package de.maxkroner.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.Comparator;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.maxkroner.database.BotDatabase;
+
+/**
+ * Reads and writes guild properties of a BotDatabase in a temporary H2 file.
+ * Cached reads hit the guild settings cache, uncached reads evict the guild first
+ * so all properties of the guild are loaded from the database again.
+ *
+ * @author kroner
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BotDatabaseBenchmark {
+	@Param({ "100" })
+	private int guilds;
+
+	private Path directory;
+	private BotDatabase db;
+	private long next = 0;
+
+	@Setup
+	public void setup() throws IOException, SQLException {
+		directory = Files.createTempDirectory("botbenchmark");
+		db = new BotDatabase(directory.resolve("db").toString());
+		for (long guild_id = 0; guild_id < guilds; guild_id++) {
+			db.addGuildProperty(guild_id, "prefix", "!");
+			db.addGuildProperty(guild_id, "c_enabled", true);
+			db.addGuildProperty(guild_id, "timeout", 5);
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws IOException, SQLException {
+		db.close();
+		try (Stream<Path> files = Files.walk(directory)) {
+			files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+		}
+	}
+
+	@Benchmark
+	public Optional<String> readCachedProperty() throws SQLException {
+		return db.getStringGuildProperty(nextGuild(), "prefix");
+	}
+
+	@Benchmark
+	public Optional<Integer> readUncachedProperty() throws SQLException {
+		long guild_id = nextGuild();
+		db.evictGuildSettings(guild_id);
+		return db.getIntGuildProperty(guild_id, "timeout");
+	}
+
+	@Benchmark
+	public void writeProperty() throws SQLException {
+		db.addGuildProperty(nextGuild(), "timeout", (int) next);
+	}
+
+	private long nextGuild() {
+		return next++ % guilds;
+	}
+
+}
@@ -0,0 +1,84 @@
+package de.maxkroner.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.maxkroner.database.BotDatabase;
+
+/**
+ * Queries and writes of 8 threads at once against a BotDatabase in a temporary H2 file,
+ * with one pooled connection compared to several.
+ *
+ * @author kroner
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(8)
+@Fork(1)
+public class BotDatabaseThroughputBenchmark {
+	private static final int GUILDS = 1000;
+
+	@Param({ "1", "4", "8" })
+	private int poolSize;
+
+	private Path directory;
+	private BotDatabase db;
+
+	@Setup
+	public void setup() throws IOException, SQLException {
+		directory = Files.createTempDirectory("botbenchmark");
+		db = new BotDatabase(directory.resolve("db").toString(), poolSize);
+		for (long guild_id = 0; guild_id < GUILDS; guild_id++) {
+			db.addGuildProperty(guild_id, "prefix", "!");
+			db.addGuildProperty(guild_id, "timeout", 5);
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		db.close();
+		try (Stream<Path> files = Files.walk(directory)) {
+			files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+		}
+	}
+
+	@Benchmark
+	public List<String> query() throws SQLException {
+		return db.query("SELECT property FROM guildpropertiesstring WHERE guild_id = ?", rs -> rs.getString(1), randomGuild());
+	}
+
+	@Benchmark
+	public int update() throws SQLException {
+		return db.update("MERGE INTO guildpropertiesint (guild_id, property, value) VALUES (?, ?, ?)", randomGuild(), "timeout", 10);
+	}
+
+	private static long randomGuild() {
+		return ThreadLocalRandom.current().nextInt(GUILDS);
+	}
+
+}
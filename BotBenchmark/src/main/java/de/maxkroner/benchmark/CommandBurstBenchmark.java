@@ -0,0 +1,99 @@
+package de.maxkroner.benchmark;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.maxkroner.execution.ICommandExecutor;
+import de.maxkroner.execution.StripedExecutor;
+import de.maxkroner.execution.ThreadPerCommandExecutor;
+
+/**
+ * Time until a burst of blocking commands (like a raid of !c commands, each waiting
+ * for REST calls) is completely handled. Compares executing the commands inline on the
+ * dispatcher thread with the striped executor and the thread per command executor.
+ * Run it on Java 21+ to measure the thread per command executor with virtual threads.
+ *
+ * @author kroner
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class CommandBurstBenchmark {
+	@Param({ "200" })
+	private int burstSize;
+
+	@Param({ "10" })
+	private int guilds;
+
+	@Param({ "5" })
+	private long blockingMillis;
+
+	private ICommandExecutor striped;
+	private ICommandExecutor threadPerCommand;
+
+	@Setup
+	public void setup() {
+		striped = new StripedExecutor("burst-striped", 16, burstSize);
+		threadPerCommand = new ThreadPerCommandExecutor("burst-thread", 64, burstSize);
+	}
+
+	@TearDown
+	public void tearDown() {
+		striped.shutdown();
+		threadPerCommand.shutdown();
+	}
+
+	@Benchmark
+	public void inline() {
+		for (int i = 0; i < burstSize; i++) {
+			handleCommand();
+		}
+	}
+
+	@Benchmark
+	public void stripedExecutor() throws InterruptedException {
+		runBurst(striped);
+	}
+
+	@Benchmark
+	public void threadPerCommandExecutor() throws InterruptedException {
+		runBurst(threadPerCommand);
+	}
+
+	private void runBurst(ICommandExecutor executor) throws InterruptedException {
+		CountDownLatch done = new CountDownLatch(burstSize);
+		for (int i = 0; i < burstSize; i++) {
+			executor.execute(i % guilds, () -> {
+				handleCommand();
+				done.countDown();
+			});
+		}
+		done.await();
+	}
+
+	private void handleCommand() {
+		try {
+			Thread.sleep(blockingMillis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
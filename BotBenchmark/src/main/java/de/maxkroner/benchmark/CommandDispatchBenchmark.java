@@ -0,0 +1,97 @@
+package de.maxkroner.benchmark;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.maxkroner.implementation.Bot;
+import de.maxkroner.implementation.CommandInvoker;
+import de.maxkroner.parsing.Command;
+import de.maxkroner.parsing.CommandHandler;
+import sx.blah.discord.handle.impl.events.guild.channel.message.MessageReceivedEvent;
+
+/**
+ * Compares the reflective Method.invoke dispatch the Bot used to do for every command
+ * with the precompiled CommandInvoker that is now stored in the command table,
+ * and measures the whole table lookup and dispatch in Bot.notifyReceivers.
+ *
+ * @author kroner
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandDispatchBenchmark {
+	private DispatchBot bot;
+	private Method method;
+	private CommandInvoker invoker;
+	private Command command;
+	private MethodHandle notifyReceivers;
+
+	@Setup
+	public void setup() throws Exception {
+		bot = new DispatchBot();
+		command = new Command("ping", Optional.empty(), Optional.empty());
+		method = DispatchBot.class.getDeclaredMethod("ping", MessageReceivedEvent.class, Command.class);
+		// the invoker gets its own Method copy, so the reflective path keeps its access checks
+		invoker = CommandInvoker.of(DispatchBot.class.getDeclaredMethod("ping", MessageReceivedEvent.class, Command.class));
+		// notifyReceivers is private, resolve it once so the benchmark doesn't measure reflection
+		Method notify = Bot.class.getDeclaredMethod("notifyReceivers", MessageReceivedEvent.class, Command.class);
+		notify.setAccessible(true);
+		notifyReceivers = MethodHandles.lookup().unreflect(notify);
+	}
+
+	@Benchmark
+	public int reflectiveInvoke() throws Exception {
+		method.invoke(bot, null, command);
+		return bot.dispatched;
+	}
+
+	@Benchmark
+	public int commandInvoker() throws Throwable {
+		invoker.invoke(bot, null, command);
+		return bot.dispatched;
+	}
+
+	@Benchmark
+	public int notifyReceivers() throws Throwable {
+		notifyReceivers.invokeExact((Bot) bot, (MessageReceivedEvent) null, command);
+		return bot.dispatched;
+	}
+
+	public static class DispatchBot extends Bot {
+		private int dispatched;
+
+		public DispatchBot() {
+			super("BenchmarkBot");
+			addCommandParsing(DispatchBot.class, "!", '-', false);
+		}
+
+		@CommandHandler("ping")
+		public void ping(MessageReceivedEvent event, Command command) {
+			dispatched++;
+		}
+
+		@Override
+		public void disconnect() {
+
+		}
+	}
+
+}
@@ -0,0 +1,90 @@
+package de.maxkroner.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.maxkroner.database.BotDatabase;
+import de.maxkroner.database.GuildSettings;
+import de.maxkroner.database.H2GuildPropertyStore;
+import de.maxkroner.database.IGuildPropertyStore;
+import de.maxkroner.database.MappedGuildPropertyStore;
+import de.maxkroner.database.PropertyType;
+
+/**
+ * Loads and writes guild properties directly in the H2 tables and in the memory mapped log,
+ * without the guild settings cache of the BotDatabase in between.
+ *
+ * @author kroner
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GuildPropertyStoreBenchmark {
+	private static final int GUILDS = 100;
+
+	@Param({ "h2", "log" })
+	private String storeType;
+
+	private Path directory;
+	private BotDatabase db;
+	private IGuildPropertyStore store;
+	private long next = 0;
+
+	@Setup
+	public void setup() throws IOException, SQLException {
+		directory = Files.createTempDirectory("botbenchmark");
+		db = new BotDatabase(directory.resolve("db").toString());
+		store = storeType.equals("h2") ? new H2GuildPropertyStore(db) : new MappedGuildPropertyStore(directory.resolve("guildproperties.log"), 1000);
+		for (long guild_id = 0; guild_id < GUILDS; guild_id++) {
+			store.put(PropertyType.STRING, guild_id, "prefix", "!");
+			store.put(PropertyType.BOOLEAN, guild_id, "jokeEnabled", true);
+			store.put(PropertyType.INT, guild_id, "timeout", 5);
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		store.close();
+		db.close();
+		try (Stream<Path> files = Files.walk(directory)) {
+			files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+		}
+	}
+
+	@Benchmark
+	public GuildSettings load() throws SQLException {
+		return store.load(nextGuild());
+	}
+
+	@Benchmark
+	public void put() throws SQLException {
+		store.put(PropertyType.INT, nextGuild(), "timeout", (int) next);
+	}
+
+	private long nextGuild() {
+		return next++ % GUILDS;
+	}
+
+}
@@ -0,0 +1,54 @@
+package de.maxkroner.benchmark;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.maxkroner.util.MapUtil;
+
+/**
+ * Sorts score maps like the ones of a GuessThePic game by value.
+ *
+ * @author kroner
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MapUtilBenchmark {
+	@Param({ "10", "100", "10000" })
+	private int size;
+
+	private Map<Long, Integer> scores;
+
+	@Setup
+	public void setup() {
+		Random random = new Random(size);
+		scores = new HashMap<>();
+		for (long user_id = 0; user_id < size; user_id++) {
+			scores.put(user_id, random.nextInt(50));
+		}
+	}
+
+	@Benchmark
+	public Map<Long, Integer> sortByValue() {
+		return MapUtil.sortByValue(scores);
+	}
+
+}
@@ -0,0 +1,102 @@
+package de.maxkroner.benchmark;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import de.maxkroner.parsing.Command;
+import de.maxkroner.parsing.CommandOption;
+import de.maxkroner.parsing.MessageParsing;
+
+/**
+ * Parses a mix of messages like they arrive on a server with the TempChannels bot:
+ * mostly chat, some commands in argument-style and option-style with quoted parameters.
+ * Every invocation parses the whole mix and reads all arguments and parameters.
+ *
+ * @author kroner
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageParsingBenchmark {
+	private final Set<String> commands = new HashSet<>(Arrays.asList("c", "tc", "kick", "ban", "unban", "prefix", "uptime", "enable", "disable"));
+
+	private final String[] chatMessages = {
+			"hey, anyone up for a round?",
+			"lol",
+			"!",
+			"who took my voice channel again",
+			"!!!! that was close",
+			"<@250340229708251136> tell me a joke",
+	};
+
+	private final String[] argumentMessages = {
+			"!uptime",
+			"!kick <@367665720055824384>",
+			"!ban <@367665720055824384> <@250340229708251136>",
+			"!prefix \"tc \"",
+			"!disable c",
+	};
+
+	private final String[] optionMessages = {
+			"!c -n \"Late Night Gaming\" -p all -l 5",
+			"!c -n Raid -t 30 -m <@367665720055824384> <@250340229708251136>",
+			"!tc -n \"CS:GO Team 1\" -p <@367665720055824384> -t 120",
+	};
+
+	@Benchmark
+	public void chat(Blackhole blackhole) {
+		parseAll(chatMessages, blackhole);
+	}
+
+	@Benchmark
+	public void argumentStyle(Blackhole blackhole) {
+		parseAll(argumentMessages, blackhole);
+	}
+
+	@Benchmark
+	public void optionStyle(Blackhole blackhole) {
+		parseAll(optionMessages, blackhole);
+	}
+
+	@Benchmark
+	public void mixed(Blackhole blackhole) {
+		parseAll(chatMessages, blackhole);
+		parseAll(chatMessages, blackhole);
+		parseAll(argumentMessages, blackhole);
+		parseAll(optionMessages, blackhole);
+	}
+
+	private void parseAll(String[] messages, Blackhole blackhole) {
+		for (String message : messages) {
+			Command command = MessageParsing.parseMessageWithCommandSet(message, commands, "!", '-');
+			blackhole.consume(command);
+			if (command != null) {
+				command.getArguments().ifPresent(arguments -> arguments.forEach(blackhole::consume));
+				if (command.hasOptions()) {
+					for (CommandOption option : command.getCommandOptions().get()) {
+						blackhole.consume(option.getCommandOptionName());
+						option.getParameterList().forEach(blackhole::consume);
+					}
+				}
+			}
+		}
+	}
+
+}
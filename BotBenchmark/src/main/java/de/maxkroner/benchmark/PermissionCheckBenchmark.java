@@ -0,0 +1,117 @@
+package de.maxkroner.benchmark;
+
+import java.lang.reflect.Proxy;
+import java.util.EnumSet;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.maxkroner.implementation.PermissionCache;
+import sx.blah.discord.handle.obj.IChannel;
+import sx.blah.discord.handle.obj.IGuild;
+import sx.blah.discord.handle.obj.Permissions;
+
+/**
+ * Permission check done before every message is sent, resolved from the roles and channel
+ * overrides like Discord4J does it compared to a lookup in the PermissionCache.
+ * The channel is a proxy, real Discord4J channels need a logged in client.
+ *
+ * @author kroner
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PermissionCheckBenchmark {
+	@Param({ "5", "20" })
+	private int roles;
+
+	private EnumSet<Permissions>[] rolePermissions;
+	private EnumSet<Permissions>[] allowOverrides;
+	private EnumSet<Permissions>[] denyOverrides;
+	private IChannel channel;
+	private PermissionCache cache;
+
+	@Setup
+	@SuppressWarnings("unchecked")
+	public void setup() {
+		Permissions[] permissions = Permissions.values();
+		rolePermissions = new EnumSet[roles];
+		allowOverrides = new EnumSet[roles];
+		denyOverrides = new EnumSet[roles];
+		for (int i = 0; i < roles; i++) {
+			// no administrator, so all overrides are applied
+			Permissions permission = permissions[i % permissions.length];
+			rolePermissions[i] = EnumSet.of(permission == Permissions.ADMINISTRATOR ? Permissions.READ_MESSAGES : permission);
+			allowOverrides[i] = i % 3 == 0 ? EnumSet.of(Permissions.SEND_MESSAGES) : EnumSet.noneOf(Permissions.class);
+			denyOverrides[i] = i % 4 == 0 ? EnumSet.of(Permissions.EMBED_LINKS) : EnumSet.noneOf(Permissions.class);
+		}
+		IGuild guild = (IGuild) Proxy.newProxyInstance(IGuild.class.getClassLoader(), new Class<?>[] { IGuild.class }, (proxy, method, args) -> {
+			if (method.getName().equals("getLongID")) {
+				return 1L;
+			}
+			throw new UnsupportedOperationException(method.getName());
+		});
+		channel = (IChannel) Proxy.newProxyInstance(IChannel.class.getClassLoader(), new Class<?>[] { IChannel.class }, (proxy, method, args) -> {
+			switch (method.getName()) {
+			case "getLongID":
+				return 2L;
+			case "getGuild":
+				return guild;
+			case "isPrivate":
+				return false;
+			case "getModifiedPermissions":
+				return resolvePermissions();
+			default:
+				throw new UnsupportedOperationException(method.getName());
+			}
+		});
+		cache = new PermissionCache(resolved -> resolved.getModifiedPermissions(null));
+	}
+
+	@Benchmark
+	public boolean uncached() {
+		return channel.getModifiedPermissions(null).contains(Permissions.SEND_MESSAGES);
+	}
+
+	@Benchmark
+	public boolean cached() {
+		return cache.hasPermission(channel, Permissions.SEND_MESSAGES);
+	}
+
+	/**
+	 * permissions of all roles of the member, then the allow and deny overrides of the roles in the channel
+	 */
+	private EnumSet<Permissions> resolvePermissions() {
+		EnumSet<Permissions> permissions = EnumSet.noneOf(Permissions.class);
+		for (EnumSet<Permissions> role : rolePermissions) {
+			permissions.addAll(role);
+		}
+		if (permissions.contains(Permissions.ADMINISTRATOR)) {
+			return EnumSet.allOf(Permissions.class);
+		}
+		EnumSet<Permissions> allowed = EnumSet.noneOf(Permissions.class);
+		EnumSet<Permissions> denied = EnumSet.noneOf(Permissions.class);
+		for (int i = 0; i < roles; i++) {
+			allowed.addAll(allowOverrides[i]);
+			denied.addAll(denyOverrides[i]);
+		}
+		permissions.removeAll(denied);
+		permissions.addAll(allowed);
+		return permissions;
+	}
+
+}
@@ -0,0 +1,69 @@
+package de.maxkroner.main;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import de.maxkroner.factory.GameProducer;
+import de.maxkroner.gtp.implementation.GuessThePicGameFactory;
+import de.maxkroner.implementation.BotHost;
+import de.maxkroner.implementation.GameMasterBot;
+import de.maxkroner.implementation.JokeBot;
+import de.maxkroner.implementation.TempChannelBot;
+
+/**
+ * Runs the bots given as arguments in one JVM, e.g.
+ * {@code tempchannels=<token> jokebot=<token> gamemaster=<token> metrics=9100}
+ *
+ * @author kroner
+ *
+ */
+public class BotHostMain {
+
+	public static void main(String[] args) {
+		Map<String, String> tokens = new LinkedHashMap<>();
+		int metricsPort = -1;
+		for (String arg : args) {
+			String[] pair = arg.split("=", 2);
+			if (pair.length == 2 && pair[0].equals("metrics")) {
+				metricsPort = Integer.parseInt(pair[1]);
+			} else if (pair.length == 2) {
+				tokens.put(pair[0].toLowerCase(), pair[1]);
+			}
+		}
+		if (tokens.isEmpty()) {
+			System.out.println("Please provide the tokens as arguments: tempchannels=<token> jokebot=<token> gamemaster=<token> [metrics=<port>]");
+			System.exit(1);
+		}
+
+		BotHost host = new BotHost(tokens.size());
+		host.addLogging("host");
+		if (metricsPort >= 0) {
+			host.addMetricsEndpoint(metricsPort);
+		}
+		for (Entry<String, String> token : tokens.entrySet()) {
+			switch (token.getKey()) {
+			case "tempchannels":
+				TempChannelBot tempChannelBot = new TempChannelBot(token.getValue(), host);
+				tempChannelBot.addDatabase("TempChannels");
+				tempChannelBot.run(token.getValue());
+				break;
+			case "jokebot":
+				// runs from its constructor
+				new JokeBot(token.getValue(), host);
+				break;
+			case "gamemaster":
+				GameMasterBot gameMasterBot = new GameMasterBot(host);
+				GameProducer gameProducer = new GameProducer();
+				gameProducer.addGameFactory(new GuessThePicGameFactory(gameMasterBot));
+				gameMasterBot.setGameProducer(gameProducer);
+				gameMasterBot.run(token.getValue());
+				break;
+			default:
+				System.out.println("Unknown bot " + token.getKey() + ", expected tempchannels, jokebot or gamemaster.");
+			}
+		}
+		Runtime.getRuntime().addShutdownHook(new Thread(host::shutdown, "bot-host-shutdown"));
+	}
+
+}
@@ -1,4 +1,4 @@
-package de.maxkroner.values;
+package de.maxkroner.gamemaster.values;
 
 public class Values {
 
@@ -1,33 +1,28 @@
 package de.maxkroner.gtp.database;
 
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Connection;
-import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map.Entry;
+import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ThreadLocalRandom;
 
 import org.pmw.tinylog.Logger;
 
-import de.maxkroner.database.BotDatabase;
 import de.maxkroner.db.GameMasterDatabase;
+import de.maxkroner.gamemaster.values.Values;
 import de.maxkroner.gtp.reader.ImageUrlReader;
 import de.maxkroner.gtp.reader.WordListReader;
 import de.maxkroner.gtp.reader.WordListTO;
-import de.maxkroner.values.Values;
 
 public class GTPDatabase {
 	private GameMasterDatabase db;
-	private Connection conn;
 
 	public GTPDatabase(GameMasterDatabase db) {
 		this.db = db;
-		this.conn = db.getConn();
 		createTablesIfNotExist();
 	}
 
@@ -62,15 +57,12 @@ public class GTPDatabase {
 		long word_id = addWordToList(word, list_id);
 		
 		String insert_query = "INSERT INTO images (url, word_id) VALUES(?, ?);";
-		PreparedStatement st = conn.prepareStatement(insert_query);
-		
+		List<Object[]> rows = new ArrayList<>();
 		for (String url : urls) {
-			st.setString(1, url);
-			st.setLong(2, word_id);
-			st.addBatch();
+			rows.add(new Object[] { url, word_id });
 		}
 		
-		st.executeBatch();
+		db.batch(insert_query, rows);
 
 		Logger.info("Inserted word {} with {} urls for list with id {} into database", word, urls.size(), list_id);
 		return word_id;
@@ -86,23 +78,7 @@ public class GTPDatabase {
 	 */
 	private long addWordToList(String word, long list_id) throws SQLException {
 		String query = "INSERT INTO words (name, list_id) VALUES (?, ?);";
-		PreparedStatement st = conn.prepareStatement(query, Statement.RETURN_GENERATED_KEYS);
-		st.setString(1, word);
-		st.setLong(2, list_id);
-		int affectedRows = st.executeUpdate();
-		
-		if (affectedRows == 0) {
-            throw new SQLException("Creating word failed, no rows affected.");
-        }
-		
-		 try (ResultSet generatedKeys = st.getGeneratedKeys()) {
-	            if (generatedKeys.next()) {
-	                return generatedKeys.getLong(1);
-	            }
-	            else {
-	                throw new SQLException("Creating word failed, no ID obtained.");
-	            }
-	        }
+		return db.insert(query, word, list_id);
 	}
 
 	
@@ -118,65 +94,22 @@ public class GTPDatabase {
 	 */
 	public long addList(String list_name, String language, String description, long guild_id) throws SQLException{
 		String query = "INSERT INTO lists (name, language, description, guild_id) VALUES (?, ?, ?, ?)";
-			PreparedStatement st = conn.prepareStatement(query, Statement.RETURN_GENERATED_KEYS);
-			st.setString(1, list_name);
-			st.setString(2, language);
-			st.setString(3, description);
-			st.setLong(4, guild_id);
-			int affectedRows = st.executeUpdate();
-			
-			if (affectedRows == 0) {
-	            throw new SQLException("Creating list failed, no rows affected.");
-	        }
-			
-			 try (ResultSet generatedKeys = st.getGeneratedKeys()) {
-		            if (generatedKeys.next()) {
-		                return generatedKeys.getLong(1);
-		            }
-		            else {
-		                throw new SQLException("Creating list failed, no ID obtained.");
-		            }
-		        }
+		return db.insert(query, list_name, language, description, guild_id);
 	}
 	
 	public List<String> getAllListsByGuild(long guild_id){
-		ArrayList<String> lists = new ArrayList<String>();
-		String query = "SELECT name FROM lists WHERE guild_id=" + guild_id + " OR guild_id=0;";
-		ResultSet rs = db.getResultSetFromQuery(query);
+		String query = "SELECT name FROM lists WHERE guild_id=? OR guild_id=0;";
 		try{
-		while(rs.next()){
-			lists.add(rs.getString(1));
-		}
+			return db.query(query, rs -> rs.getString(1), guild_id);
 		} catch (SQLException e){
 			Logger.error(e);
+			return new ArrayList<String>();
 		}
-		
-		return lists;
 	}
 	
 	public long addListNesting(long outer_list_id, long inner_list_id) throws SQLException{
 		String query = "INSERT INTO listnesting (outer_list_id, inner_list_id) VALUES (?, ?)";
-		
-		PreparedStatement st = conn.prepareStatement(query);
-		
-		st.setLong(1, outer_list_id);
-		st.setLong(2, inner_list_id);
-		
-		int affectedRows = st.executeUpdate();
-		
-		if (affectedRows == 0) {
-            throw new SQLException("Creating list nesting failed, no rows affected.");
-        }
-		
-		 try (ResultSet generatedKeys = st.getGeneratedKeys()) {
-	            if (generatedKeys.next()) {
-	                return generatedKeys.getLong(1);
-	            }
-	            else {
-	                throw new SQLException("Creating nest listing failed, no ID obtained.");
-	            }
-	        }
-			
+		return db.insert(query, outer_list_id, inner_list_id);
 	}
 	
 	public long getOrCreateList(String list_name, String language, String description, long guild_id) throws SQLException{		
@@ -197,41 +130,26 @@ public class GTPDatabase {
 	 * @throws SQLException
 	 */
 	public Long getListIdByNameAndGuild(long guild_id, String list_name) throws SQLException {
+		String query = "SELECT list_id FROM lists WHERE name=? AND guild_id=?;";
 		//does a guild specific list with the given name exist?
-		ResultSet rs = db.getResultSetFromQuery("SELECT list_id FROM lists WHERE name='" + list_name + "' AND guild_id=" + guild_id + ";");
-		if(rs.next()){
-			return rs.getLong(1);
-		} else {
+		Optional<Long> list_id = db.queryFirst(query, rs -> rs.getLong(1), list_name, guild_id);
+		if(!list_id.isPresent()){
 			//does a general list with the given name exist?
-			rs = db.getResultSetFromQuery("SELECT list_id FROM lists WHERE name='" + list_name + "' AND guild_id=0;");
-			if(rs.next()){
-				return rs.getLong(1);
-			} else {
-				return null;
-			}		
+			list_id = db.queryFirst(query, rs -> rs.getLong(1), list_name, 0L);
 		}
+		return list_id.orElse(null);
 	}
 	
 	public List<String> getWordsForList(long list_id) throws SQLException{
-		List<String> words = new ArrayList<>();
-		ResultSet rs = db.getResultSetFromQuery("SELECT name FROM words WHERE list_id =" + list_id);
-		while(rs.next()){
-			words.add(rs.getString(1));
-		}
-		return words;
+		return db.query("SELECT name FROM words WHERE list_id = ?", rs -> rs.getString(1), list_id);
 	}
 	
 	private Set<String> getRandomImagesForWord(long word_id, int amount) throws SQLException{
-		Set<String> urls = new HashSet<>();
-		ResultSet rs = db.getResultSetFromQuery("SELECT url FROM images WHERE word_id =" + word_id, ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
-		if(rs.last() && (rs.getRow() >= amount)){
-			int availabeImages = rs.getRow();
-			while(urls.size() < amount){
-				int index = ThreadLocalRandom.current().nextInt(1, availabeImages + 1);
-				rs.absolute(index);
-				urls.add(rs.getString(1));
-			}
-			return urls;
+		// urls are unique per word
+		List<String> availableUrls = db.query("SELECT url FROM images WHERE word_id = ?", rs -> rs.getString(1), word_id);
+		if(availableUrls.size() >= amount){
+			Collections.shuffle(availableUrls, ThreadLocalRandom.current());
+			return new HashSet<>(availableUrls.subList(0, amount));
 		}
 		throw new SQLException("Error when trying to find random images.");
 	}
@@ -244,14 +162,12 @@ public class GTPDatabase {
 	 * @throws SQLException
 	 */
 	public Word getRandomWordFromList(long list_id, int imageAmount) throws SQLException{
-		ResultSet rs = db.getResultSetFromQuery("SELECT word_id, name FROM words WHERE list_id =" + list_id, ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
-		if(rs.last()){
-				int index = ThreadLocalRandom.current().nextInt(1, rs.getRow() + 1);
-				rs.absolute(index);
-				long word_id = rs.getLong(1);
-				String wordName = rs.getString(2);
-				Word word = new Word(word_id, wordName);
-				word.setImageUrls(getRandomImagesForWord(word_id, imageAmount));
+		int count = db.queryFirst("SELECT COUNT(*) FROM words WHERE list_id = ?", rs -> rs.getInt(1), list_id).orElse(0);
+		if(count > 0){
+				int index = ThreadLocalRandom.current().nextInt(count);
+				Word word = db.queryFirst("SELECT word_id, name FROM words WHERE list_id = ? ORDER BY word_id LIMIT 1 OFFSET ?", rs -> new Word(rs.getLong(1), rs.getString(2)), list_id, index)
+						.orElseThrow(() -> new SQLException("No words founds to pick from"));
+				word.setImageUrls(getRandomImagesForWord(word.getWord_id(), imageAmount));
 				return word;
 		} else {
 			throw new SQLException("No words founds to pick from");
@@ -260,13 +176,12 @@ public class GTPDatabase {
 	}
 	
 	public boolean existsWordInList(String word, long list_id) throws SQLException{
-		String query = "SELECT COUNT(*) FROM words WHERE name='" + word + "' AND list_id=" + list_id;
-		ResultSet rs = db.getResultSetFromQuery(query);
-		if(rs.next()){
-			int count = rs.getInt(1);
-			if(count == 1){
+		String query = "SELECT COUNT(*) FROM words WHERE name=? AND list_id=?";
+		Optional<Integer> count = db.queryFirst(query, rs -> rs.getInt(1), word, list_id);
+		if(count.isPresent()){
+			if(count.get() == 1){
 				return true;
-			} else if(count == 0){
+			} else if(count.get() == 0){
 				return false;
 			}
 		}
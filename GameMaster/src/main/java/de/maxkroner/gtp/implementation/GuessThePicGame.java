@@ -9,19 +9,19 @@ import java.util.concurrent.TimeUnit;
 
 import org.pmw.tinylog.Logger;
 
+import de.maxkroner.gamemaster.values.Values;
 import de.maxkroner.gtp.database.GTPDatabase;
 import de.maxkroner.gtp.database.Word;
 import de.maxkroner.gtp.runnable.DisplayNextImageRunnable;
 import de.maxkroner.gtp.values.Keys;
+import de.maxkroner.messaging.Priority;
 import de.maxkroner.model.Game;
 import de.maxkroner.model.IGameService;
 import de.maxkroner.model.GameState;
-import de.maxkroner.values.Values;
 import sx.blah.discord.handle.impl.events.guild.channel.message.MessageReceivedEvent;
 import sx.blah.discord.handle.obj.IChannel;
 import sx.blah.discord.handle.obj.IUser;
 import sx.blah.discord.util.EmbedBuilder;
-import sx.blah.discord.util.RequestBuffer;
 
 public class GuessThePicGame extends Game{
 	private static ScheduledExecutorService scheduledExecutor = Executors.newScheduledThreadPool(2);
@@ -77,7 +77,7 @@ public class GuessThePicGame extends Game{
 				message.toLowerCase().equals(word.getWord().toLowerCase())){
 			imageFuture.cancel(true);
 			setGameState(GameState.RoundFinished);
-			sendMessage(Values.getMessageString(Values.MESSAGE_GTP_RIGHT_GUESS, event.getAuthor().toString(), word.getWord()));
+			sendMessage(Values.getMessageString(Values.MESSAGE_GTP_RIGHT_GUESS, event.getAuthor().toString(), word.getWord()), Priority.HIGH);
 			increasePointsForPlayer(event.getAuthor());
 			increaseRound();
 			startNewRoundWithDelay(Values.ROUND_DELAY_IN_SECONDS);
@@ -137,7 +137,11 @@ public class GuessThePicGame extends Game{
 	}
 
 	private void sendMessage(String message) {
-		getGameService().sendMessage(message, getChannel(), false);
+		sendMessage(message, Priority.NORMAL);
+	}
+	
+	private void sendMessage(String message, Priority priority) {
+		getGameService().sendMessage(message, getChannel(), false, priority);
 	}
 	
 	public void printScoreBoard(){
@@ -148,7 +152,7 @@ public class GuessThePicGame extends Game{
 			builder.appendField(user.getName(), String.valueOf(getPointsForPlayer(user)), true);
 		}
 		
-		RequestBuffer.request(() -> getChannel().sendMessage(builder.build()));
+		getGameService().sendEmbed(builder.build(), getChannel(), Priority.NORMAL);
 	}
 	
 	private void showLists(){
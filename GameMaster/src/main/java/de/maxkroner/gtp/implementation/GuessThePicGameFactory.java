@@ -6,11 +6,11 @@ import java.util.List;
 import org.pmw.tinylog.Logger;
 
 import de.maxkroner.factory.IGameFactory;
+import de.maxkroner.gamemaster.values.Values;
 import de.maxkroner.gtp.database.GTPDatabase;
 import de.maxkroner.gtp.values.Keys;
 import de.maxkroner.model.IGameService;
 import de.maxkroner.model.IGame;
-import de.maxkroner.values.Values;
 import sx.blah.discord.handle.impl.events.guild.channel.message.MessageReceivedEvent;
 
 public class GuessThePicGameFactory implements IGameFactory{
@@ -13,8 +13,8 @@ import org.json.JSONArray;
 import org.json.JSONObject;
 import org.pmw.tinylog.Logger;
 
+import de.maxkroner.gamemaster.values.Values;
 import de.maxkroner.gtp.values.Keys;
-import de.maxkroner.values.Values;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
@@ -5,12 +5,12 @@ import java.util.concurrent.atomic.AtomicInteger;
 
 import org.pmw.tinylog.Logger;
 
+import de.maxkroner.gamemaster.values.Values;
 import de.maxkroner.gtp.database.Word;
+import de.maxkroner.messaging.Priority;
 import de.maxkroner.model.IGameService;
-import de.maxkroner.values.Values;
 import sx.blah.discord.handle.obj.IChannel;
 import sx.blah.discord.util.EmbedBuilder;
-import sx.blah.discord.util.RequestBuffer;
 
 public class DisplayNextImageRunnable<E> implements Runnable {
 	private IGameService gameService;
@@ -62,7 +62,7 @@ public class DisplayNextImageRunnable<E> implements Runnable {
 				.withTitle("Image #" + (image_count.get() + 1))
 				.withImage(url);
 
-		RequestBuffer.request(() -> channel.sendMessage(builder.build()));
+		gameService.sendEmbed(builder.build(), channel, Priority.NORMAL);
 	}
 	
 	
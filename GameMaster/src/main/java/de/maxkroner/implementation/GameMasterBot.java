@@ -1,19 +1,22 @@
 package de.maxkroner.implementation;
 
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import de.maxkroner.db.GameMasterDatabase;
 import de.maxkroner.factory.GameProducer;
+import de.maxkroner.gamemaster.values.Values;
+import de.maxkroner.implementation.ShutdownCoordinator.Phase;
+import de.maxkroner.messaging.Priority;
 import de.maxkroner.model.IGameService;
 import de.maxkroner.model.GameState;
 import de.maxkroner.model.IGame;
 import de.maxkroner.parsing.Command;
 import de.maxkroner.parsing.CommandHandler;
-import de.maxkroner.values.Values;
 import sx.blah.discord.api.events.EventSubscriber;
 import sx.blah.discord.handle.impl.events.guild.channel.message.MessageReceivedEvent;
 import sx.blah.discord.handle.obj.IChannel;
@@ -22,15 +25,40 @@ public class GameMasterBot extends Bot implements IGameService {
 	private GameProducer producer;
 	private static final String botName = "GameMaster";
 	private static final String botNameShort = "gm";
-	private Map<IChannel, IGame> gameList = new HashMap<>();
+	// read by the metrics thread and the command threads of every channel
+	private Map<IChannel, IGame> gameList = new ConcurrentHashMap<>();
 
 	public GameMasterBot() {
-		super(botName);
+		this(null);
+	}
+
+	/**
+	 * @param host
+	 *            the bot runs in, null to run on its own
+	 */
+	public GameMasterBot(BotHost host) {
+		super(botName, host);
 		String home = System.getProperty("user.home");
 		
 		addLogging(botNameShort);
 		addDatabase(new GameMasterDatabase(Paths.get(home, "discordBots", botName, "db", botName).toString()));
 		addCommandParsing(this.getClass(), Values.PREFIX, Values.OPTION_PREFIX, true);	
+		addCommandRateLimit().setCommandCost(Values.COMMAND_CREATE, 3);
+		getMetrics().gauge("gamemaster_games_running", "Games that are created and not ended yet", () -> gameList.size());
+		// after the commands, before the messages are drained, so the score boards are still sent
+		getShutdownCoordinator().register(Phase.STOP_ACCEPTING, "games", timeout -> endAllGames());
+	}
+
+	/**
+	 * @return number of games that were ended
+	 */
+	private int endAllGames() {
+		List<IGame> games = new ArrayList<>(gameList.values());
+		for (IGame game : games) {
+			game.stop();
+			gameStopped(game);
+		}
+		return games.size();
 	}
 
 	public void setGameProducer(GameProducer producer) {
@@ -140,6 +168,11 @@ public class GameMasterBot extends Bot implements IGameService {
 		super.sendMessage(message, channel, tts);
 	}
 
+	@Override
+	public void sendMessage(String message, IChannel channel, boolean tts, Priority priority) {
+		super.sendMessage(message, channel, tts, priority);
+	}
+
 	@Override
 	public void gameStopped(IGame game) {
 		sendMessage(Values.getMessageString(Values.MESSAGE_GAME_OVER, game.getName()), game.getChannel(), false);
@@ -7,7 +7,7 @@ import java.sql.SQLException;
 import org.h2.api.Trigger;
 import org.h2.tools.TriggerAdapter;
 
-import de.maxkroner.values.Values;
+import de.maxkroner.gamemaster.values.Values;
 
 public class NestingIntegrityTrigger extends TriggerAdapter implements Trigger{
 
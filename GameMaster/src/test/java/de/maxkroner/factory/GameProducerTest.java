@@ -0,0 +1,61 @@
+package de.maxkroner.factory;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.Test;
+
+import de.maxkroner.model.IGame;
+import de.maxkroner.parsing.Command;
+import de.maxkroner.parsing.MessageParsing;
+import sx.blah.discord.handle.impl.events.guild.channel.message.MessageReceivedEvent;
+
+public class GameProducerTest {
+
+	@Test
+	public void createsTheGameFromAParsedCommand() {
+		// GIVEN
+		StandInGameFactory factory = new StandInGameFactory();
+		GameProducer producer = new GameProducer();
+		producer.addGameFactory(factory);
+		Command command = MessageParsing.parseMessageWithCommandSet("gm.create pic animals \"hard mode\"", new HashSet<>(Arrays.asList("create")), "gm.", '-');
+
+		// WHEN
+		Optional<IGame> game = producer.createGame(null, command.getArguments().get(), null);
+
+		// THEN
+		assertThat(game.isPresent(), is(true));
+		assertThat(factory.args, is(Arrays.asList("animals", "hard mode")));
+	}
+
+	private static class StandInGameFactory implements IGameFactory {
+		private List<String> args;
+
+		@Override
+		public String getGameName() {
+			return "Guess The Pic";
+		}
+
+		@Override
+		public String getGameCommand() {
+			return "pic";
+		}
+
+		@Override
+		public IGame createGame(MessageReceivedEvent event, List<String> args) {
+			this.args = args;
+			return (IGame) Proxy.newProxyInstance(IGame.class.getClassLoader(), new Class<?>[] { IGame.class }, (proxy, method, arguments) -> null);
+		}
+
+		@Override
+		public void initializeGameMode() {
+		}
+	}
+
+}
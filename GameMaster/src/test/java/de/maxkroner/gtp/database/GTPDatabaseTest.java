@@ -14,7 +14,7 @@ import org.junit.Before;
 import org.junit.Test;
 
 import de.maxkroner.db.GameMasterDatabase;
-import de.maxkroner.values.Values;
+import de.maxkroner.gamemaster.values.Values;
 
 public class GTPDatabaseTest {
 	String home = System.getProperty("user.home");
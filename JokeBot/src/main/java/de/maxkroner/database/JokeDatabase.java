@@ -18,6 +18,7 @@ public class JokeDatabase {
 	private static final String DB_PASSWORD = "";
 
 	private Connection conn;
+	private final QueryStatistics statistics = new QueryStatistics();
 	
 	public JokeDatabase(){
 		try {
@@ -31,11 +32,14 @@ public class JokeDatabase {
 		}		
 	}
 
+	public QueryStatistics getQueryStatistics() {
+		return statistics;
+	}
+
 	private void createTableIfNotExists() {
 		try {
 			Statement std = conn.createStatement();
-			std.execute(
-					"CREATE TABLE IF NOT EXISTS joke(id int auto_increment primary key, text varchar(255), category varchar(255))");
+			execute(std, "CREATE TABLE IF NOT EXISTS joke(id int auto_increment primary key, text varchar(255), category varchar(255))");
 		} catch (SQLException e) {
 			e.printStackTrace();
 		}	
@@ -53,9 +57,8 @@ public class JokeDatabase {
 	public void createTable() {
 		try {
 			Statement std = conn.createStatement();
-			std.execute("DROP TABLE IF EXISTS joke");
-			std.execute(
-					"CREATE TABLE joke(id int auto_increment primary key, text varchar(255), category varchar(255))");
+			execute(std, "DROP TABLE IF EXISTS joke");
+			execute(std, "CREATE TABLE joke(id int auto_increment primary key, text varchar(255), category varchar(255))");
 		} catch (SQLException e) {
 			e.printStackTrace();
 		}
@@ -68,7 +71,7 @@ public class JokeDatabase {
 		try {
 			std = conn.createStatement();
 			String query = "SELECT DISTINCT category FROM joke";
-			ResultSet rs = std.executeQuery(query);
+			ResultSet rs = statistics.time(query, null, () -> std.executeQuery(query));
 			while (rs.next()) {
 				categories.add(rs.getString(1));
 			}
@@ -83,7 +86,7 @@ public class JokeDatabase {
 		try {
 			Statement std = conn.createStatement();
 			String query = "INSERT INTO joke (text, category) VALUES ('" + joke + "','" + category + "');";
-			std.executeUpdate(query);
+			statistics.time(query, null, () -> std.executeUpdate(query));
 		} catch (SQLException e) {
 			e.printStackTrace();
 		}
@@ -98,7 +101,7 @@ public class JokeDatabase {
 			for (String joke : jokes) {
 				insertJokes.setString(1, joke);
 				insertJokes.setString(2, category);
-				insertJokes.executeUpdate();
+				statistics.time(insertString, new Object[] { joke, category }, insertJokes::executeUpdate);
 			}
 			
 			
@@ -117,7 +120,7 @@ public class JokeDatabase {
 		try {
 			Statement std = conn.createStatement();
 			String query = "SELECT * FROM joke" + whereClause;
-			ResultSet rs = std.executeQuery(query);
+			ResultSet rs = statistics.time(query, null, () -> std.executeQuery(query));
 			if(!rs.next()){
 				System.out.println("There are no jokes to print...");
 			}
@@ -144,7 +147,7 @@ public class JokeDatabase {
 		try {
 			Statement std = conn.createStatement();
 			String query = "DELETE FROM joke WHERE category = '" + category + "'";
-			std.executeUpdate(query);
+			statistics.time(query, null, () -> std.executeUpdate(query));
 		} catch (SQLException e) {
 			e.printStackTrace();
 		}
@@ -165,7 +168,7 @@ public class JokeDatabase {
 
 			// get all jokes of this category
 			String select_query = "SELECT * FROM joke" + whereClause;
-			ResultSet select_rs = std.executeQuery(select_query);
+			ResultSet select_rs = statistics.time(select_query, null, () -> std.executeQuery(select_query));
 			
 			if(select_rs.last()){
 				// get random joke index
@@ -182,4 +185,8 @@ public class JokeDatabase {
 
 		return joke;
 	}
+
+	private void execute(Statement std, String sql) throws SQLException {
+		statistics.time(sql, null, () -> std.execute(sql));
+	}
 }
@@ -4,6 +4,7 @@ import java.util.List;
 import java.util.Optional;
 
 import de.maxkroner.database.JokeDatabase;
+import de.maxkroner.implementation.ShutdownCoordinator.Phase;
 import de.maxkroner.ui.JokeBotMenue;
 import sx.blah.discord.api.events.EventSubscriber;
 import sx.blah.discord.handle.impl.events.ReadyEvent;
@@ -17,10 +18,24 @@ public class JokeBot extends Bot {
 	private JokeDatabase jokeDatabase;
 
 	public JokeBot(String token) {
-		super("JokeBot");
+		this(token, null);
+	}
+
+	/**
+	 * @param host
+	 *            the bot runs in, null to run on its own
+	 */
+	public JokeBot(String token, BotHost host) {
+		super("JokeBot", host);
 		JokeBotMenue jbMenue = new JokeBotMenue(this, new JokeDatabase());
 		super.addConsoleMenue(jbMenue);
 		super.addLogging("jb");
+		super.addCommandRateLimit();
+		super.addQueryStatistics("jokes", jbMenue.getJokeDatabase().getQueryStatistics());
+		getShutdownCoordinator().register(Phase.CLOSE_DATABASE, "jokes", timeout -> {
+			disconnect();
+			return 0;
+		});
 		super.run(token);
 		this.jokeDatabase = jbMenue.getJokeDatabase();
 	}
@@ -41,16 +56,15 @@ public class JokeBot extends Bot {
 	}
 
 	private void tellCategories(IChannel channel) {
-		String categories = "If you use `!joke` `[category]` i will tell you a joke from the specified category.\n"
-				+ "These are the categories I know so far:\n\n";
+		// one message per line, they are merged into as few messages as possible when they are sent
+		sendMessage("If you use `!joke` `[category]` i will tell you a joke from the specified category.\n"
+				+ "These are the categories I know so far:\n", channel, false);
 
 		for (String category : jokeCategories) {
-			categories = categories + "`" + category + "`" + "\n";
+			sendMessage("`" + category + "`", channel, false);
 		}
 
-		categories = categories + "Use `random` for a joke from any category.";
-		
-		sendMessage(categories, channel, false);
+		sendMessage("Use `random` for a joke from any category.", channel, false);
 	}
 
 	@EventSubscriber
@@ -72,9 +86,13 @@ public class JokeBot extends Bot {
 			User user = (User) getClient().getOurUser();
 			channel.getGuild().setUserNickname(user, message.substring(13));
 		} else if ((message.startsWith("!joke ") && (message.length() > 6))) {
-			tellJoke(message.substring(message.indexOf(" ") + 1), channel);
+			if (isAllowedByRateLimit(event, "joke")) {
+				tellJoke(message.substring(message.indexOf(" ") + 1), channel);
+			}
 		} else if (message.equals("!joke")) {
-			tellCategories(channel);
+			if (isAllowedByRateLimit(event, "joke")) {
+				tellCategories(channel);
+			}
 		}
 	}
 	
@@ -46,7 +46,7 @@ public class JokeBotMenue extends ConsoleMenue {
 				break;
 			case 5:
 				if (ConsoleUserInput.getYesNoResult("Are you sure?")) {
-					bot.disconnect();
+					// the shutdown hook closes the database once the commands are done
 					System.exit(0);
 				} else {
 					auswahl = 1;
@@ -12,18 +12,24 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumSet;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import org.pmw.tinylog.Logger;
 
+import de.maxkroner.execution.StartupReconciler;
+import de.maxkroner.implementation.ShutdownCoordinator.Phase;
 import de.maxkroner.implementation.runnable.CheckTempChannelRunnable;
+import de.maxkroner.messaging.Priority;
 import de.maxkroner.model.TempChannel;
 import de.maxkroner.model.TempChannelMap;
 import de.maxkroner.parsing.Command;
@@ -54,22 +60,64 @@ import sx.blah.discord.util.MissingPermissionsException;
 
 public class TempChannelBot extends Bot {
 	private static final int timeout_for_unknown_channels = 5;
-	private static HashMap<IGuild, TempChannelMap> tempChannelsByGuild = new HashMap<>();
+	// changed by the event, reconciler and command threads, read by the timeout check and the metrics
+	private static Map<IGuild, TempChannelMap> tempChannelsByGuild = new ConcurrentHashMap<>();
 	private static ArrayList<TempChannel> stashedChannels = new ArrayList<>(); // if bot leaves Guild tempChannels get stashed
 	private static final EnumSet<Permissions> voice_connect = EnumSet.of(Permissions.VOICE_CONNECT);
 	private static final EnumSet<Permissions> empty = EnumSet.noneOf(Permissions.class);
 	private static final int USER_CHANNEL_LIMIT = 3;
+	// guilds reconciled at once after startup, their requests share the global rate limit
+	private static final int RECONCILE_PARALLELISM = 8;
 	private static String path_serialized_tempChannels = "~/discordBots/TempChannels/temp/";
 	private static final String file_name = "tempChannels.ser";
 	private static String home = "";
-	private static boolean still_in_startup_mode = true;
+	private static volatile boolean still_in_startup_mode = true;
+	private volatile ScheduledExecutorService timeoutScheduler;
+	private volatile StartupReconciler reconciler;
 
 	public TempChannelBot(String token) {
-		super("TempChannels");
+		this(token, null);
+	}
+
+	/**
+	 * @param host
+	 *            the bot runs in, null to run on its own
+	 */
+	public TempChannelBot(String token, BotHost host) {
+		super("TempChannels", host);
 		super.addConsoleMenue(new TempChannelMenue(this, tempChannelsByGuild));
 		home = System.getProperty("user.home");
 		path_serialized_tempChannels = Paths.get(home, "discordBots", "TempChannels", "tmp").toString();
 		addCommandParsing(this.getClass());
+		// creating a channel takes several requests
+		addCommandRateLimit().setCommandCost("create", 3);
+		getMetrics().gauge("tempchannels_active", "Temporary channels that currently exist", TempChannelBot::countTempChannels);
+		getMetrics().gauge("tempchannels_stashed", "Temporary channels of guilds the bot left", () -> stashedChannels.size());
+		// the channels are saved once the timeout check can't change them anymore
+		getShutdownCoordinator().register(Phase.STOP_SCHEDULERS, "channel timeouts", this::shutdownTimeoutScheduler);
+		getShutdownCoordinator().register(Phase.PERSIST_STATE, "temp channels", timeout -> {
+			saveTempChannel();
+			return 0;
+		});
+	}
+
+	/**
+	 * @return 1 if a timeout check was still running
+	 */
+	private synchronized int shutdownTimeoutScheduler(long timeoutMillis) throws InterruptedException {
+		if (timeoutScheduler == null) {
+			return 0;
+		}
+		timeoutScheduler.shutdown();
+		return timeoutScheduler.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS) ? 0 : 1;
+	}
+
+	private static int countTempChannels() {
+		int count = 0;
+		for (TempChannelMap tempChannelMap : tempChannelsByGuild.values()) {
+			count += tempChannelMap.getAllTempChannel().size();
+		}
+		return count;
 	}
 
 	@Override
@@ -94,15 +142,75 @@ public class TempChannelBot extends Bot {
 		// import previous TempChannels from file
 		readTempChannelsFromFile();
 
-		// delete Channel which aren't existent in map
-		removeUnkownChannelsForGuild(tempChannelsByGuild.keySet());
+		// delete Channel which aren't existent in map, in the background and several guilds at once,
+		// commands of a guild are accepted as soon as it is done
+		List<Long> guild_ids = tempChannelsByGuild.keySet().stream().map(IGuild::getLongID).collect(Collectors.toList());
+		StartupReconciler reconciler = new StartupReconciler("TempChannels", RECONCILE_PARALLELISM, this::reconcileGuild);
+		CompletableFuture<Void> reconciled = reconciler.start(guild_ids);
+		// published once its guilds are pending, before that every guild would count as ready
+		this.reconciler = reconciler;
+		getMetrics().gauge("tempchannels_guilds_reconciling", "Guilds waiting for their startup reconciliation", () -> reconciler.getPendingCount());
+		reconciled.whenComplete((result, e) -> {
+			if (e != null) {
+				Logger.error("TempChannels: startup reconciliation failed, starting anyway.");
+				Logger.error(e);
+			}
+			finishStartup();
+		});
+	}
+
+	private void reconcileGuild(long guild_id) {
+		IGuild guild = getClient().getGuildByID(guild_id);
+		if (guild != null && tempChannelsByGuild.containsKey(guild)) {
+			removeUnknownChannelsForGuild(guild);
+		}
+	}
 
-		// start Channel-Timout Scheduler
-		ScheduledExecutorService executor = Executors.newScheduledThreadPool(1);
-		CheckTempChannelRunnable<Runnable> checkEvent = new CheckTempChannelRunnable<Runnable>(tempChannelsByGuild, getClient(), executor);
-		executor.scheduleAtFixedRate(checkEvent, 1, 1, TimeUnit.MINUTES);
+	private void finishStartup() {
+		try {
+			// guilds the bot joined during the reconciliation
+			for (IGuild guild : getClient().getGuilds()) {
+				if (tempChannelsByGuild.putIfAbsent(guild, new TempChannelMap()) == null) {
+					importStashedChannelsForGuild(guild);
+					removeUnknownChannelsForGuild(guild);
+				}
+			}
+		} catch (Exception e) {
+			Logger.error("TempChannels: setting up guilds joined during the startup failed.");
+			Logger.error(e);
+		} finally {
+			startTimeoutScheduler();
+			still_in_startup_mode = false;
+		}
+	}
+
+	/**
+	 * starts the Channel-Timout Scheduler once no guild is reconciled anymore, also if a guild failed,
+	 * but not if the bot is already shutting down and its schedulers were stopped
+	 */
+	private synchronized void startTimeoutScheduler() {
+		if (getShutdownCoordinator().isShutDown()) {
+			Logger.info("TempChannels shut down during the startup, no channel timeouts are checked.");
+			return;
+		}
+		timeoutScheduler = Executors.newScheduledThreadPool(1);
+		CheckTempChannelRunnable<Runnable> checkEvent = new CheckTempChannelRunnable<Runnable>(tempChannelsByGuild, getClient(), timeoutScheduler);
+		timeoutScheduler.scheduleAtFixedRate(checkEvent, 1, 1, TimeUnit.MINUTES);
 		Logger.info("TempChannels startet up and ready 2 go!");
-		still_in_startup_mode = false;
+	}
+
+	/**
+	 * a guild is ready once it was reconciled and has its map, guilds joined during the startup
+	 * only get their map in finishStartup
+	 */
+	@Override
+	protected boolean isGuildReady(long guild_id) {
+		StartupReconciler reconciler = this.reconciler;
+		if (reconciler == null || !reconciler.isReconciled(guild_id)) {
+			return false;
+		}
+		IGuild guild = getClient().getGuildByID(guild_id);
+		return guild != null && tempChannelsByGuild.containsKey(guild);
 	}
 
 	@EventSubscriber
@@ -111,9 +219,7 @@ public class TempChannelBot extends Bot {
 		IGuild guild = event.getGuild();
 		Logger.info("Received GuildCreateEvent for guild {}", guild.getName());
 		if (tempChannelsByGuild != null && !still_in_startup_mode) {
-			if (!tempChannelsByGuild.containsKey(guild)) {
-				TempChannelMap tempChannelMap = new TempChannelMap();
-				tempChannelsByGuild.put(guild, tempChannelMap);
+			if (tempChannelsByGuild.putIfAbsent(guild, new TempChannelMap()) == null) {
 				importStashedChannelsForGuild(guild);
 				removeUnknownChannelsForGuild(guild);	
 			}	
@@ -144,14 +250,16 @@ public class TempChannelBot extends Bot {
 
 		// get TempChannel for the Channel
 		TempChannelMap tempChannelMap = tempChannelsByGuild.get(event.getGuild());
-		if(deletedChannel != null) {
-			TempChannel tempChannelToRemove = tempChannelMap.getTempChannelForChannel(deletedChannel);
+		if(deletedChannel != null && tempChannelMap != null) {
+			synchronized (tempChannelMap) {
+				TempChannel tempChannelToRemove = tempChannelMap.getTempChannelForChannel(deletedChannel);
 
-			// delete if TempChannel exists
-			if (tempChannelToRemove != null) {
-				Logger.info("Removing TempChannel {} from map!", deletedChannel.getName());
+				// delete if TempChannel exists
+				if (tempChannelToRemove != null) {
+					Logger.info("Removing TempChannel {} from map!", deletedChannel.getName());
 
-				tempChannelMap.removeTempChannel(tempChannelToRemove);
+					tempChannelMap.removeTempChannel(tempChannelToRemove);
+				}
 			}
 		}
 		
@@ -175,17 +283,26 @@ public class TempChannelBot extends Bot {
 
 	@EventSubscriber
 	public void onUserVoiceChannelJoin(UserVoiceChannelJoinEvent event) {
+		if (!isGuildReady(event.getGuild().getLongID())) {
+			return;
+		}
 		setEmptyMinutesToZero(event.getVoiceChannel());
 	}
 
 	@EventSubscriber
 	public void onUserVoiceChannelMove(UserVoiceChannelMoveEvent event) {
+		if (!isGuildReady(event.getGuild().getLongID())) {
+			return;
+		}
 		setEmptyMinutesToZero(event.getNewChannel());
 		deleteIfKickOrBanChannel(event.getOldChannel());
 	}
 	
 	@EventSubscriber
 	public void onUserVoiceChannelLeave(UserVoiceChannelLeaveEvent event) {
+		if (!isGuildReady(event.getGuild().getLongID())) {
+			return;
+		}
 		deleteIfKickOrBanChannel(event.getVoiceChannel());
 	}
 
@@ -304,7 +421,7 @@ public class TempChannelBot extends Bot {
 		if(tempChannelToKickFrom != null && event.getAuthor().equals(tempChannelToKickFrom.getOwner())){
 			List<IUser> usersToKick = OptionParsing.parseUserList(command.getArguments().orElse(Collections.emptyList()), getClient());
 			if(usersToKick.remove(event.getAuthor())){
-				sendMessage("You tried to kick yourself from your own TempChannel :scream:", event.getAuthor().getOrCreatePMChannel(), false);
+				sendMessage("You tried to kick yourself from your own TempChannel :scream:", event.getAuthor().getOrCreatePMChannel(), false, Priority.LOW);
 			}
 			//filter users who arent in the channel
 			usersToKick = usersToKick.stream()
@@ -315,7 +432,7 @@ public class TempChannelBot extends Bot {
 				movePlayersToChannel(usersToKick, tempChannel.getChannel(), event.getAuthor());
 			}	
 		} else {
-			sendMessage("You can only use this command if you are in a TempChannel that you own", event.getAuthor().getOrCreatePMChannel(), false);
+			sendMessage("You can only use this command if you are in a TempChannel that you own", event.getAuthor().getOrCreatePMChannel(), false, Priority.LOW);
 		}
 	}
 
@@ -326,7 +443,7 @@ public class TempChannelBot extends Bot {
 		if(tempChannelToBanFrom != null && event.getAuthor().equals(tempChannelToBanFrom.getOwner())){
 			List<IUser> usersToBan = OptionParsing.parseUserList(command.getArguments().orElse(Collections.emptyList()), getClient());
 			if(usersToBan.remove(event.getAuthor())){
-				sendMessage("You tried to ban yourself from your own TempChannel :scream:", event.getAuthor().getOrCreatePMChannel(), false);
+				sendMessage("You tried to ban yourself from your own TempChannel :scream:", event.getAuthor().getOrCreatePMChannel(), false, Priority.LOW);
 			}
 			//filter users who arent in the channel
 			usersToBan = usersToBan.stream()
@@ -339,7 +456,7 @@ public class TempChannelBot extends Bot {
 				sendMessage("The mentioned user(s) got banned form your TempChannel `" + tempChannelToBanFrom.getChannel().getName() + "`!", event.getChannel(), false);
 			}	
 		} else {
-			sendMessage("You can only use this command if you are in a TempChannel that you own", event.getAuthor().getOrCreatePMChannel(), false);
+			sendMessage("You can only use this command if you are in a TempChannel that you own", event.getAuthor().getOrCreatePMChannel(), false, Priority.LOW);
 		}		
 	}
 	
@@ -356,7 +473,7 @@ public class TempChannelBot extends Bot {
 				sendMessage("The mentioned user(s) may now join your TempChannel `" + tempChannelToUnBanFrom.getChannel().getName() + "`!", event.getChannel(), false);
 			}	
 		} else {
-			sendMessage("You can only use this command if you are in a TempChannel that you own", event.getAuthor().getOrCreatePMChannel(), false);
+			sendMessage("You can only use this command if you are in a TempChannel that you own", event.getAuthor().getOrCreatePMChannel(), false, Priority.LOW);
 		}		
 	}
 
@@ -432,6 +549,14 @@ public class TempChannelBot extends Bot {
 	}
 
 	private ICategory getTempCategoryForGuild(IGuild guild) {
+		return getTempCategoryForGuild(guild, false);
+	}
+
+	/**
+	 * @param background
+	 *            create the category with a low priority request, for work nobody waits for
+	 */
+	private ICategory getTempCategoryForGuild(IGuild guild, boolean background) {
 		ICategory targetCategory = null;
 
 		List<ICategory> temp_categories = guild.getCategoriesByName("Temporary Channel");
@@ -439,7 +564,8 @@ public class TempChannelBot extends Bot {
 			targetCategory = temp_categories.get(0);
 		} else {
 			try{
-				ICategory newCategory = guild.createCategory("Temporary Channel");
+				ICategory newCategory = background ? inBackground("guilds/" + guild.getLongID() + "/channels", () -> guild.createCategory("Temporary Channel"))
+						: guild.createCategory("Temporary Channel");
 				targetCategory = newCategory;
 			} catch(MissingPermissionsException e) {
 				Logger.info("Could not create category because of missing permissions");
@@ -556,21 +682,30 @@ public class TempChannelBot extends Bot {
 		return object;
 	}
 
+	/**
+	 * the requests are sent with low priority, it runs in the background
+	 */
 	private void removeUnknownChannelsForGuild(IGuild guild) {
 		boolean textChannelInTempCategory = false;
-		ICategory tempCategory = getTempCategoryForGuild(guild);
+		ICategory tempCategory = getTempCategoryForGuild(guild, true);
 		if (tempCategory != null) {
-			for (IVoiceChannel channel : tempCategory.getVoiceChannels()) {
-				if (!tempChannelsByGuild.get(guild).isTempChannelForChannelExistentInMap(channel)) {
-					TempChannel tempChannel = new TempChannel(channel, getClient().getOurUser(), timeout_for_unknown_channels, false);
-					tempChannelsByGuild.get(guild).addTempChannel(tempChannel);
-					Logger.info("Created 5min timeout TempChannel for unkown channel: {} in guild {}", channel.getName(), guild.getName());
+			TempChannelMap tempChannelMap = tempChannelsByGuild.get(guild);
+			synchronized (tempChannelMap) {
+				for (IVoiceChannel channel : tempCategory.getVoiceChannels()) {
+					if (!tempChannelMap.isTempChannelForChannelExistentInMap(channel)) {
+						TempChannel tempChannel = new TempChannel(channel, getClient().getOurUser(), timeout_for_unknown_channels, false);
+						tempChannelMap.addTempChannel(tempChannel);
+						Logger.info("Created 5min timeout TempChannel for unkown channel: {} in guild {}", channel.getName(), guild.getName());
+					}
 				}
 			}
 			for (IChannel channel : tempCategory.getChannels()) {
 				textChannelInTempCategory = true;
 				try {
-					channel.delete();
+					inBackground("channels/" + channel.getLongID(), () -> {
+						channel.delete();
+						return null;
+					});
 					Logger.info("Deleted text channel {} in TempChannel category", channel.getName());
 				} catch(MissingPermissionsException e) {
 					Logger.info("Could not delte channel because of missing permissions");
@@ -584,12 +719,18 @@ public class TempChannelBot extends Bot {
 		}
 	}
 
-	private void removeUnkownChannelsForGuild(Set<IGuild> guilds) {
-		// get TempCategory for each guild and remove VoiceChannels in the category which aren't in the TempChannelMap
-		for (IGuild guild : guilds) {
-			removeUnknownChannelsForGuild(guild);
+	/**
+	 * sends the request with low priority through the rate limit scheduler and waits for it
+	 */
+	private <T> T inBackground(String route, Supplier<T> request) {
+		try {
+			return getRateLimitScheduler().submit(route, Priority.LOW, request).join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw e;
 		}
-
 	}
 
 	/**
@@ -1,8 +1,8 @@
 package de.maxkroner.implementation.runnable;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ScheduledExecutorService;
 
 import org.pmw.tinylog.Logger;
@@ -16,10 +16,10 @@ import sx.blah.discord.util.DiscordException;
 import sx.blah.discord.util.MessageBuilder;
 
 public class CheckTempChannelRunnable<E> implements Runnable {
-	private HashMap<IGuild, TempChannelMap> tempChannelsByGuild;
+	private Map<IGuild, TempChannelMap> tempChannelsByGuild;
 	IDiscordClient client;
 
-	public CheckTempChannelRunnable(HashMap<IGuild, TempChannelMap> channelMap, IDiscordClient client, ScheduledExecutorService executor) {
+	public CheckTempChannelRunnable(Map<IGuild, TempChannelMap> channelMap, IDiscordClient client, ScheduledExecutorService executor) {
 		super();
 		this.client = client;
 		this.tempChannelsByGuild = channelMap;
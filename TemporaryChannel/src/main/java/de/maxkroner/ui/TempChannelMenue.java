@@ -1,9 +1,9 @@
 package de.maxkroner.ui;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import org.pmw.tinylog.Logger;
 
@@ -19,9 +19,9 @@ import sx.blah.discord.handle.obj.IUser;
 import sx.blah.discord.handle.obj.IVoiceChannel;
 
 public class TempChannelMenue extends ConsoleMenue {
-	private HashMap<IGuild, TempChannelMap> tempChannelsByGuild;
+	private Map<IGuild, TempChannelMap> tempChannelsByGuild;
 
-	public TempChannelMenue(Bot bot, HashMap<IGuild, TempChannelMap> tempChannelsByGuild) {
+	public TempChannelMenue(Bot bot, Map<IGuild, TempChannelMap> tempChannelsByGuild) {
 		super(bot);
 		this.tempChannelsByGuild = tempChannelsByGuild;
 	}